@@ -0,0 +1,98 @@
+package nes;
+
+import common.ByteArrayMemory;
+
+import java.util.Random;
+
+/**
+ * A small NROM program which uses the whole machine every frame, built in code so that no ROM file has to be shipped:
+ * background and sprites on, OAM DMA and scroll writes in the NMI handler, pulse, triangle and noise playing,
+ * and a busy main loop.
+ * Scrolling moves the background and sprite 0 by a pixel every frame, otherwise the screen stays the same.
+ */
+class BenchmarkRom {
+
+    /**
+     * $8000 SEI, CLD, LDX #$FF, TXS
+     * $8005 palette RAM <- $9000-$901F
+     * $801C nametables $2000-$27FF <- $9100-$91FF 8 times
+     * $8036 OAM buffer $0200-$02FF <- $9200-$92FF
+     * $8041 pulse 1, triangle and noise on with halted length counters
+     * $8073 PPUCTRL <- $88 (NMI on, sprites in pattern table 1)
+     * $8078 PPUMASK <- $1E (background and sprites)
+     * $807D main: INC $10, LDA $10, ADC $11, STA $11, JMP main
+     * $8088 NMI: PHA, OAM DMA from $0200, LDA $2002, scroll <- ($13, 0),
+     *            INC $13 and INC $0203 if scrolling, PLA, RTI
+     */
+    private static final int[] PROGRAM = {
+            0x78, 0xD8, 0xA2, 0xFF, 0x9A,
+            0xA9, 0x3F, 0x8D, 0x06, 0x20, 0xA9, 0x00, 0x8D, 0x06, 0x20,
+            0xA2, 0x00, 0xBD, 0x00, 0x90, 0x8D, 0x07, 0x20, 0xE8, 0xE0, 0x20, 0xD0, 0xF5,
+            0xA9, 0x20, 0x8D, 0x06, 0x20, 0xA9, 0x00, 0x8D, 0x06, 0x20,
+            0xA0, 0x08, 0xA2, 0x00, 0xBD, 0x00, 0x91, 0x8D, 0x07, 0x20, 0xE8, 0xD0, 0xF7, 0x88, 0xD0, 0xF2,
+            0xA2, 0x00, 0xBD, 0x00, 0x92, 0x9D, 0x00, 0x02, 0xE8, 0xD0, 0xF7,
+            0xA9, 0x0D, 0x8D, 0x15, 0x40,
+            0xA9, 0xBF, 0x8D, 0x00, 0x40,
+            0xA9, 0xFD, 0x8D, 0x02, 0x40,
+            0xA9, 0x08, 0x8D, 0x03, 0x40,
+            0xA9, 0xFF, 0x8D, 0x08, 0x40,
+            0xA9, 0x80, 0x8D, 0x0A, 0x40,
+            0xA9, 0x08, 0x8D, 0x0B, 0x40,
+            0xA9, 0x3F, 0x8D, 0x0C, 0x40,
+            0xA9, 0x05, 0x8D, 0x0E, 0x40,
+            0xA9, 0x08, 0x8D, 0x0F, 0x40,
+            0xA9, 0x88, 0x8D, 0x00, 0x20,
+            0xA9, 0x1E, 0x8D, 0x01, 0x20,
+            0xE6, 0x10, 0xA5, 0x10, 0x65, 0x11, 0x85, 0x11, 0x4C, 0x7D, 0x80,
+            0x48, 0xA9, 0x02, 0x8D, 0x14, 0x40, 0xAD, 0x02, 0x20,
+            0xA5, 0x13, 0x8D, 0x05, 0x20, 0xA9, 0x00, 0x8D, 0x05, 0x20,
+            0xE6, 0x13, 0xEE, 0x03, 0x02,
+            0x68, 0x40,
+    };
+    private static final int NMI = 0x8088;
+    private static final int SCROLL = 0x809B; // INC $13, INC $0203
+    private static final int SCROLL_LENGTH = 5;
+    private static final int RTI = 0x80A1;
+
+    static NesData create(boolean scrolling) {
+        byte[] programRom = new byte[0x8000];
+        for (int i = 0; i < PROGRAM.length; i++) {
+            programRom[i] = (byte)PROGRAM[i];
+        }
+        if (!scrolling) {
+            for (int i = 0; i < SCROLL_LENGTH; i++) {
+                programRom[SCROLL - 0x8000 + i] = (byte)0xEA; // NOP
+            }
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < 0x20; i++) {
+            programRom[0x1000 + i] = (byte)random.nextInt(0x40); // palette
+        }
+        for (int i = 0; i < 0x100; i++) {
+            programRom[0x1100 + i] = (byte)random.nextInt(); // tiles and attributes
+        }
+        for (int n = 0; n < 64; n++) {
+            programRom[0x1200 + n * 4] = (byte)(n * 8 % 240); // Y
+            programRom[0x1200 + n * 4 + 1] = (byte)random.nextInt(); // tile
+            programRom[0x1200 + n * 4 + 2] = (byte)random.nextInt(); // attributes
+            programRom[0x1200 + n * 4 + 3] = (byte)random.nextInt(); // X
+        }
+        setVector(programRom, 0xFFFA, NMI);
+        setVector(programRom, 0xFFFC, 0x8000);
+        setVector(programRom, 0xFFFE, RTI);
+
+        byte[] characterRom = new byte[0x2000];
+        random.nextBytes(characterRom);
+
+        NesData nesData = new NesData((byte)0x01, (byte)0); // mapper 0, vertical mirroring
+        nesData.programRom = new ByteArrayMemory(programRom);
+        nesData.characterRom = new ByteArrayMemory(characterRom);
+        return nesData;
+    }
+
+    private static void setVector(byte[] programRom, int address, int target) {
+        programRom[address - 0x8000] = (byte)target;
+        programRom[address - 0x8000 + 1] = (byte)(target >> 8);
+    }
+}
@@ -0,0 +1,74 @@
+package nes;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import nes.apu.APU;
+import nes.cpu.CPU;
+import nes.mapper.Mapper;
+import nes.mapper.MapperFactory;
+import nes.ppu.PPU;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole machine, headless, one frame per operation: the score is frames per second.
+ *
+ * "static" and "scrolling" are the built-in {@link BenchmarkRom}, anything else is taken as the file name of a ROM:
+ * ./gradlew jmh -Pjmh.include=FrameBenchmark, or java -jar ... FrameBenchmark -p rom=game.nes
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameBenchmark {
+
+    @Param({"static", "scrolling"})
+    public String rom;
+
+    private PPU ppu;
+    private Scheduler scheduler;
+
+    @Setup
+    public void setUp() throws IOException {
+        LoggerContext loggerContext = (LoggerContext)LoggerFactory.getILoggerFactory();
+        loggerContext.getLogger("nes").setLevel(Level.WARN);
+
+        Mapper mapper = MapperFactory.create(loadRom(rom));
+        ppu = new PPU(mapper, null, null);
+        APU apu = new APU();
+        CPU cpu = new CPU(ppu, apu, mapper, new Controller());
+        ppu.setCpu(cpu);
+        apu.setCpu(cpu);
+        cpu.reset();
+        ppu.reset();
+        apu.resetHeadless();
+        scheduler = new Scheduler(cpu, ppu, apu);
+    }
+
+    private static NesData loadRom(String rom) throws IOException {
+        switch (rom) {
+            case "static":
+                return BenchmarkRom.create(false);
+            case "scrolling":
+                return BenchmarkRom.create(true);
+            default:
+                try (InputStream in = new FileInputStream(rom)) {
+                    return new FileLoader().load(in);
+                }
+        }
+    }
+
+    @Benchmark
+    public long frame() {
+        scheduler.setFrameLimit(ppu.getFrames() + 1);
+        scheduler.run(Long.MAX_VALUE);
+        return ppu.getFrames();
+    }
+}
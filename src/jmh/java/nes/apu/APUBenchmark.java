@@ -0,0 +1,81 @@
+package nes.apu;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import common.ByteArrayMemory;
+import nes.Controller;
+import nes.cpu.CPU;
+import nes.mapper.Mapper;
+import nes.mapper.NROM;
+import nes.ppu.Mirroring;
+import nes.ppu.PPU;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speed of the APU with both pulses, the triangle and the noise playing.
+ * Score is emulated CPU cycles per second, either stepped one cycle at a time (runStep)
+ * or run a frame at once as the scheduler does (run).
+ * With synthesis, samples are made by the blip buffer as for an audio device, and dropped.
+ * Length counters are halted, so the channels play for as long as the benchmark runs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class APUBenchmark {
+
+    private static final int CYCLES = 29781; // a frame
+
+    @Param({"false", "true"})
+    public boolean synthesis;
+
+    private APU apu;
+
+    @Setup
+    public void setUp() {
+        LoggerContext loggerContext = (LoggerContext)LoggerFactory.getILoggerFactory();
+        loggerContext.getLogger("nes").setLevel(Level.WARN);
+
+        apu = new APU();
+        // the frame counter mode is read from the CPU
+        Mapper mapper = new NROM(new ByteArrayMemory(new byte[0x8000]), null, Mirroring.HORIZONTAL);
+        apu.setCpu(new CPU(new PPU(mapper, null, null), apu, mapper, new Controller()));
+        if (synthesis) {
+            apu.resetSilent();
+        } else {
+            apu.resetHeadless();
+        }
+        apu.regAPUSTATUS.set((byte)0x0F);
+        apu.regSQ1_VOL.set((byte)0xBF); // duty 2, constant volume 15
+        apu.regSQ1_LO.set((byte)0xFD);
+        apu.regSQ1_HI.set((byte)0x08);
+        apu.regSQ2_VOL.set((byte)0x7F); // duty 1, constant volume 15
+        apu.regSQ2_LO.set((byte)0x7E);
+        apu.regSQ2_HI.set((byte)0x08);
+        apu.regTRI_LINEAR.set((byte)0xFF);
+        apu.regTRI_LO.set((byte)0x80);
+        apu.regTRI_HI.set((byte)0x08);
+        apu.regNOISE_VOL.set((byte)0x3F);
+        apu.regNOISE_LO.set((byte)0x05);
+        apu.regNOISE_HI.set((byte)0x08);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public void runStep() {
+        for (int i = 0; i < CYCLES; i++) {
+            apu.runStep();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public void run() {
+        apu.run(CYCLES);
+    }
+}
@@ -0,0 +1,216 @@
+package nes.cpu;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import common.ByteArrayMemory;
+import nes.Controller;
+import nes.apu.APU;
+import nes.mapper.Mapper;
+import nes.mapper.NROM;
+import nes.ppu.Mirroring;
+import nes.ppu.PPU;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speed of the CPU on synthetic instruction mixes in PRG ROM, with and without the recompiler.
+ * Score is emulated CPU cycles per second, since one runStep may run a whole block.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CPUBenchmark {
+
+    private static final int CYCLES = 100000;
+
+    /**
+     * $8000 LDX #$00
+     * $8002 INX
+     * $8003 LDA $10,X
+     * $8005 ADC #$01
+     * $8007 STA $0200,X
+     * $800A BNE $8002
+     * $800C JMP $8000
+     */
+    private static final int[] LOOP = {
+            0xA2, 0x00,
+            0xE8,
+            0xB5, 0x10,
+            0x69, 0x01,
+            0x9D, 0x00, 0x02,
+            0xD0, 0xF6,
+            0x4C, 0x00, 0x80
+    };
+
+    /**
+     * Register only: loads, shifts, logic, arithmetic and transfers
+     *
+     * $8000 LDA #$01
+     * $8002 ASL A
+     * $8003 EOR #$5A
+     * $8005 ADC #$03
+     * $8007 TAX
+     * $8008 INY
+     * $8009 INX
+     * $800A TXA
+     * $800B LSR A
+     * $800C AND #$7F
+     * $800E ORA #$01
+     * $8010 SEC
+     * $8011 SBC #$02
+     * $8013 JMP $8002
+     */
+    private static final int[] ALU = {
+            0xA9, 0x01,
+            0x0A,
+            0x49, 0x5A,
+            0x69, 0x03,
+            0xAA,
+            0xC8,
+            0xE8,
+            0x8A,
+            0x4A,
+            0x29, 0x7F,
+            0x09, 0x01,
+            0x38,
+            0xE9, 0x02,
+            0x4C, 0x02, 0x80
+    };
+
+    /**
+     * Loads and stores in every addressing mode, to RAM and PRG RAM
+     *
+     * $8000 LDX #$00
+     * $8002 LDY #$00
+     * $8004 LDA #$00
+     * $8006 STA $20
+     * $8008 LDA #$03
+     * $800A STA $21
+     * $800C LDA $10,X
+     * $800E STA $40,X
+     * $8010 LDA $0200,X
+     * $8013 STA $0400,X
+     * $8016 LDA ($20),Y
+     * $8018 STA ($20),Y
+     * $801A INC $30
+     * $801C LDA $6000
+     * $801F STA $6001
+     * $8022 INX
+     * $8023 INY
+     * $8024 JMP $800C
+     */
+    private static final int[] MEMORY = {
+            0xA2, 0x00,
+            0xA0, 0x00,
+            0xA9, 0x00,
+            0x85, 0x20,
+            0xA9, 0x03,
+            0x85, 0x21,
+            0xB5, 0x10,
+            0x95, 0x40,
+            0xBD, 0x00, 0x02,
+            0x9D, 0x00, 0x04,
+            0xB1, 0x20,
+            0x91, 0x20,
+            0xE6, 0x30,
+            0xAD, 0x00, 0x60,
+            0x8D, 0x01, 0x60,
+            0xE8,
+            0xC8,
+            0x4C, 0x0C, 0x80
+    };
+
+    /**
+     * Subroutine calls and branches, taken and not taken
+     *
+     * $8000 LDX #$10
+     * $8002 JSR $800C
+     * $8005 DEX
+     * $8006 BNE $8002
+     * $8008 JMP $8000
+     * $800B NOP
+     * $800C INC $10
+     * $800E LDA $10
+     * $8010 AND #$01
+     * $8012 BEQ $8016
+     * $8014 DEC $11
+     * $8016 CLC
+     * $8017 BCC $8019
+     * $8019 RTS
+     */
+    private static final int[] BRANCH = {
+            0xA2, 0x10,
+            0x20, 0x0C, 0x80,
+            0xCA,
+            0xD0, 0xFA,
+            0x4C, 0x00, 0x80,
+            0xEA,
+            0xE6, 0x10,
+            0xA5, 0x10,
+            0x29, 0x01,
+            0xF0, 0x02,
+            0xC6, 0x11,
+            0x18,
+            0x90, 0x00,
+            0x60
+    };
+
+    @Param({"false", "true"})
+    public boolean recompiler;
+
+    @Param({"loop", "alu", "memory", "branch"})
+    public String mix;
+
+    private CPU cpu;
+
+    @Setup
+    public void setUp() {
+        LoggerContext loggerContext = (LoggerContext)LoggerFactory.getILoggerFactory();
+        loggerContext.getLogger("nes").setLevel(Level.WARN);
+
+        int[] program = getProgram(mix);
+        byte[] programRom = new byte[0x8000];
+        for (int i = 0; i < program.length; i++) {
+            programRom[i] = (byte)program[i];
+        }
+        // reset vector => $8000
+        programRom[0x7FFC] = 0x00;
+        programRom[0x7FFD] = (byte)0x80;
+
+        Mapper mapper = new NROM(new ByteArrayMemory(programRom), null, Mirroring.HORIZONTAL);
+        PPU ppu = new PPU(mapper, null, null);
+        cpu = new CPU(ppu, new APU(), mapper, new Controller());
+        cpu.setRecompilerEnabled(recompiler);
+        cpu.reset();
+    }
+
+    private static int[] getProgram(String mix) {
+        switch (mix) {
+            case "loop":
+                return LOOP;
+            case "alu":
+                return ALU;
+            case "memory":
+                return MEMORY;
+            case "branch":
+                return BRANCH;
+            default:
+                throw new IllegalArgumentException(mix);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public long run() {
+        long end = cpu.getCyclesSynchronized() + CYCLES;
+        while (cpu.getCyclesSynchronized() < end) {
+            cpu.runStep();
+        }
+        return cpu.getCyclesSynchronized();
+    }
+}
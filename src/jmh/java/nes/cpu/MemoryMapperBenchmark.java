@@ -0,0 +1,98 @@
+package nes.cpu;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import common.ByteArrayMemory;
+import nes.Controller;
+import nes.apu.APU;
+import nes.mapper.Mapper;
+import nes.mapper.NROM;
+import nes.ppu.Mirroring;
+import nes.ppu.PPU;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one CPU bus access by region, as the page table dispatches it.
+ * Registers are accessed without a scheduler, so there is no catching up of the PPU/APU in the score.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryMapperBenchmark {
+
+    private static final int ACCESSES = 0x100;
+
+    /**
+     * RAM: $0000-$00FF
+     * CARTRIDGE: PRG ROM read at $8000-$80FF, PRG RAM write at $6000-$60FF
+     * PPU_REGISTER: $2002 PPUSTATUS read, $2003 OAMADDR write
+     * IO_REGISTER: $4016 joypad read, $4000 pulse 1 volume write
+     */
+    @Param({"RAM", "CARTRIDGE", "PPU_REGISTER", "IO_REGISTER"})
+    public String region;
+
+    private MemoryMapper memoryMapper;
+    private int readAddress;
+    private int writeAddress;
+    private int mask; // addresses accessed are base + (i & mask)
+
+    @Setup
+    public void setUp() {
+        LoggerContext loggerContext = (LoggerContext)LoggerFactory.getILoggerFactory();
+        loggerContext.getLogger("nes").setLevel(Level.WARN);
+
+        Mapper mapper = new NROM(new ByteArrayMemory(new byte[0x8000]), null, Mirroring.HORIZONTAL);
+        PPU ppu = new PPU(mapper, null, null);
+        APU apu = new APU();
+        CPU cpu = new CPU(ppu, apu, mapper, new Controller());
+        memoryMapper = new MemoryMapper(cpu, ppu, apu);
+
+        switch (region) {
+            case "RAM":
+                readAddress = writeAddress = 0x0000;
+                mask = 0xFF;
+                break;
+            case "CARTRIDGE":
+                readAddress = 0x8000;
+                writeAddress = 0x6000;
+                mask = 0xFF;
+                break;
+            case "PPU_REGISTER":
+                readAddress = 0x2002;
+                writeAddress = 0x2003;
+                mask = 0;
+                break;
+            case "IO_REGISTER":
+                readAddress = 0x4016;
+                writeAddress = 0x4000;
+                mask = 0;
+                break;
+            default:
+                throw new IllegalArgumentException(region);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int get() {
+        int sum = 0;
+        for (int i = 0; i < ACCESSES; i++) {
+            sum += memoryMapper.get(readAddress + (i & mask));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void set() {
+        for (int i = 0; i < ACCESSES; i++) {
+            memoryMapper.set((byte)i, writeAddress + (i & mask));
+        }
+    }
+}
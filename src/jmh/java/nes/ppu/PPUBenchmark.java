@@ -0,0 +1,72 @@
+package nes.ppu;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import common.ByteArrayMemory;
+import nes.mapper.Mapper;
+import nes.mapper.NROM;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static nes.screen.MainScreen.HEIGHT;
+
+/**
+ * Cost of drawing one scanline from random nametables and pattern tables, scrolled so that every line spans two nametables.
+ * With sprites, the 64 sprites are spread over the screen, 2 or 3 on each line.
+ * setLineData is called directly, so lines are drawn even where the line cache would keep them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PPUBenchmark {
+
+    @Param({"false", "true"})
+    public boolean sprites;
+
+    private PPU ppu;
+
+    @Setup
+    public void setUp() {
+        LoggerContext loggerContext = (LoggerContext)LoggerFactory.getILoggerFactory();
+        loggerContext.getLogger("nes").setLevel(Level.WARN);
+
+        Random random = new Random(1);
+        byte[] characterRom = new byte[0x2000];
+        random.nextBytes(characterRom);
+        Mapper mapper = new NROM(new ByteArrayMemory(new byte[0x8000]), new ByteArrayMemory(characterRom), Mirroring.VERTICAL);
+        ppu = new PPU(mapper, null, null);
+        for (int address = 0x2000; address < 0x2800; address++) {
+            ppu.write((byte)random.nextInt(), address);
+        }
+        for (int address = 0x3F00; address < 0x3F20; address++) {
+            ppu.write((byte)random.nextInt(0x40), address);
+        }
+        for (int n = 0; n < 64; n++) {
+            ppu.oam.set((byte)(n * 8 % HEIGHT), n * 4); // Y
+            ppu.oam.set((byte)random.nextInt(), n * 4 + 1); // tile
+            ppu.oam.set((byte)random.nextInt(), n * 4 + 2); // attributes
+            ppu.oam.set((byte)random.nextInt(), n * 4 + 3); // X
+        }
+        ppu.regPPUMASK.set((byte)(sprites ? 0x18 : 0x08));
+        ppu.regPPUSCROLL.set((byte)100);
+        ppu.regPPUSCROLL.set((byte)0);
+        // the scroll is taken at the start of each line
+        while (ppu.getFrames() == 0) {
+            ppu.runStep();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HEIGHT)
+    public void setLineData() {
+        for (int y = 0; y < HEIGHT; y++) {
+            ppu.setLineData(y);
+        }
+    }
+}
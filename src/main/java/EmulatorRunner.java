@@ -1,17 +1,114 @@
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
+import nes.BatchRunner;
+import nes.HeadlessResult;
+import nes.InputMovie;
 import nes.NesEmulatorSingleThread;
+import nes.cpu.TraceDecoder;
+import nes.cpu.TraceRecorder;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
 public class EmulatorRunner {
-    public static void main(String args[]) {
+    private static final int DEFAULT_TRACE_SIZE = 1 << 20; // instructions, 16MB
+
+    public static void main(String args[]) throws IOException {
+        // -Dframes=N or -Dcycles=N runs without display and audio device
+        // -Dload=FILE starts from a save state, -Dsave=FILE writes the state at the end
+        // -Dmovie=FILE replays an input movie without display, by default to its end
+        // -Drecord=FILE records an input movie while playing
+        // -Dmetrics=FILE writes the metrics (speed, time per subsystem, audio underruns) as JSON at the end
+        // -Dbatch=DIR|MANIFEST runs many ROMs headless in parallel (-Dframes per ROM, -Dthreads workers)
+        //   and prints one JSON line per ROM
+        // -Dtrace=FILE records the last -Dtracesize instructions of a headless run to a binary trace,
+        //   -Ddecode=FILE prints a trace as text like nestest.log
+        String decode = System.getProperty("decode");
+        if (decode != null) {
+            new TraceDecoder().decode(Paths.get(decode), System.out);
+            return;
+        }
+        String batch = System.getProperty("batch");
+        String metrics = System.getProperty("metrics");
+        String load = System.getProperty("load");
+        String save = System.getProperty("save");
+        String movieFile = System.getProperty("movie");
+        String frames = System.getProperty("frames");
+        String cycles = System.getProperty("cycles");
+        String trace = System.getProperty("trace");
+        boolean headless = frames != null || cycles != null || movieFile != null || batch != null;
+
         LoggerContext loggerContext = (LoggerContext)LoggerFactory.getILoggerFactory();
         Logger rootLogger = loggerContext.getLogger("nes");
-        rootLogger.setLevel(Level.valueOf(System.getProperty("loglevel")));
+        rootLogger.setLevel(Level.toLevel(System.getProperty("loglevel"), headless ? Level.WARN : Level.DEBUG));
 //        TD4Emulator td4Simulator = new TD4Emulator();
 //        td4Simulator.start(TD4Emulator.ClockType.FAST);
 //        new NesEmulator().start();
-        new NesEmulatorSingleThread().start(args[0]);
+        if (batch != null) {
+            int failures = runBatch(batch, frames != null ? Long.parseLong(frames) : BatchRunner.DEFAULT_FRAMES);
+            System.exit(failures == 0 ? 0 : 1);
+        } else if (headless) {
+            InputMovie movie = null;
+            if (movieFile != null) {
+                try (InputStream in = new FileInputStream(movieFile)) {
+                    movie = InputMovie.read(in);
+                }
+            }
+            NesEmulatorSingleThread emulator = new NesEmulatorSingleThread();
+            TraceRecorder traceRecorder = trace != null
+                    ? TraceRecorder.mapped(Paths.get(trace), Integer.getInteger("tracesize", DEFAULT_TRACE_SIZE)) : null;
+            emulator.setTrace(traceRecorder);
+            HeadlessResult result = emulator.runHeadless(args[0],
+                    load != null ? Files.readAllBytes(Paths.get(load)) : null,
+                    movie,
+                    frames != null ? Long.parseLong(frames) : movie != null ? movie.getLength() : Long.MAX_VALUE,
+                    cycles != null ? Long.parseLong(cycles) : Long.MAX_VALUE);
+            if (traceRecorder != null) {
+                traceRecorder.close();
+            }
+            printResult(result);
+            if (save != null) {
+                Files.write(Paths.get(save), result.getState());
+            }
+            if (metrics != null) {
+                Files.write(Paths.get(metrics), result.getMetrics().getBytes(StandardCharsets.UTF_8));
+            }
+        } else {
+            new NesEmulatorSingleThread().start(args[0], System.getProperty("record"), metrics);
+        }
+    }
+
+    private static int runBatch(String path, long frames) throws IOException {
+        List<BatchRunner.Job> jobs = BatchRunner.readJobs(Paths.get(path), frames);
+        String threads = System.getProperty("threads");
+        BatchRunner runner = threads != null ? new BatchRunner(Integer.parseInt(threads)) : new BatchRunner();
+        long start = System.nanoTime();
+        int failures = runner.run(jobs, System.out);
+        runner.shutdown();
+        System.err.printf("roms=%d failures=%d elapsed=%.3fs%n", jobs.size(), failures, (System.nanoTime() - start) / 1e9);
+        return failures;
+    }
+
+    private static void printResult(HeadlessResult result) {
+        double seconds = result.getElapsedNanos() / 1e9;
+        System.out.printf("frames=%d cycles=%d%n", result.getFrames(), result.getCycles());
+        System.out.printf("frameHash=%016x%n", result.getFrameHash());
+        System.out.printf("elapsed=%.3fs fps=%.1f cpu=%.2fMHz%n",
+                seconds, result.getFrames() / seconds, result.getCycles() / seconds / 1e6);
+        byte[] ram = result.getRam();
+        for (int line = 0; line < ram.length; line += 16) {
+            StringBuilder sb = new StringBuilder(String.format("ram %04x:", line));
+            for (int i = line; i < line + 16; i++) {
+                sb.append(String.format(" %02x", ram[i]));
+            }
+            System.out.println(sb);
+        }
     }
 }
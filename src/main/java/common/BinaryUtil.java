@@ -65,4 +65,12 @@ public class BinaryUtil {
     public static int getAddress(byte lower, byte upper) {
         return (Byte.toUnsignedInt(upper) << 8) + Byte.toUnsignedInt(lower);
     }
+
+    /**
+     * @param lower 0-255
+     * @param upper 0-255
+     */
+    public static int getAddress(int lower, int upper) {
+        return (upper << 8) + lower;
+    }
 }
@@ -2,9 +2,10 @@ package common;
 
 import org.eclipse.collections.api.tuple.Pair;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-public class ByteArrayMemory {
+public class ByteArrayMemory implements StateSerializable {
     private byte[] data;
 
     public ByteArrayMemory(byte[] data) {
@@ -19,6 +20,24 @@ public class ByteArrayMemory {
         return data[offset];
     }
 
+    public int size() {
+        return data.length;
+    }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.put(data);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        buffer.get(data);
+    }
+
+    public void copyTo(int offset, byte[] dest, int destOffset, int length) {
+        System.arraycopy(data, offset, dest, destOffset, length);
+    }
+
     public byte[] getRange(int from, int to) {
         return Arrays.copyOfRange(data, from, to);
     }
@@ -1,6 +1,8 @@
 package common;
 
-public class ByteRegisterImpl implements ByteRegister {
+import java.nio.ByteBuffer;
+
+public class ByteRegisterImpl implements ByteRegister, StateSerializable {
 
     private byte value;
 
@@ -16,6 +18,16 @@ public class ByteRegisterImpl implements ByteRegister {
         return value;
     }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.put(value);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        value = buffer.get();
+    }
+
     public boolean increment() {
         if (value == (byte)MAX_VALUE) {
             value = 0;
@@ -0,0 +1,59 @@
+package common;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of non-negative values in power of two buckets: bucket 0 counts zeros, bucket i values in [2^(i-1), 2^i).
+ * Recording only increments a counter, so it can be done on every frame without allocating.
+ */
+public class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final long[] counts = new long[BUCKETS];
+    @Getter
+    private long count;
+    @Getter
+    private long max;
+    private long sum;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[BUCKETS - Long.numberOfLeadingZeros(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @param fraction 0.0-1.0
+     * @return upper bound of the bucket the value at the fraction falls in, at most the max value
+     */
+    public long getPercentile(double fraction) {
+        long rank = (long)Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return i == BUCKETS - 1 ? max : Math.min((1L << i) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+        sum = 0;
+    }
+}
@@ -2,13 +2,15 @@ package common;
 
 import lombok.Getter;
 
+import java.nio.ByteBuffer;
+
 import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * 符号なし整数値を保持するレジスタ
  * 使用可能なビット幅を指定可能
  */
-public class IntegerRegister {
+public class IntegerRegister implements StateSerializable {
     private int value;
     private final int width;
     @Getter
@@ -56,6 +58,16 @@ public class IntegerRegister {
         this.value = value;
     }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.putInt(value);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        set(buffer.getInt());
+    }
+
     public boolean add(int addend) {
         checkArgument(addend >= 0 && addend <= maxValue);
         value += addend;
@@ -0,0 +1,14 @@
+package common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Emulator state that goes into a save state.
+ * load reads back exactly what save wrote, in the same order.
+ */
+public interface StateSerializable {
+
+    void save(ByteBuffer buffer);
+
+    void load(ByteBuffer buffer);
+}
@@ -0,0 +1,137 @@
+package nes;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Runs many ROMs headless in one JVM, on a work-stealing pool with one worker per core by default.
+ *
+ * Every ROM gets its own CPU/PPU/APU graph, and nothing mutable is shared between them but the output.
+ * Results are streamed as they finish, one JSON object per line:
+ * {"rom":"a.nes","frames":600,"cycles":17868450,"frameHash":"750ac803790de325","elapsedNanos":...,"fps":...,"cyclesPerSecond":...,"metrics":{...}}
+ * or {"rom":"b.nes","error":"..."} if the ROM failed to load or run.
+ */
+@Slf4j
+public class BatchRunner {
+
+    public static final long DEFAULT_FRAMES = 600;
+
+    @Value
+    public static class Job {
+        Path rom;
+        long frames;
+    }
+
+    private final ForkJoinPool pool;
+
+    public BatchRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchRunner(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * @param path a directory of *.nes files, or a manifest with one "ROM [frames]" per line.
+     *             Blank lines and lines starting with # are skipped, and ROMs are relative to the manifest.
+     */
+    public static List<Job> readJobs(Path path, long defaultFrames) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                return files.filter(file -> file.getFileName().toString().toLowerCase().endsWith(".nes"))
+                        .sorted()
+                        .map(file -> new Job(file, defaultFrames))
+                        .collect(Collectors.toList());
+            }
+        }
+        List<Job> jobs = new ArrayList<>();
+        for (String line : Files.readAllLines(path)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            checkArgument(fields.length <= 2, "expected \"ROM [frames]\": %s", line);
+            Path rom = path.toAbsolutePath().resolveSibling(fields[0]);
+            jobs.add(new Job(rom, fields.length == 2 ? Long.parseLong(fields[1]) : defaultFrames));
+        }
+        return jobs;
+    }
+
+    /**
+     * Longest runs are started first, so that the pool does not wait on one long ROM at the end.
+     *
+     * @return number of failed ROMs
+     */
+    public int run(List<Job> jobs, PrintStream out) {
+        List<ForkJoinTask<Boolean>> tasks = jobs.stream()
+                .sorted(Comparator.comparingLong(Job::getFrames).reversed())
+                .map(job -> pool.submit(() -> runJob(job, out)))
+                .collect(Collectors.toList());
+        int failures = 0;
+        for (ForkJoinTask<Boolean> task : tasks) {
+            if (!task.join()) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static boolean runJob(Job job, PrintStream out) {
+        String rom = quote(job.getRom().toString());
+        String line;
+        boolean succeeded;
+        try {
+            HeadlessResult result = new NesEmulatorSingleThread()
+                    .runHeadless(job.getRom().toString(), null, null, job.getFrames(), Long.MAX_VALUE);
+            double seconds = result.getElapsedNanos() / 1e9;
+            line = String.format(Locale.ROOT, "{\"rom\":%s,\"frames\":%d,\"cycles\":%d,\"frameHash\":\"%016x\",\"elapsedNanos\":%d,\"fps\":%.1f,\"cyclesPerSecond\":%.0f,\"metrics\":%s}",
+                    rom, result.getFrames(), result.getCycles(), result.getFrameHash(), result.getElapsedNanos(),
+                    result.getFrames() / seconds, result.getCycles() / seconds, result.getMetrics());
+            succeeded = true;
+        } catch (Exception e) {
+            log.warn("{} failed", job.getRom(), e);
+            line = String.format("{\"rom\":%s,\"error\":%s}", rom, quote(e.toString()));
+            succeeded = false;
+        }
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+        return succeeded;
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int)c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
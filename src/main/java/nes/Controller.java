@@ -4,34 +4,51 @@ import lombok.Getter;
 
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.HashMap;
-import java.util.Map;
 
-import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.awt.event.KeyEvent.*;
 import static nes.Controller.Button.*;
 
 public class Controller extends KeyAdapter {
 
+    private volatile int held; // keys held down, written by the AWT thread only
+
+    /**
+     * Buttons seen by the game, bit n for Button.values()[n].
+     * Keys are taken once per frame, so that a recorded movie replays exactly.
+     */
+    @Getter
+    private int buttons;
+
     @Getter
-    Map<Button, Boolean> pressed;
+    private volatile boolean rewinding; // held down, not a button of the pad
 
     public enum Button {
         A, B, SELECT, START, UP, DOWN, LEFT, RIGHT
     }
 
-    public Controller() {
-        pressed = new HashMap<>();
-        for (Button button: Button.values()) {
-            pressed.put(button, false);
-        }
+    /**
+     * Take the keys held now as the buttons of the frame to come.
+     */
+    public void latch() {
+        buttons = held;
+    }
+
+    /**
+     * Set the buttons directly instead of from the keyboard, for replaying a movie.
+     */
+    public void setButtons(int buttons) {
+        checkArgument(buttons >= 0 && buttons <= 0xFF);
+        this.buttons = buttons;
     }
 
     @Override
     public void keyPressed(KeyEvent e) {
         Button button = keyCodeToButton(e.getKeyCode());
         if (button != null) {
-            pressed.replace(button, true);
+            held |= 1 << button.ordinal();
+        } else if (e.getKeyCode() == VK_BACK_SPACE) {
+            rewinding = true;
         }
     }
 
@@ -39,7 +56,9 @@ public class Controller extends KeyAdapter {
     public void keyReleased(KeyEvent e) {
            Button button = keyCodeToButton(e.getKeyCode());
         if (button != null) {
-            pressed.replace(button, false);
+            held &= ~(1 << button.ordinal());
+        } else if (e.getKeyCode() == VK_BACK_SPACE) {
+            rewinding = false;
         }
     }
 
@@ -14,6 +14,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 @Slf4j
 public class FileLoader {
     public static final int HEADER_LENGTH = 16;
+    private static final int TRAINER_LENGTH = 512;
 
     private int programRomSize;
     private int characterRomSize;
@@ -48,8 +49,8 @@ public class FileLoader {
             return false;
         }
 
-        programRomSize = data[4];
-        characterRomSize = data[5] * 0x2000;
+        programRomSize = Byte.toUnsignedInt(data[4]) * 0x4000;
+        characterRomSize = Byte.toUnsignedInt(data[5]) * 0x2000;
         flag6 = data[6];
         flag7 = data[7];
         programRamSize = data[8] == 0 ? 0x2000 : data[8] * 0x2000;
@@ -75,20 +76,17 @@ public class FileLoader {
     }
 
     private NesData parseData(byte[] data) {
-        NesData nesData = new NesData(flag6);
+        NesData nesData = new NesData(flag6, flag7);
         int cursor = HEADER_LENGTH;
-        if (programRomSize == 2) {
-            nesData.programRom = new ByteArrayMemory(Arrays.copyOfRange(data, cursor, cursor + 0x8000));
-            cursor += 0x8000;
-        } else if (programRomSize == 1) {
-            nesData.programRom = new ByteArrayMemory(new byte[0x8000]);
-            for (int i = 0; i < 0x8000; i++) {
-                nesData.programRom.set(data[cursor + (i % 0x4000)], i);
-            }
-            cursor += 0x4000;
-        } else {
+        if (BinaryUtil.getBit(flag6, 2)) {
+            cursor += TRAINER_LENGTH;
+        }
+        if (programRomSize == 0) {
             throw new IllegalStateException();
         }
+        // banks are laid out by the mapper, a 16KB ROM is mirrored there
+        nesData.programRom = new ByteArrayMemory(Arrays.copyOfRange(data, cursor, cursor + programRomSize));
+        cursor += programRomSize;
         if (characterRomSize > 0) {
             nesData.characterRom = new ByteArrayMemory(Arrays.copyOfRange(data, cursor, cursor + characterRomSize));
         }
@@ -0,0 +1,17 @@
+package nes;
+
+import lombok.Value;
+
+/**
+ * State at the end of a headless run
+ */
+@Value
+public class HeadlessResult {
+    long frames;
+    long cycles;
+    long frameHash; // hash of the last completed frame
+    byte[] ram;
+    long elapsedNanos;
+    byte[] state; // save state at the end, to continue from
+    String metrics; // JSON of the metrics of the run
+}
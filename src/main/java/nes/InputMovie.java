@@ -0,0 +1,89 @@
+package nes;
+
+import java.io.*;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Buttons of the pad for every frame from power up, to replay a play session exactly.
+ *
+ * Format: magic, version, number of pads, number of frames (big endian ints), then one byte per frame per pad
+ * with bit n for Controller.Button.values()[n]. Only the first pad is emulated, so there is one pad.
+ */
+public class InputMovie {
+    static final int MAGIC = 0x4E45534D; // "NESM"
+    static final int VERSION = 1;
+    private static final int PADS = 1;
+    private static final int READ_CHUNK = 60 * 60;
+
+    private byte[] frames = new byte[60 * 60];
+    private int length;
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return buttons of the frame, none after the end of the movie
+     */
+    public int get(long frame) {
+        return frame < length ? Byte.toUnsignedInt(frames[(int)frame]) : 0;
+    }
+
+    /**
+     * Record the buttons of the frame; frames after it are dropped, as when recording again after a rewind.
+     */
+    public void set(long frame, int buttons) {
+        checkArgument(frame >= 0 && frame < Integer.MAX_VALUE);
+        if (frame >= frames.length) {
+            frames = Arrays.copyOf(frames, Math.max(frames.length * 2, (int)frame + 1));
+        }
+        // frames skipped over had no buttons pressed
+        Arrays.fill(frames, Math.min(length, (int)frame), (int)frame, (byte)0);
+        frames[(int)frame] = (byte)buttons;
+        length = (int)frame + 1;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(PADS);
+        data.writeInt(length);
+        data.write(frames, 0, length);
+        data.flush();
+    }
+
+    /**
+     * @throws IOException if the number of frames is negative or more than the stream holds
+     */
+    public static InputMovie read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        checkArgument(data.readInt() == MAGIC, "not an input movie");
+        int version = data.readInt();
+        checkArgument(version == VERSION, "unsupported input movie version %s", version);
+        checkArgument(data.readInt() == PADS, "unsupported number of pads");
+        int length = data.readInt();
+        if (length < 0) {
+            throw new IOException("invalid number of frames " + length);
+        }
+        // grown as the frames are read, so that a corrupt count cannot allocate more than the stream holds
+        byte[] frames = new byte[Math.min(length, READ_CHUNK)];
+        int read = 0;
+        while (read < length) {
+            if (read == frames.length) {
+                frames = Arrays.copyOf(frames, (int)Math.min(length, 2L * frames.length));
+            }
+            int n = data.read(frames, read, frames.length - read);
+            if (n < 0) {
+                throw new EOFException(String.format("truncated input movie, %d of %d frames", read, length));
+            }
+            read += n;
+        }
+        InputMovie movie = new InputMovie();
+        movie.length = length;
+        movie.frames = frames;
+        return movie;
+    }
+}
@@ -0,0 +1,164 @@
+package nes;
+
+import common.Histogram;
+import nes.apu.APU;
+import nes.cpu.CPU;
+import nes.ppu.PPU;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Where the time goes: emulated speed, wall time spent in the CPU, PPU, APU and presentation, CPU idle loops skipped,
+ * the distribution of the time taken by a frame, line cache hits, and audio underruns.
+ *
+ * Counters are plain fields of the emulation thread. The scheduler adds a few System.nanoTime differences
+ * per run up to a PPU event and records a histogram entry per frame; a catch-up on a register access
+ * only increments a counter, except for a sampled one. Nothing is allocated until a report is made.
+ * report() gives the rates since its last call, toJson() the totals since the start.
+ */
+public class Metrics {
+    private final CPU cpu;
+    private final PPU ppu;
+    private final APU apu;
+
+    // added to by the scheduler; the PPU time includes presentation
+    long cpuNanos;
+    long ppuNanos;
+    long apuNanos;
+    long catchUps; // on register accesses
+
+    private final long startNanos = System.nanoTime();
+    private long frames;
+    private long cycles;
+    private long lastCycles; // CPU cycle of the last frame
+
+    // emulation time of a frame, excluding the wait for real time
+    private final Histogram frameNanos = new Histogram();
+    private final Histogram reportFrameNanos = new Histogram();
+    private long frameStartNanos; // busy time at the start of the frame
+
+    private final Totals last = new Totals();
+    private final Totals now = new Totals();
+
+    Metrics(CPU cpu, PPU ppu, APU apu) {
+        this.cpu = cpu;
+        this.ppu = ppu;
+        this.apu = apu;
+        last.nanos = startNanos;
+    }
+
+    void frameDone() {
+        frames++;
+        cycles += cpu.getCycles() - lastCycles;
+        lastCycles = cpu.getCycles();
+        long busy = cpuNanos + ppuNanos + apuNanos;
+        frameNanos.record(busy - frameStartNanos);
+        reportFrameNanos.record(busy - frameStartNanos);
+        frameStartNanos = busy;
+    }
+
+    /**
+     * After a state has been loaded, the CPU cycles jump.
+     */
+    void resync() {
+        lastCycles = cpu.getCycles();
+    }
+
+    /**
+     * @return a few short lines of the rates since the last report, for the info screen and the log
+     */
+    public List<String> report() {
+        now.take(this);
+        double seconds = (now.nanos - last.nanos) / 1e9;
+        double wall = now.nanos - last.nanos;
+        long present = now.present - last.present;
+        long rendered = now.rendered - last.rendered;
+        long reused = now.reused - last.reused;
+        List<String> lines = Arrays.asList(
+                String.format(Locale.ROOT, "fps %.1f  cpu %.3fMHz  idle %.0f%%",
+                        (now.frames - last.frames) / seconds, (now.cycles - last.cycles) / seconds / 1e6,
+                        now.cycles == last.cycles ? 0.0 : 100.0 * (now.skipped - last.skipped) / (now.cycles - last.cycles)),
+                String.format(Locale.ROOT, "cpu %.0f%% ppu %.0f%% apu %.0f%% present %.0f%%",
+                        100 * (now.cpu - last.cpu) / wall, 100 * (now.ppu - last.ppu - present) / wall,
+                        100 * (now.apu - last.apu) / wall, 100 * present / wall),
+                String.format(Locale.ROOT, "frame p50 %.2fms p99 %.2fms max %.2fms",
+                        reportFrameNanos.getPercentile(0.5) / 1e6, reportFrameNanos.getPercentile(0.99) / 1e6,
+                        reportFrameNanos.getMax() / 1e6),
+                String.format(Locale.ROOT, "lines reused %.0f%%  presented %d",
+                        rendered + reused == 0 ? 0.0 : 100.0 * reused / (rendered + reused), now.presented - last.presented),
+                String.format(Locale.ROOT, "audio underruns %d dropped %d",
+                        now.underruns - last.underruns, now.dropped - last.dropped));
+        last.copy(now);
+        reportFrameNanos.reset();
+        return lines;
+    }
+
+    /**
+     * @return totals since the start, as one JSON object
+     */
+    public String toJson() {
+        Totals totals = new Totals();
+        totals.take(this);
+        double seconds = (totals.nanos - startNanos) / 1e9;
+        return String.format(Locale.ROOT,
+                "{\"frames\":%d,\"cycles\":%d,\"elapsedNanos\":%d,\"fps\":%.1f,\"cyclesPerSecond\":%.0f," +
+                        "\"nanos\":{\"cpu\":%d,\"ppu\":%d,\"apu\":%d,\"present\":%d}," +
+                        "\"frameNanos\":{\"count\":%d,\"mean\":%d,\"p50\":%d,\"p99\":%d,\"max\":%d}," +
+                        "\"catchUps\":%d,\"skippedCycles\":%d,\"renderedLines\":%d,\"reusedLines\":%d,\"presentedFrames\":%d," +
+                        "\"audioUnderruns\":%d,\"droppedSamples\":%d}",
+                totals.frames, totals.cycles, totals.nanos - startNanos, totals.frames / seconds, totals.cycles / seconds,
+                totals.cpu, totals.ppu - totals.present, totals.apu, totals.present,
+                frameNanos.getCount(), frameNanos.getMean(), frameNanos.getPercentile(0.5), frameNanos.getPercentile(0.99), frameNanos.getMax(),
+                catchUps, totals.skipped, totals.rendered, totals.reused, totals.presented, totals.underruns, totals.dropped);
+    }
+
+    private static class Totals {
+        long nanos;
+        long frames;
+        long cycles;
+        long skipped;
+        long cpu;
+        long ppu;
+        long apu;
+        long present;
+        long rendered;
+        long reused;
+        long presented;
+        long underruns;
+        long dropped;
+
+        void take(Metrics metrics) {
+            nanos = System.nanoTime();
+            frames = metrics.frames;
+            cycles = metrics.cycles;
+            skipped = metrics.cpu.getSkippedCycles();
+            cpu = metrics.cpuNanos;
+            ppu = metrics.ppuNanos;
+            apu = metrics.apuNanos;
+            present = metrics.ppu.getPresentNanos();
+            rendered = metrics.ppu.getRenderedLines();
+            reused = metrics.ppu.getReusedLines();
+            presented = metrics.ppu.getPresentedFrames();
+            underruns = metrics.apu.getAudioUnderruns();
+            dropped = metrics.apu.getDroppedSamples();
+        }
+
+        void copy(Totals totals) {
+            nanos = totals.nanos;
+            frames = totals.frames;
+            cycles = totals.cycles;
+            skipped = totals.skipped;
+            cpu = totals.cpu;
+            ppu = totals.ppu;
+            apu = totals.apu;
+            present = totals.present;
+            rendered = totals.rendered;
+            reused = totals.reused;
+            presented = totals.presented;
+            underruns = totals.underruns;
+            dropped = totals.dropped;
+        }
+    }
+}
@@ -13,9 +13,11 @@ public class NesData {
     // PlayChoice INST-ROM (if present)
     // PlayChoice PROM (if present)
 
-    final Mirroring mirroring;
+    public final Mirroring mirroring;
+    public final int mapperNumber;
 
-    public NesData(byte flag6) {
+    public NesData(byte flag6, byte flag7) {
         mirroring = BinaryUtil.getBit(flag6, 0) ? Mirroring.VERTICAL : Mirroring.HORIZONTAL;
+        mapperNumber = (Byte.toUnsignedInt(flag6) >> 4) | (Byte.toUnsignedInt(flag7) & 0xF0);
     }
 }
@@ -2,6 +2,8 @@ package nes;
 
 import nes.apu.APU;
 import nes.cpu.CPU;
+import nes.mapper.Mapper;
+import nes.mapper.MapperFactory;
 import nes.ppu.PPU;
 import nes.screen.InfoScreen;
 import nes.screen.MainScreen;
@@ -19,9 +21,10 @@ public class NesEmulator {
         MainScreen mainScreen = new MainScreen(controller1);
         InfoScreen infoScreen = new InfoScreen();
 
-        PPU ppu = new PPU(nesData.characterRom, nesData.mirroring, mainScreen, infoScreen);
+        Mapper mapper = MapperFactory.create(nesData);
+        PPU ppu = new PPU(mapper, mainScreen, infoScreen);
         APU apu = new APU();
-        CPU cpu = new CPU(ppu, apu, nesData.programRom, controller1);
+        CPU cpu = new CPU(ppu, apu, mapper, controller1);
         ppu.setCpu(cpu);
 
 //        startScreen(ppu, cpu);
@@ -1,28 +1,58 @@
 package nes;
 
+import lombok.Setter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
 import nes.apu.APU;
 import nes.cpu.CPU;
+import nes.cpu.TraceRecorder;
+import nes.mapper.Mapper;
+import nes.mapper.MapperFactory;
 import nes.ppu.PPU;
 import nes.screen.InfoScreen;
 import nes.screen.MainScreen;
 
 import javax.sound.sampled.LineUnavailableException;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
+@Slf4j
 public class NesEmulatorSingleThread {
+    private static final int SLICE_CYCLES = CPU.CLOCK_RATE / 240;
+    private static final long SLICE_NANOS = 1_000_000_000L / 240;
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    private static final long MAX_LAG_NANOS = 100_000_000L;
+    private static final int REWIND_FRAMES = 60 * 60;
+    private static final int REWIND_KEYFRAME_INTERVAL = 60;
+    private static final long REPORT_NANOS = 1_000_000_000L; // metrics on the info screen
+    private static final int REPORTS_PER_LOG = 10;
+
+    @Setter
+    private TraceRecorder trace; // instructions of headless runs are recorded to it when set
+
     public void start(String romFileName) {
+        start(romFileName, null, null);
+    }
+
+    /**
+     * @param movieFileName file to record the input movie to on exit, or null
+     * @param metricsFileName file to write the metrics to as JSON on exit, or null to log them
+     */
+    public void start(String romFileName, String movieFileName, String metricsFileName) {
         NesData nesData = loadRom(romFileName);
 
         Controller controller1 = new Controller();
         MainScreen mainScreen = new MainScreen(controller1);
         InfoScreen infoScreen = new InfoScreen();
-        PPU ppu = new PPU(nesData.characterRom, nesData.mirroring, mainScreen, infoScreen);
+        Mapper mapper = MapperFactory.create(nesData);
+        PPU ppu = new PPU(mapper, mainScreen, infoScreen);
         APU apu = new APU();
-        CPU cpu = new CPU(ppu, apu, nesData.programRom, controller1);
+        CPU cpu = new CPU(ppu, apu, mapper, controller1);
         ppu.setCpu(cpu);
         apu.setCpu(cpu);
+        cpu.setRecompilerEnabled(Boolean.getBoolean("recompiler"));
 
         cpu.reset();
         ppu.reset();
@@ -32,27 +62,174 @@ public class NesEmulatorSingleThread {
             e.printStackTrace();
             throw new RuntimeException();
         }
+        Scheduler scheduler = new Scheduler(cpu, ppu, apu);
+        RewindBuffer rewindBuffer = new RewindBuffer(new SaveState(scheduler, cpu, ppu, apu, mapper),
+                REWIND_FRAMES, REWIND_KEYFRAME_INTERVAL);
+        InputMovie movie = movieFileName != null ? new InputMovie() : null;
+        if (movie != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> writeMovie(movie, movieFileName)));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> writeMetrics(scheduler.getMetrics(), metricsFileName)));
+        scheduler.setFrameListener(() -> {
+            if (!controller1.isRewinding()) {
+                controller1.latch();
+                if (movie != null) {
+                    movie.set(ppu.getFrames(), controller1.getButtons());
+                }
+                rewindBuffer.capture();
+            }
+        });
+        runRealTime(scheduler, cpu, ppu, controller1, rewindBuffer, infoScreen);
+    }
+
+    /**
+     * Audio no longer blocks the emulation, so it is paced by the clock:
+     * run a slice of cycles, then sleep until the slice is due in real time.
+     * While rewinding, each step back restores the state at the start of a frame and runs that frame to show it.
+     * Every second the metrics are shown on the info screen, and every ten seconds they are logged.
+     */
+    private void runRealTime(Scheduler scheduler, CPU cpu, PPU ppu, Controller controller, RewindBuffer rewindBuffer,
+                             InfoScreen infoScreen) {
+        long due = System.nanoTime();
+        long reportDue = due + REPORT_NANOS;
+        int reports = 0;
         while (true) {
-            long cpuCycleBefore = cpu.getCyclesSynchronized();
-            cpu.runStep();
-            long cpuCycleAfter = cpu.getCyclesSynchronized();
-            for (int i = 0; i < cpuCycleAfter - cpuCycleBefore; i++) {
-                ppu.runStep();
-                ppu.runStep();
-                ppu.runStep();
-                apu.runStep();
+            if (controller.isRewinding() && rewindBuffer.rewind()) {
+                long frames = ppu.getFrames();
+                while (ppu.getFrames() == frames) {
+                    scheduler.run(cpu.getCycles() + SLICE_CYCLES);
+                }
+                due += FRAME_NANOS;
+            } else {
+                scheduler.run(cpu.getCycles() + SLICE_CYCLES);
+                due += SLICE_NANOS;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (wait < -MAX_LAG_NANOS) {
+                // too slow to keep up, don't try to catch up later
+                due -= wait;
             }
+            if (System.nanoTime() >= reportDue) {
+                reportDue += REPORT_NANOS;
+                List<String> lines = scheduler.getMetrics().report();
+                infoScreen.showText(lines);
+                if (++reports % REPORTS_PER_LOG == 0) {
+                    log.info("{}", String.join(" | ", lines));
+                }
+            }
+        }
+    }
+
+    /**
+     * Run without display and audio device until either budget is used up.
+     * A frame budget stops right at the end of the frame, before the next one starts to be drawn.
+     *
+     * @param state save state to start from, or null to start from power up
+     * @param movie buttons to press on each frame, or null
+     * @param maxFrames frames to run, or Long.MAX_VALUE
+     * @param maxCycles CPU cycles to run, or Long.MAX_VALUE
+     */
+    public HeadlessResult runHeadless(String romFileName, byte[] state, InputMovie movie, long maxFrames, long maxCycles) {
+        return runHeadless(loadRom(romFileName), state, movie, maxFrames, maxCycles);
+    }
+
+    public HeadlessResult runHeadless(NesData nesData, long maxFrames, long maxCycles) {
+        return runHeadless(nesData, null, null, maxFrames, maxCycles);
+    }
+
+    public HeadlessResult runHeadless(NesData nesData, byte[] state, InputMovie movie, long maxFrames, long maxCycles) {
+        Headless machine = createHeadless(nesData);
+        Mapper mapper = machine.getMapper();
+        Controller controller = machine.getController();
+        PPU ppu = machine.getPpu();
+        APU apu = machine.getApu();
+        CPU cpu = machine.getCpu();
+        cpu.setTrace(trace);
+
+        Scheduler scheduler = new Scheduler(cpu, ppu, apu);
+        SaveState saveState = new SaveState(scheduler, cpu, ppu, apu, mapper);
+        if (state != null) {
+            saveState.load(state);
+        }
+        // budgets count from the loaded state
+        scheduler.setFrameLimit(saturatedAdd(ppu.getFrames(), maxFrames));
+        if (movie != null) {
+            controller.setButtons(movie.get(ppu.getFrames()));
+            scheduler.setFrameListener(() -> controller.setButtons(movie.get(ppu.getFrames())));
+        }
+
+        long start = System.nanoTime();
+        scheduler.run(saturatedAdd(cpu.getCycles(), maxCycles));
+        long elapsed = System.nanoTime() - start;
+
+        return new HeadlessResult(ppu.getFrames(), cpu.getCycles(),
+                ppu.getMainScreenData().getHash(), cpu.getRam(), elapsed, saveState.toByteArray(),
+                scheduler.getMetrics().toJson());
+    }
+
+    /**
+     * Machine without screens and audio line, reset and ready to run
+     */
+    @Value
+    static class Headless {
+        Mapper mapper;
+        Controller controller;
+        PPU ppu;
+        APU apu;
+        CPU cpu;
+    }
+
+    static Headless createHeadless(NesData nesData) {
+        Mapper mapper = MapperFactory.create(nesData);
+        PPU ppu = new PPU(mapper, null, null);
+        APU apu = new APU();
+        Controller controller = new Controller();
+        CPU cpu = new CPU(ppu, apu, mapper, controller);
+        ppu.setCpu(cpu);
+        apu.setCpu(cpu);
+        cpu.setRecompilerEnabled(Boolean.getBoolean("recompiler"));
+
+        cpu.reset();
+        ppu.reset();
+        apu.resetHeadless();
+        return new Headless(mapper, controller, ppu, apu, cpu);
+    }
+
+    private static void writeMovie(InputMovie movie, String fileName) {
+        try (OutputStream out = new FileOutputStream(fileName)) {
+            movie.write(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeMetrics(Metrics metrics, String fileName) {
+        String json = metrics.toJson();
+        if (fileName == null) {
+            log.info("metrics {}", json);
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(fileName)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+    }
 
+    private static long saturatedAdd(long a, long b) {
+        return b > Long.MAX_VALUE - a ? Long.MAX_VALUE : a + b;
     }
 
     private NesData loadRom(String romFileName) {
-        InputStream in;
-        try {
-            in = new FileInputStream(romFileName);
+        // closed right away, as batch runs open many ROMs in one JVM
+        try (InputStream in = new FileInputStream(romFileName)) {
+            return new FileLoader().load(in);
         } catch (FileNotFoundException e) {
             throw new RuntimeException("File not found");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return new FileLoader().load(in);
     }
 }
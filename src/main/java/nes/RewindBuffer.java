@@ -0,0 +1,199 @@
+package nes;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Save states of the recent frames, to step back through one by one.
+ *
+ * Frames are kept in groups: a keyframe holding the full state, followed by frames stored as their XOR
+ * against the keyframe, run-length encoded. Consecutive frames differ in few bytes, so a delta is mostly
+ * zero runs and takes tens to hundreds of bytes instead of the whole state.
+ * When full, the oldest group is dropped as a whole. Storage is reused once allocated.
+ *
+ * Delta format, repeated: zero run length, literal length (both 7 bit varints), literal XOR bytes.
+ */
+public class RewindBuffer {
+    private static final int MIN_ZERO_RUN = 4; // shorter runs are cheaper kept in the literal
+
+    private final SaveState saveState;
+    private final int keyframeInterval;
+    private final int capacity;
+
+    private final byte[][] keyframes; // per group
+    private final byte[][] deltas; // per frame, unused for keyframes
+    private final int[] deltaLengths;
+
+    private int stateLength = -1;
+    private byte[] state = new byte[0]; // decoded or to be encoded
+    private byte[] encoded = new byte[0];
+    private int cursor; // read position in a delta
+
+    private int oldest; // first frame of a group
+    private int count;
+
+    /**
+     * @param frames frames to keep, a multiple of keyframeInterval
+     */
+    public RewindBuffer(SaveState saveState, int frames, int keyframeInterval) {
+        checkArgument(frames > 0 && frames % keyframeInterval == 0);
+        this.saveState = saveState;
+        this.keyframeInterval = keyframeInterval;
+        this.capacity = frames;
+        keyframes = new byte[frames / keyframeInterval][];
+        deltas = new byte[frames][];
+        deltaLengths = new int[frames];
+    }
+
+    /**
+     * Keep the state of the machine now, once per frame.
+     */
+    public void capture() {
+        ByteBuffer current = saveState.save();
+        int length = current.remaining();
+        if (length != stateLength) {
+            // only when the first state is captured
+            clear();
+            stateLength = length;
+            state = new byte[length];
+            encoded = new byte[length * 2 + 16];
+        }
+        if (count == capacity) {
+            oldest = (oldest + keyframeInterval) % capacity;
+            count -= keyframeInterval;
+        }
+
+        int frame = (oldest + count) % capacity;
+        int group = frame / keyframeInterval;
+        if (frame % keyframeInterval == 0) {
+            if (keyframes[group] == null) {
+                keyframes[group] = new byte[length];
+            }
+            current.get(keyframes[group]);
+        } else {
+            current.get(state);
+            int encodedLength = encode(state, keyframes[group]);
+            if (deltas[frame] == null || deltas[frame].length < encodedLength) {
+                deltas[frame] = Arrays.copyOf(encoded, Math.max(encodedLength, 64));
+            } else {
+                System.arraycopy(encoded, 0, deltas[frame], 0, encodedLength);
+            }
+            deltaLengths[frame] = encodedLength;
+        }
+        count++;
+    }
+
+    /**
+     * Restore the newest state kept and drop it, so that the next call goes one frame further back.
+     *
+     * @return false if there is no state left
+     */
+    public boolean rewind() {
+        if (count == 0) {
+            return false;
+        }
+        count--;
+        int frame = (oldest + count) % capacity;
+        byte[] keyframe = keyframes[frame / keyframeInterval];
+        if (frame % keyframeInterval == 0) {
+            saveState.load(keyframe);
+        } else {
+            decode(deltas[frame], deltaLengths[frame], keyframe);
+            saveState.load(state);
+        }
+        return true;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void clear() {
+        oldest = 0;
+        count = 0;
+    }
+
+    /**
+     * @return bytes held by keyframes and deltas
+     */
+    public long getMemoryUsage() {
+        long bytes = 0;
+        for (byte[] keyframe : keyframes) {
+            bytes += keyframe == null ? 0 : keyframe.length;
+        }
+        for (byte[] delta : deltas) {
+            bytes += delta == null ? 0 : delta.length;
+        }
+        return bytes;
+    }
+
+    private int encode(byte[] current, byte[] keyframe) {
+        int length = current.length;
+        int out = 0;
+        int i = 0;
+        while (i < length) {
+            int zeroStart = i;
+            while (i < length && current[i] == keyframe[i]) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int literalStart = i;
+            while (i < length) {
+                if (current[i] != keyframe[i]) {
+                    i++;
+                    continue;
+                }
+                int j = i;
+                while (j < length && j - i < MIN_ZERO_RUN && current[j] == keyframe[j]) {
+                    j++;
+                }
+                if (j - i == MIN_ZERO_RUN || j == length) {
+                    break;
+                }
+                i = j;
+            }
+            out = writeVarint(i - literalStart, writeVarint(literalStart - zeroStart, out));
+            for (int k = literalStart; k < i; k++) {
+                encoded[out++] = (byte)(current[k] ^ keyframe[k]);
+            }
+        }
+        return out;
+    }
+
+    private void decode(byte[] delta, int deltaLength, byte[] keyframe) {
+        System.arraycopy(keyframe, 0, state, 0, stateLength);
+        int position = 0;
+        cursor = 0;
+        while (cursor < deltaLength) {
+            position += readVarint(delta);
+            int literal = readVarint(delta);
+            for (int k = 0; k < literal; k++) {
+                state[position++] ^= delta[cursor++];
+            }
+        }
+    }
+
+    private int writeVarint(int value, int out) {
+        while (value >= 0x80) {
+            encoded[out++] = (byte)(value | 0x80);
+            value >>>= 7;
+        }
+        encoded[out++] = (byte)value;
+        return out;
+    }
+
+    private int readVarint(byte[] delta) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = delta[cursor++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package nes;
+
+import nes.apu.APU;
+import nes.cpu.CPU;
+import nes.mapper.Mapper;
+import nes.ppu.PPU;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Snapshot of the whole machine in a compact binary format:
+ * header (magic, version, PRG ROM size, payload length), then CPU, PPU, APU and mapper state.
+ *
+ * States are written through one direct buffer allocated up front, so capturing one allocates nothing.
+ * The buffer returned by save is overwritten by the next save, copy it to keep the state.
+ */
+public class SaveState {
+    static final int MAGIC = 0x4E455353; // "NESS"
+    static final int VERSION = 3;
+    private static final int HEADER_SIZE = 16;
+    private static final int CAPACITY = 0x4000; // without CHR RAM
+
+    private final Scheduler scheduler;
+    private final CPU cpu;
+    private final PPU ppu;
+    private final APU apu;
+    private final Mapper mapper;
+
+    private final ByteBuffer buffer;
+
+    public SaveState(Scheduler scheduler, CPU cpu, PPU ppu, APU apu, Mapper mapper) {
+        this.scheduler = scheduler;
+        this.cpu = cpu;
+        this.ppu = ppu;
+        this.apu = apu;
+        this.mapper = mapper;
+        buffer = ByteBuffer.allocateDirect(CAPACITY + (mapper.hasCharacterRam() ? mapper.getCharacterSize() : 0));
+    }
+
+    /**
+     * @return the state from position 0 to the limit, valid until the next call
+     */
+    public ByteBuffer save() {
+        scheduler.catchUp();
+
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(mapper.getProgramRomSize());
+        buffer.putInt(0); // payload length
+        cpu.save(buffer);
+        ppu.save(buffer);
+        apu.save(buffer);
+        mapper.save(buffer);
+        buffer.putInt(12, buffer.position() - HEADER_SIZE);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Restore a state written by save, read from the position of the given buffer. The position is left unchanged.
+     */
+    public void load(ByteBuffer state) {
+        int position = state.position();
+        checkArgument(state.remaining() >= HEADER_SIZE && state.getInt(position) == MAGIC, "not a save state");
+        checkArgument(state.getInt(position + 4) == VERSION, "unsupported save state version %s", state.getInt(position + 4));
+        checkArgument(state.getInt(position + 8) == mapper.getProgramRomSize(), "save state of another cartridge");
+        checkArgument(state.getInt(position + 12) == state.remaining() - HEADER_SIZE, "truncated save state");
+
+        state.position(position + HEADER_SIZE);
+        cpu.load(state);
+        ppu.load(state);
+        apu.load(state);
+        mapper.load(state);
+        state.position(position);
+
+        scheduler.resync();
+    }
+
+    public byte[] toByteArray() {
+        ByteBuffer state = save();
+        byte[] bytes = new byte[state.remaining()];
+        state.get(bytes);
+        return bytes;
+    }
+
+    public void load(byte[] state) {
+        load(ByteBuffer.wrap(state));
+    }
+}
@@ -0,0 +1,117 @@
+package nes;
+
+import lombok.Getter;
+import lombok.Setter;
+import nes.apu.APU;
+import nes.cpu.CPU;
+import nes.ppu.PPU;
+
+/**
+ * Runs the CPU ahead and lets the PPU and APU catch up to it in batches.
+ *
+ * They are synchronized only when the CPU accesses one of their registers, and at the next PPU event
+ * (VBlank NMI, mapper IRQ scanline, end of frame, a change of PPUSTATUS). As PPUSTATUS changes only at events,
+ * the CPU can poll it without synchronizing, see {@link CPU#runUntil}. The CPU sees the same timing as with 3:1 lockstep:
+ * a register access sees the PPU at the cycle the instruction started, and an interrupt is taken
+ * after the instruction during which it was raised.
+ *
+ * The time spent in each of them is added to the metrics. Register accesses are the hottest path, so only one
+ * in SAMPLES of their catch-ups is timed, and counts for all of them; its time is taken out of the CPU time.
+ */
+public class Scheduler {
+    private static final int SAMPLES = 16; // power of 2
+
+    private final CPU cpu;
+    private final PPU ppu;
+    private final APU apu;
+
+    private long syncedCycles; // CPU cycle the PPU and APU have been run to
+
+    @Setter
+    private long frameLimit = Long.MAX_VALUE; // the PPU stops right at the end of this frame
+
+    @Setter
+    private Runnable frameListener; // called when the PPU has started a new frame
+
+    @Getter
+    private final Metrics metrics;
+
+    public Scheduler(CPU cpu, PPU ppu, APU apu) {
+        this.cpu = cpu;
+        this.ppu = ppu;
+        this.apu = apu;
+        metrics = new Metrics(cpu, ppu, apu);
+        cpu.setScheduler(this);
+    }
+
+    /**
+     * @param maxCycles CPU cycle to stop at, or Long.MAX_VALUE
+     */
+    public void run(long maxCycles) {
+        while (cpu.getCycles() < maxCycles && ppu.getFrames() < frameLimit) {
+            long frames = ppu.getFrames();
+            long event = getNextEvent();
+            long start = System.nanoTime();
+            long caughtUp = metrics.ppuNanos + metrics.apuNanos;
+            cpu.runUntil(Math.min(event, maxCycles));
+            metrics.cpuNanos += System.nanoTime() - start - (metrics.ppuNanos + metrics.apuNanos - caughtUp);
+            catchUp(1);
+            if (ppu.getFrames() != frames) {
+                metrics.frameDone();
+                if (frameListener != null) {
+                    frameListener.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return CPU cycle at which the PPU will have run its next event step
+     */
+    public long getNextEvent() {
+        return syncedCycles + (ppu.getDotsToNextEvent() + 2) / 3;
+    }
+
+    /**
+     * After a state has been loaded, the PPU and APU are at the CPU cycle.
+     */
+    void resync() {
+        syncedCycles = cpu.getCycles();
+        metrics.resync();
+    }
+
+    /**
+     * Run the PPU and APU up to the current CPU cycle, before a register access.
+     */
+    public void catchUp() {
+        if (cpu.getCycles() > syncedCycles) {
+            catchUp((++metrics.catchUps & (SAMPLES - 1)) == 0 ? SAMPLES : 0);
+        }
+    }
+
+    /**
+     * @param weight number of catch-ups the time of this one counts for, 0 to not time it
+     */
+    private void catchUp(int weight) {
+        long target = cpu.getCycles();
+        long cycles = target - syncedCycles;
+        if (cycles <= 0) {
+            return;
+        }
+        long start = weight != 0 ? System.nanoTime() : 0;
+        for (long dot = 3 * cycles; dot > 0; dot--) {
+            ppu.runStep();
+            if (ppu.getFrames() >= frameLimit) {
+                break;
+            }
+        }
+        long ppuEnd = weight != 0 ? System.nanoTime() : 0;
+        apu.run((int)cycles);
+        syncedCycles = target;
+        if (weight != 0) {
+            long end = System.nanoTime();
+            metrics.ppuNanos += weight * (ppuEnd - start);
+            metrics.apuNanos += weight * (end - ppuEnd);
+        }
+    }
+}
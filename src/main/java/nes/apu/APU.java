@@ -2,19 +2,20 @@ package nes.apu;
 
 import common.ByteRegister;
 import common.ByteRegisterImpl;
+import common.StateSerializable;
 import lombok.extern.slf4j.Slf4j;
+import nes.apu.channel.Channel;
 import nes.apu.channel.NoiseChannel;
 import nes.apu.channel.PulseChannel;
 import nes.apu.channel.TriangleChannel;
 import nes.apu.register.*;
 import nes.cpu.CPU;
 
-import javax.sound.sampled.*;
+import javax.sound.sampled.LineUnavailableException;
+import java.nio.ByteBuffer;
 
 @Slf4j
-public class APU {
-
-    private SourceDataLine line;
+public class APU implements StateSerializable {
 
     // Registers
     private final PulseChannel pulse1;
@@ -84,16 +85,48 @@ public class APU {
         this.frameCounter.setCpu(cpu);
     }
 
-    private static final int SAMPLE_RATE = 22050;
+    private static final int SAMPLE_RATE = 44100;
+    private static final int MAX_RUN = 1 << 15; // CPU cycles synthesized at once
+    private static final float VOLUME = 24000f; // mixer output 0.0-1.0 to 16 bit samples
+
+    private BlipBuffer blip; // null when running headless
+    private AudioOutput output;
+    private short[] samples;
 
     public void reset() throws LineUnavailableException {
-        AudioFormat audioFormat = new AudioFormat(
-                SAMPLE_RATE, 8, 1, false, true);
-        DataLine.Info info = new DataLine.Info(SourceDataLine.class, audioFormat);
-        line = (SourceDataLine) AudioSystem.getLine(info);
-        line.open();
-        line.start();
+        resetSilent();
+        output = new AudioOutput(SAMPLE_RATE);
+    }
+
+    /**
+     * Reset synthesizing samples as with an audio device, but dropping them (benchmarks).
+     */
+    void resetSilent() {
+        blip = new BlipBuffer(CPU.CLOCK_RATE, SAMPLE_RATE, MAX_RUN);
+        samples = new short[SAMPLE_RATE * MAX_RUN / CPU.CLOCK_RATE + 2];
+        output = null;
+
+        resetChannels();
+    }
+
+    /**
+     * Reset without opening an audio device, no samples are synthesized.
+     */
+    public void resetHeadless() {
+        blip = null;
+        output = null;
+        resetChannels();
+    }
+
+    public long getAudioUnderruns() {
+        return output == null ? 0 : output.getUnderruns();
+    }
+
+    public long getDroppedSamples() {
+        return output == null ? 0 : output.getDropped();
+    }
 
+    private void resetChannels() {
         pulse1.reset();
         pulse2.reset();
         triangle.reset();
@@ -102,85 +135,160 @@ public class APU {
         frameCounter.reset();
 
         cycle = 0;
-        sample = 0;
-        freqParam = 0.7;
+        level = 0;
     }
 
-    private static final int BASE_FREQ = 1789773; // Hz
-    private static final int BUFFER_LENGTH = 110;
-
-    private double freqParam;
-
-    private byte[] buffer = new byte[BUFFER_LENGTH];
-
     private long cycle;
-    private int sample;
+    private float level; // last output level given to the blip buffer
 
     public void runStep() {
-        runStepInner();
-        cycle++;
+        run(1);
     }
 
-    private void runStepInner() {
+    /**
+     * Run the given CPU cycles, jumping from one event (quarter/half frame, output change of a channel) to the next.
+     * Channel timers are advanced in one go up to each event.
+     * Per cycle the order is: timers (on even cycles), frame counter, mixing.
+     * The output level is only looked at when it may have changed, and every change is handed to the
+     * blip buffer at its exact cycle, which turns it into band-limited samples.
+     */
+    public void run(int cycles) {
+        while (cycles > MAX_RUN) {
+            run(MAX_RUN);
+            cycles -= MAX_RUN;
+        }
+        long start = cycle;
+        long end = cycle + cycles;
+        updateLevel(0);
+        while (cycle < end) {
+            long frameStep = cycle + frameCounter.getCyclesToNextStep() - 1;
+            long event = blip == null ? frameStep : Math.min(frameStep, getNextOutputChange());
+            if (event >= end) {
+                clockTimers(end);
+                frameCounter.clock((int)(end - cycle));
+                cycle = end;
+                break;
+            }
+
+            clockTimers(event + 1);
+            frameCounter.clock((int)(event + 1 - cycle));
+            cycle = event + 1;
+
+            // Envelope, Length Counters, Sweep
+            if (event == frameStep) {
+                if (frameCounter.isQuarterFrame()) {
+                    pulse1.clockEnvelope();
+                    pulse2.clockEnvelope();
+                    noise.clockEnvelope();
+                    triangle.clockLinearCounter();
+                }
+                if (frameCounter.isHalfFrame()) {
+                    pulse1.clockLengthCounter();
+                    pulse2.clockLengthCounter();
+                    triangle.clockLengthCounter();
+                    noise.clockLengthCounter();
+                    pulse1.clockSweep();
+                    pulse2.clockSweep();
+                }
+            }
 
-        // Frequency
-        if (cycle % 2 == 0) {
-            pulse1.clockTimer();
-            pulse2.clockTimer();
-            triangle.clockTimer();
-            noise.clockTimer();
+            updateLevel((int)(cycle - start));
         }
 
-        // Envelope, Length Counters, Sweep
-        frameCounter.clock();
-        if (frameCounter.isQuarterFrame()) {
-            pulse1.clockEnvelope();
-            pulse2.clockEnvelope();
-            noise.clockEnvelope();
-            triangle.clockLinearCounter();
+        if (blip != null) {
+            blip.endFrame(cycles);
+            int count = blip.readSamples(samples, samples.length);
+            if (output != null) {
+                output.write(samples, count);
+            }
         }
-        if (frameCounter.isHalfFrame()) {
-            pulse1.clockLengthCounter();
-            pulse2.clockLengthCounter();
-            triangle.clockLengthCounter();
-            noise.clockLengthCounter();
-            pulse1.clockSweep();
-            pulse2.clockSweep();
+    }
+
+    /**
+     * @return the cycle on which the first audible channel clocks its sequencer
+     */
+    private long getNextOutputChange() {
+        long even = (cycle + 1) & ~1L;
+        long next = Long.MAX_VALUE;
+        next = Math.min(next, getNextOutputChange(pulse1, even));
+        next = Math.min(next, getNextOutputChange(pulse2, even));
+        // ultrasonic triangle would cost an event every other cycle for nothing audible
+        if (triangle.getTimerPeriod() >= 2) {
+            next = Math.min(next, getNextOutputChange(triangle, even));
         }
+        next = Math.min(next, getNextOutputChange(noise, even));
+        return next;
+    }
 
-        // Sampling, Mixing, Output
-        if (cycle % (getBaseFrequency() / SAMPLE_RATE) == 0) {
-            // mix pulse1 & pulse2
-            buffer[sample % BUFFER_LENGTH] = (byte)(mixPulse()+ mixTriangleNoiseDMC());
-//            buffer[sample % BUFFER_LENGTH] = (byte)(mixTriangleNoiseDMC());
-//            log.warn("{}", buffer[sample % BUFFER_LENGTH]);
-            sample++;
-            if (sample % BUFFER_LENGTH == 0) {
-                line.write(buffer, 0, BUFFER_LENGTH);
-            }
+    private static long getNextOutputChange(Channel channel, long even) {
+        return channel.isAudible() ? even + 2L * channel.getTimer() : Long.MAX_VALUE;
+    }
+
+    private void updateLevel(int time) {
+        if (blip == null) {
+            return;
+        }
+        float newLevel = mixPulse() + mixTriangleNoiseDMC();
+        if (newLevel != level) {
+            blip.addDelta(time, (newLevel - level) * VOLUME);
+            level = newLevel;
         }
     }
 
-    private byte mixPulse() {
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.putLong(cycle);
+        frameCounter.save(buffer);
+        pulse1.save(buffer);
+        pulse2.save(buffer);
+        triangle.save(buffer);
+        noise.save(buffer);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        cycle = buffer.getLong();
+        frameCounter.load(buffer);
+        pulse1.load(buffer);
+        pulse2.load(buffer);
+        triangle.load(buffer);
+        noise.load(buffer);
+    }
+
+    /**
+     * Frequency: timers are clocked on every even cycle, up to (excluding) the given cycle
+     */
+    private void clockTimers(long to) {
+        int clocks = (int)((to + 1) / 2 - (cycle + 1) / 2);
+        if (clocks == 0) {
+            return;
+        }
+        pulse1.clockTimer(clocks);
+        pulse2.clockTimer(clocks);
+        triangle.clockTimer(clocks);
+        noise.clockTimer(clocks);
+    }
+
+    /**
+     * @return 0.0-0.26
+     */
+    private float mixPulse() {
         int pulse = pulse1.getSignal() + pulse2.getSignal();
         if (pulse == 0) {
             return 0;
         }
-        double outputLevel = 95.88 / ((8128.0 / pulse) + 100.0); // 0.0-1.0
-        return (byte)(255 * outputLevel);
+        return (float)(95.88 / ((8128.0 / pulse) + 100.0));
     }
 
-    private byte mixTriangleNoiseDMC() {
+    /**
+     * @return 0.0-0.75
+     */
+    private float mixTriangleNoiseDMC() {
         int tnd = triangle.getSignal() + noise.getSignal();
         if (tnd == 0) {
             return 0;
         }
-        double level = 159.79 / ( 1.0 / (triangle.getSignal() / 8227.0 + noise.getSignal() / 12241.0) + 100.0 );
-        return (byte)(255 * level);
-    }
-
-    int getBaseFrequency() {
-        return (int)(BASE_FREQ * freqParam);
+        return (float)(159.79 / ( 1.0 / (triangle.getSignal() / 8227.0 + noise.getSignal() / 12241.0) + 100.0 ));
     }
 
     // TODO frame interrupt
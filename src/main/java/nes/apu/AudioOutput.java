@@ -0,0 +1,72 @@
+package nes.apu;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sound.sampled.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays 16 bit mono samples on a dedicated thread, so that the emulation never blocks on the audio device.
+ */
+@Slf4j
+class AudioOutput implements Runnable {
+    private static final int RING_CAPACITY = 1 << 14; // ~370ms at 44.1kHz
+    private static final int CHUNK = 512;
+
+    private final SourceDataLine line;
+    private final SampleRingBuffer ring = new SampleRingBuffer(RING_CAPACITY);
+
+    @Getter
+    private long dropped; // samples the ring had no room for, the emulation ran ahead
+    @Getter
+    private volatile long underruns; // times the device ran dry, the emulation fell behind
+
+    AudioOutput(int sampleRate) throws LineUnavailableException {
+        AudioFormat audioFormat = new AudioFormat(sampleRate, 16, 1, true, false);
+        line = AudioSystem.getSourceDataLine(audioFormat);
+        line.open(audioFormat, CHUNK * 2 * 8);
+        line.start();
+
+        Thread thread = new Thread(this, "audio");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Called from the emulation thread, never blocks.
+     */
+    void write(short[] samples, int count) {
+        int written = ring.write(samples, count);
+        if (written < count) {
+            dropped += count - written;
+            if (log.isDebugEnabled()) {
+                log.debug("audio buffer full, {} samples dropped", dropped);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        short[] samples = new short[CHUNK];
+        byte[] bytes = new byte[CHUNK * 2];
+        boolean playing = false;
+        while (true) {
+            int n = ring.read(samples, CHUNK);
+            if (n == 0) {
+                if (playing && line.available() >= line.getBufferSize()) {
+                    underruns++;
+                    playing = false;
+                }
+                LockSupport.parkNanos(1_000_000L);
+                continue;
+            }
+            playing = true;
+            for (int i = 0; i < n; i++) {
+                bytes[i * 2] = (byte)samples[i];
+                bytes[i * 2 + 1] = (byte)(samples[i] >> 8);
+            }
+            line.write(bytes, 0, n * 2);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package nes.apu;
+
+import java.util.Arrays;
+
+/**
+ * Band-limited step synthesis.
+ *
+ * Instead of point sampling the output level, every change of the level is added as a delta, spread over
+ * a few samples by a windowed sinc kernel chosen by the sub-sample phase of its clock time.
+ * Integrating the deltas gives band-limited steps, which removes the aliasing of square waves.
+ *
+ * Times are in clocks relative to the start of the current frame, see {@link #endFrame}.
+ */
+class BlipBuffer {
+    private static final int PHASE_BITS = 5;
+    private static final int PHASES = 1 << PHASE_BITS;
+    static final int WIDTH = 16; // kernel width in samples, also the latency is half of it
+    private static final double CUTOFF = 0.9; // of Nyquist frequency
+    private static final float HIGH_PASS = 0.999f; // removes the DC offset of the unipolar NES output
+
+    private static final float[][] KERNELS = createKernels();
+
+    private final long factor; // samples per clock, 32.32 fixed point
+    private final float[] deltas;
+    private long offset; // sample position of the frame start, 32.32 fixed point
+
+    private float integrator;
+    private float previousInput;
+    private float previousOutput;
+
+    /**
+     * @param maxFrameClocks longest frame passed to endFrame
+     */
+    BlipBuffer(int clockRate, int sampleRate, int maxFrameClocks) {
+        factor = Math.round((double)sampleRate / clockRate * (1L << 32));
+        deltas = new float[(int)((long)maxFrameClocks * sampleRate / clockRate) + 2 * WIDTH + 2];
+    }
+
+    private static float[][] createKernels() {
+        float[][] kernels = new float[PHASES][WIDTH];
+        for (int phase = 0; phase < PHASES; phase++) {
+            double fraction = (double)phase / PHASES;
+            double sum = 0;
+            for (int k = 0; k < WIDTH; k++) {
+                double x = k - (WIDTH / 2 - 1) - fraction;
+                double sinc = x == 0 ? CUTOFF : Math.sin(Math.PI * CUTOFF * x) / (Math.PI * x);
+                double window = 0.42 + 0.5 * Math.cos(2 * Math.PI * x / WIDTH) + 0.08 * Math.cos(4 * Math.PI * x / WIDTH);
+                kernels[phase][k] = (float)(sinc * window);
+                sum += kernels[phase][k];
+            }
+            // a step must end at exactly its delta
+            for (int k = 0; k < WIDTH; k++) {
+                kernels[phase][k] /= sum;
+            }
+        }
+        return kernels;
+    }
+
+    /**
+     * @param time clocks from the start of the frame
+     */
+    void addDelta(int time, float delta) {
+        long position = offset + time * factor;
+        int index = (int)(position >>> 32);
+        float[] kernel = KERNELS[(int)(position >>> (32 - PHASE_BITS)) & (PHASES - 1)];
+        for (int k = 0; k < WIDTH; k++) {
+            deltas[index + k] += delta * kernel[k];
+        }
+    }
+
+    /**
+     * Make the samples before the end of the frame available; the next frame starts there.
+     */
+    void endFrame(int clocks) {
+        offset += clocks * factor;
+    }
+
+    int getSamplesAvailable() {
+        return (int)(offset >>> 32);
+    }
+
+    /**
+     * @return number of samples read, up to max
+     */
+    int readSamples(short[] out, int max) {
+        int count = Math.min(max, getSamplesAvailable());
+        for (int i = 0; i < count; i++) {
+            integrator += deltas[i];
+            float output = integrator - previousInput + HIGH_PASS * previousOutput;
+            previousInput = integrator;
+            previousOutput = output;
+            out[i] = (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(output)));
+        }
+        int remaining = getSamplesAvailable() - count + WIDTH + 1;
+        System.arraycopy(deltas, count, deltas, 0, remaining);
+        Arrays.fill(deltas, remaining, remaining + count, 0f);
+        offset -= (long)count << 32;
+        return count;
+    }
+}
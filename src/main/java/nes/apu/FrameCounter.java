@@ -1,16 +1,16 @@
 package nes.apu;
 
-import com.google.common.collect.ImmutableList;
+import common.StateSerializable;
 import lombok.Getter;
 import lombok.Setter;
 import nes.cpu.CPU;
 
-import java.util.List;
+import java.nio.ByteBuffer;
 
 import static nes.apu.FrameCounter.FrameCounterMode.FIVE_STEP;
 import static nes.apu.FrameCounter.FrameCounterMode.FOUR_STEP;
 
-class FrameCounter {
+class FrameCounter implements StateSerializable {
 
     @Setter
     private CPU cpu;
@@ -21,45 +21,77 @@ class FrameCounter {
         cpuCycle = 0;
     }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.putLong(cpuCycle);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        cpuCycle = buffer.getLong();
+    }
+
     // TODO side effects https://wiki.nesdev.com/w/index.php/APU_Frame_Counter
     // TODO frame interrupt
 
-    void clock() {
-        cpuCycle++;
+    void clock(int cycles) {
+        cpuCycle += cycles;
     }
 
     boolean isQuarterFrame() {
         FrameCounterMode frameCounterMode = getFrameCounterMode();
-        int frame = (int)(cpuCycle % frameCounterMode.getCycles());
-        return frameCounterMode.getQuarterFrames().contains(frame);
+        return contains(frameCounterMode.getQuarterFrames(), (int)(cpuCycle % frameCounterMode.getCycles()));
     }
 
     boolean isHalfFrame() {
+        FrameCounterMode frameCounterMode = getFrameCounterMode();
+        return contains(frameCounterMode.getHalfFrames(), (int)(cpuCycle % frameCounterMode.getCycles()));
+    }
+
+    /**
+     * @return number of clocks until the next quarter (or half) frame, 1 or more
+     */
+    int getCyclesToNextStep() {
         FrameCounterMode frameCounterMode = getFrameCounterMode();
         int frame = (int)(cpuCycle % frameCounterMode.getCycles());
-        return frameCounterMode.getHalfFrames().contains(frame);
+        // half frames are also quarter frames
+        for (int step : frameCounterMode.getQuarterFrames()) {
+            if (step > frame) {
+                return step - frame;
+            }
+        }
+        return frameCounterMode.getCycles() - frame + frameCounterMode.getQuarterFrames()[0];
+    }
+
+    private static boolean contains(int[] steps, int frame) {
+        for (int step : steps) {
+            if (step == frame) {
+                return true;
+            }
+        }
+        return false;
     }
 
     enum FrameCounterMode {
         FOUR_STEP(
                 29830,
-                ImmutableList.of(7457, 14913, 22371, 29829),
-                ImmutableList.of(14913, 29829)),
+                new int[]{7457, 14913, 22371, 29829},
+                new int[]{14913, 29829}),
         FIVE_STEP(
                 37282,
-                ImmutableList.of(7457, 14913, 22371, 37281),
-                ImmutableList.of(14913, 37281));
+                new int[]{7457, 14913, 22371, 37281},
+                new int[]{14913, 37281});
 
         @Getter
         private final int cycles;
 
         @Getter
-        private final List<Integer> quarterFrames;
+        private final int[] quarterFrames; // ascending
 
         @Getter
-        private final List<Integer> halfFrames;
+        private final int[] halfFrames;
 
-        FrameCounterMode(int cycles, List<Integer> quarterFrames, List<Integer> halfFrames) {
+        FrameCounterMode(int cycles, int[] quarterFrames, int[] halfFrames) {
             this.cycles = cycles;
             this.quarterFrames = quarterFrames;
             this.halfFrames = halfFrames;
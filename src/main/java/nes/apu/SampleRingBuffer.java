@@ -0,0 +1,61 @@
+package nes.apu;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Lock-free ring buffer for one producer (emulation) and one consumer (audio) thread.
+ * Neither side ever waits: the producer drops what does not fit, the consumer gets what is there.
+ */
+class SampleRingBuffer {
+    private final short[] buffer;
+    private final int mask;
+
+    // ever-increasing indices, published with lazySet (store-store barrier only)
+    private final AtomicLong readIndex = new AtomicLong();
+    private final AtomicLong writeIndex = new AtomicLong();
+
+    /**
+     * @param capacity power of 2
+     */
+    SampleRingBuffer(int capacity) {
+        checkArgument(Integer.bitCount(capacity) == 1);
+        buffer = new short[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Called from the producer thread only.
+     *
+     * @return number of samples written, less than count when the buffer is full
+     */
+    int write(short[] samples, int count) {
+        long write = writeIndex.get();
+        int n = (int)Math.min(count, buffer.length - (write - readIndex.get()));
+        for (int i = 0; i < n; i++) {
+            buffer[(int)(write + i) & mask] = samples[i];
+        }
+        writeIndex.lazySet(write + n);
+        return n;
+    }
+
+    /**
+     * Called from the consumer thread only.
+     *
+     * @return number of samples read, 0 if empty
+     */
+    int read(short[] samples, int max) {
+        long read = readIndex.get();
+        int n = (int)Math.min(max, writeIndex.get() - read);
+        for (int i = 0; i < n; i++) {
+            samples[i] = buffer[(int)(read + i) & mask];
+        }
+        readIndex.lazySet(read + n);
+        return n;
+    }
+
+    int size() {
+        return (int)(writeIndex.get() - readIndex.get());
+    }
+}
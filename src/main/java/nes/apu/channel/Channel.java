@@ -1,9 +1,12 @@
 package nes.apu.channel;
 
+import common.StateSerializable;
 import lombok.Getter;
 import lombok.Setter;
 
-public abstract class Channel {
+import java.nio.ByteBuffer;
+
+public abstract class Channel implements StateSerializable {
 
     Channel() { }
 
@@ -11,6 +14,7 @@ public abstract class Channel {
     @Getter
     protected boolean enabled;
 
+    @Getter
     protected int timer; // for adjusting frequency. 11 bit, reset when HI written
 
     @Getter
@@ -26,6 +30,20 @@ public abstract class Channel {
         }
     }
 
+    /**
+     * Same as calling clockTimer() the given times, but jumps from one sequencer clock to the next.
+     */
+    public void clockTimer(int clocks) {
+        if (clocks <= timer) {
+            timer -= clocks;
+            return;
+        }
+        clocks -= timer + 1;
+        int period = timerPeriod + 1;
+        clockSequencer(1 + clocks / period);
+        timer = timerPeriod - clocks % period;
+    }
+
     void reset() {
         timer = 0;
         timerPeriod = 0;
@@ -46,6 +64,10 @@ public abstract class Channel {
     // override to give waveform
     abstract protected int getSignalInternal();
 
+    public final boolean isAudible() {
+        return !isMuted();
+    }
+
     // override to give mute condition
     protected boolean isMuted() {
         return !enabled;
@@ -53,6 +75,13 @@ public abstract class Channel {
 
     abstract protected void clockSequencer();
 
+    // override when the sequencer can be advanced at once
+    protected void clockSequencer(int times) {
+        for (int i = 0; i < times; i++) {
+            clockSequencer();
+        }
+    }
+
     /**
      *
      * @param value 0-255
@@ -69,4 +98,17 @@ public abstract class Channel {
         timerPeriod = (timerPeriod & 0b00011111111) | (value << 8);
     }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.put((byte)(enabled ? 1 : 0));
+        buffer.putShort((short)timer);
+        buffer.putShort((short)timerPeriod);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        enabled = buffer.get() != 0;
+        timer = buffer.getShort();
+        timerPeriod = buffer.getShort();
+    }
 }
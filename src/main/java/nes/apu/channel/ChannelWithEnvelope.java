@@ -3,6 +3,8 @@ package nes.apu.channel;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.nio.ByteBuffer;
+
 public abstract class ChannelWithEnvelope extends ChannelWithLengthCounter {
 
     @Getter
@@ -36,4 +38,20 @@ public abstract class ChannelWithEnvelope extends ChannelWithLengthCounter {
     public void clockEnvelope() {
         envelope.clock();
     }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.put((byte)volume);
+        buffer.put((byte)(useConstantVolume ? 1 : 0));
+        envelope.save(buffer);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        super.load(buffer);
+        volume = buffer.get();
+        useConstantVolume = buffer.get() != 0;
+        envelope.load(buffer);
+    }
 }
@@ -2,6 +2,8 @@ package nes.apu.channel;
 
 import lombok.Getter;
 
+import java.nio.ByteBuffer;
+
 public abstract class ChannelWithLengthCounter extends Channel {
 
     @Getter
@@ -34,4 +36,18 @@ public abstract class ChannelWithLengthCounter extends Channel {
     protected boolean isMuted() {
         return super.isMuted() || lengthCounter.isMuting();
     }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.put((byte)(lengthCounterHalt ? 1 : 0));
+        lengthCounter.save(buffer);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        super.load(buffer);
+        lengthCounterHalt = buffer.get() != 0;
+        lengthCounter.load(buffer);
+    }
 }
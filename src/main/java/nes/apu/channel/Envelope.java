@@ -1,9 +1,12 @@
 package nes.apu.channel;
 
+import common.StateSerializable;
 import lombok.Getter;
 import lombok.Setter;
 
-public class Envelope {
+import java.nio.ByteBuffer;
+
+public class Envelope implements StateSerializable {
 
     private final ChannelWithEnvelope channel;
 
@@ -53,4 +56,17 @@ public class Envelope {
         }
     }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.put((byte)(startFlag ? 1 : 0));
+        buffer.put((byte)decayLevel);
+        buffer.put((byte)divider);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        startFlag = buffer.get() != 0;
+        decayLevel = buffer.get();
+        divider = buffer.get();
+    }
 }
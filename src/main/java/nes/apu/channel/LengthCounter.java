@@ -1,6 +1,10 @@
 package nes.apu.channel;
 
-public class LengthCounter {
+import common.StateSerializable;
+
+import java.nio.ByteBuffer;
+
+public class LengthCounter implements StateSerializable {
 
     private static final int[] LENGTH_TABLE = {
             10,254,
@@ -54,4 +58,14 @@ public class LengthCounter {
         }
         this.value = LENGTH_TABLE[key];
     }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.put((byte)value);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        value = Byte.toUnsignedInt(buffer.get());
+    }
 }
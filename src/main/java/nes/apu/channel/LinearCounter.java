@@ -1,8 +1,11 @@
 package nes.apu.channel;
 
+import common.StateSerializable;
 import lombok.Setter;
 
-public class LinearCounter {
+import java.nio.ByteBuffer;
+
+public class LinearCounter implements StateSerializable {
 
     private final TriangleChannel triangle;
 
@@ -37,4 +40,18 @@ public class LinearCounter {
     boolean isMuting() {
         return value == 0;
     }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.put((byte)value);
+        buffer.put((byte)load);
+        buffer.put((byte)(reloadFlag ? 1 : 0));
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        value = buffer.get();
+        load = buffer.get();
+        reloadFlag = buffer.get() != 0;
+    }
 }
@@ -3,6 +3,8 @@ package nes.apu.channel;
 import common.BinaryUtil;
 import lombok.Setter;
 
+import java.nio.ByteBuffer;
+
 public class NoiseChannel extends ChannelWithEnvelope {
 
     public NoiseChannel() {
@@ -50,4 +52,18 @@ public class NoiseChannel extends ChannelWithEnvelope {
     public void setNoisePeriod(int key) {
         timerPeriod = PERIOD[key];
     }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.put((byte)(modeFlag ? 1 : 0));
+        buffer.putShort((short)shiftRegister);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        super.load(buffer);
+        modeFlag = buffer.get() != 0;
+        shiftRegister = Short.toUnsignedInt(buffer.getShort());
+    }
 }
@@ -7,6 +7,8 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.util.Map;
 
+import java.nio.ByteBuffer;
+
 @Slf4j
 public class PulseChannel extends ChannelWithEnvelope {
 
@@ -66,9 +68,29 @@ public class PulseChannel extends ChannelWithEnvelope {
         }
     }
 
+    @Override
+    protected void clockSequencer(int times) {
+        sequencerPhase = Math.floorMod(sequencerPhase - times, 8);
+    }
+
     // Sweep
     public void clockSweep() {
         sweep.clock();
     }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.put((byte)sequencerPhase);
+        buffer.put((byte)duty);
+        sweep.save(buffer);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        super.load(buffer);
+        sequencerPhase = buffer.get();
+        duty = buffer.get();
+        sweep.load(buffer);
+    }
 }
@@ -1,9 +1,12 @@
 package nes.apu.channel;
 
+import common.StateSerializable;
 import lombok.Getter;
 import lombok.Setter;
 
-public class Sweep {
+import java.nio.ByteBuffer;
+
+public class Sweep implements StateSerializable {
     private final PulseChannel pulse;
 
     private int divider;
@@ -49,4 +52,24 @@ public class Sweep {
         int diff = base >> shiftCount;
         return negateFlag ? base - diff : base + diff;
     }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.put((byte)divider);
+        buffer.put((byte)dividerReset);
+        buffer.put((byte)shiftCount);
+        buffer.put((byte)((enabled ? 1 : 0) | (negateFlag ? 2 : 0) | (reloadFlag ? 4 : 0) | (muting ? 8 : 0)));
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        divider = buffer.get();
+        dividerReset = buffer.get();
+        shiftCount = buffer.get();
+        int flags = buffer.get();
+        enabled = (flags & 1) != 0;
+        negateFlag = (flags & 2) != 0;
+        reloadFlag = (flags & 4) != 0;
+        muting = (flags & 8) != 0;
+    }
 }
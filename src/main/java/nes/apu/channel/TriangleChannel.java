@@ -2,6 +2,8 @@ package nes.apu.channel;
 
 import lombok.Getter;
 
+import java.nio.ByteBuffer;
+
 public class TriangleChannel extends ChannelWithLengthCounter {
 
     private int phase;
@@ -44,8 +46,26 @@ public class TriangleChannel extends ChannelWithLengthCounter {
         }
     }
 
+    @Override
+    protected void clockSequencer(int times) {
+        phase = Math.floorMod(phase - times, WAVEFORM.length);
+    }
+
     public void clockLinearCounter() {
         linearCounter.clock();
     }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.put((byte)phase);
+        linearCounter.save(buffer);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        super.load(buffer);
+        phase = buffer.get();
+        linearCounter.load(buffer);
+    }
 }
@@ -7,113 +7,116 @@ import common.BinaryUtil;
 
 // TODO consider additional cycle when going into different page
 
+// Operands are passed as unsigned ints (0-255) and NO_OPERAND when absent,
+// so that the dispatch path in CPU.runStep does not box anything.
 enum AddressingMode {
     IMPLICIT(0),
     ACCUMULATOR(0),
     IMMEDIATE(1) {   // 8 bit constant
         @Override
-        Integer getAddress(Byte operand1, Byte operand2, CPU cpu) {
+        int getAddress(int operand1, int operand2, CPU cpu) {
             validateOperands(operand1, operand2);
-            return null;
+            return NO_ADDRESS;
         }
     },
     ZERO_PAGE(1) {   // 8 bit address ($0000-$00FF) (LOWER) => $00:LOWER
         @Override
-        Integer getAddress(Byte operand1, Byte operand2, CPU cpu) {
+        int getAddress(int operand1, int operand2, CPU cpu) {
             validateOperands(operand1, operand2);
-            return BinaryUtil.getAddress(operand1, (byte) 0);
+            return operand1;
         }
     },
     ZERO_PAGE_X(1) { // (LOWER) => $00:LOWER+X
         @Override
-        Integer getAddress(Byte operand1, Byte operand2, CPU cpu) {
+        int getAddress(int operand1, int operand2, CPU cpu) {
             validateOperands(operand1, operand2);
-            byte lower = BinaryUtil.add(operand1, cpu.getX()).getOne(); // no carry
-            return BinaryUtil.getAddress(lower, (byte) 0);
+            return (operand1 + Byte.toUnsignedInt(cpu.getX())) & 0xFF; // no carry
         }
     },
     ZERO_PAGE_Y(1) {
         @Override
-        Integer getAddress(Byte operand1, Byte operand2, CPU cpu) {
+        int getAddress(int operand1, int operand2, CPU cpu) {
             validateOperands(operand1, operand2);
-            byte lower = BinaryUtil.add(operand1, cpu.getY()).getOne(); // no carry
-            return BinaryUtil.getAddress(lower, (byte) 0);
+            return (operand1 + Byte.toUnsignedInt(cpu.getY())) & 0xFF; // no carry
         }
     },
     RELATIVE(1) {
         @Override
-        Integer getAddress(Byte operand1, Byte operand2, CPU cpu) {
+        int getAddress(int operand1, int operand2, CPU cpu) {
             validateOperands(operand1, operand2);
-            return cpu.getPC() + operand1;
+            return cpu.getPC() + (byte)operand1;
         }
     },    // 8 bit offset (=> -126 to +129)
     ABSOLUTE(2) {
         @Override
-        Integer getAddress(Byte lower, Byte upper, CPU cpu) {
+        int getAddress(int lower, int upper, CPU cpu) {
             validateOperands(lower, upper);
             return BinaryUtil.getAddress(lower, upper);
         }
     },    // 16 bit address ($0000-$FFFF) (LOWER,UPPER)
     ABSOLUTE_X(2) {
         @Override
-        Integer getAddress(Byte lower, Byte upper, CPU cpu) {
+        int getAddress(int lower, int upper, CPU cpu) {
             validateOperands(lower, upper);
-            return (BinaryUtil.getAddress(lower, upper) + Byte.toUnsignedInt(cpu.getX())) % 0x10000;
+            return (BinaryUtil.getAddress(lower, upper) + Byte.toUnsignedInt(cpu.getX())) & 0xFFFF;
         }
     },  // (LOWER,UPPER) => UPPER:LOWER+X
     ABSOLUTE_Y(2) {
         @Override
-        Integer getAddress(Byte lower, Byte upper, CPU cpu) {
+        int getAddress(int lower, int upper, CPU cpu) {
             validateOperands(lower, upper);
-            return (BinaryUtil.getAddress(lower, upper) + Byte.toUnsignedInt(cpu.getY())) % 0x10000;
+            return (BinaryUtil.getAddress(lower, upper) + Byte.toUnsignedInt(cpu.getY())) & 0xFFFF;
         }
     },
     INDIRECT(2) {
         @Override
-        Integer getAddress(Byte pointerLower, Byte pointerUpper, CPU cpu) {
+        int getAddress(int pointerLower, int pointerUpper, CPU cpu) {
             validateOperands(pointerLower, pointerUpper);
             byte lower = cpu.read(BinaryUtil.getAddress(pointerLower, pointerUpper));
-            byte upper = cpu.read(BinaryUtil.getAddress(BinaryUtil.add(pointerLower, (byte)1).getOne(), pointerUpper));
+            byte upper = cpu.read(BinaryUtil.getAddress((pointerLower + 1) & 0xFF, pointerUpper));
             return BinaryUtil.getAddress(lower, upper);
         }
     }, // (LOWER,UPPER) => value at (UPPER:LOWER):(UPPER:LOWER + 1%)
     INDEXED_INDIRECT_X(1) {
         @Override
-        Integer getAddress(Byte operand1, Byte operand2, CPU cpu) {
+        int getAddress(int operand1, int operand2, CPU cpu) {
             throw new UnsupportedOperationException();
         }
     }, // (LOWER) => value at $00:LOWER+X ??
     INDIRECT_INDEXED_Y(1) {
         @Override
-        Integer getAddress(Byte operand1, Byte operand2, CPU cpu) {
+        int getAddress(int operand1, int operand2, CPU cpu) {
             validateOperands(operand1, operand2);
-            byte lower = cpu.read(BinaryUtil.getAddress(operand1, (byte)0));
-            byte upper = cpu.read(BinaryUtil.getAddress(BinaryUtil.add(operand1, (byte)1).getOne(), (byte)0));
+            byte lower = cpu.read(operand1);
+            byte upper = cpu.read((operand1 + 1) & 0xFF);
             return BinaryUtil.getAddress(lower, upper) + Byte.toUnsignedInt(cpu.getY());
         }
     }; // (LOWER) => value at ((00:LOWER+1%):(00:LOWER) + Y)
 
+    static final int NO_OPERAND = -1;
+    static final int NO_ADDRESS = -1;
+
     final int addressBytes;
 
     private AddressingMode(int addressBytes) {
         this.addressBytes = addressBytes;
     }
 
-    Integer getAddress(Byte operand1, Byte operand2, CPU cpu) {
+    int getAddress(int operand1, int operand2, CPU cpu) {
         validateOperands(operand1, operand2);
-        return null;
+        return NO_ADDRESS;
     }
 
-    void validateOperands(Byte operand1, Byte operand2) {
+    void validateOperands(int operand1, int operand2) {
         switch (addressBytes) {
             case 0:
-                Preconditions.checkArgument(operand1 == null && operand2 == null);
+                Preconditions.checkArgument(operand1 == NO_OPERAND && operand2 == NO_OPERAND);
                 return;
             case 1:
-                Preconditions.checkArgument(operand1 != null && operand2 == null);
+                Preconditions.checkArgument(operand1 != NO_OPERAND && operand2 == NO_OPERAND);
                 return;
             case 2:
-                Preconditions.checkArgument(operand1 != null && operand2 != null);
+                Preconditions.checkArgument(operand1 != NO_OPERAND && operand2 != NO_OPERAND);
                 return;
             default:
                 throw new IllegalStateException();
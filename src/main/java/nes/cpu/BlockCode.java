@@ -0,0 +1,188 @@
+package nes.cpu;
+
+/**
+ * Superclass of the classes generated by {@link BlockGenerator}, one per {@link CompiledBlock}.
+ *
+ * Generated classes are defined by their own class loader, so they are in another runtime package
+ * and reach the CPU only through the protected final helpers here, which the JIT inlines.
+ * Instructions the generator does not emit inline are called on their enum constant, so each call site
+ * has a single receiver instead of the one virtual call of the interpreter for all of them.
+ */
+public abstract class BlockCode {
+    private final CPU cpu;
+    CompiledBlock block;
+
+    protected BlockCode(CPU cpu) {
+        this.cpu = cpu;
+    }
+
+    /**
+     * @return number of instructions executed; the rest of the block is left to the interpreter
+     */
+    protected abstract int run();
+
+    protected final boolean mustLeave() {
+        return cpu.mustLeaveBlock();
+    }
+
+    protected final void trace(int i) {
+        cpu.trace(block, i);
+    }
+
+    protected final void setPC(int address) {
+        cpu.setPC(address);
+    }
+
+    protected final void addCycles(int cycles) {
+        cpu.stall(cycles);
+    }
+
+    protected final byte read(int address) {
+        return cpu.read(address);
+    }
+
+    protected final void write(byte value, int address) {
+        cpu.write(value, address);
+    }
+
+    protected final void jump(int address) {
+        cpu.jump(address);
+    }
+
+    protected final byte getA() {
+        return cpu.getA();
+    }
+
+    protected final void setA(byte value) {
+        cpu.setA(value);
+    }
+
+    protected final byte getX() {
+        return cpu.getX();
+    }
+
+    protected final void setX(byte value) {
+        cpu.setX(value);
+    }
+
+    protected final byte getY() {
+        return cpu.getY();
+    }
+
+    protected final void setY(byte value) {
+        cpu.setY(value);
+    }
+
+    protected final byte getS() {
+        return cpu.getS();
+    }
+
+    protected final void setS(byte value) {
+        cpu.setS(value);
+    }
+
+    protected final void setZeroAndNegative(byte value) {
+        cpu.setZeroFlag(value);
+        cpu.setNegativeFlag(value);
+    }
+
+    protected final boolean getCarry() {
+        return cpu.getCarryFlag();
+    }
+
+    protected final boolean getZero() {
+        return cpu.getZeroFlag();
+    }
+
+    protected final boolean getNegative() {
+        return cpu.getNegativeFlag();
+    }
+
+    protected final boolean getOverflow() {
+        return cpu.getOverflowFlag();
+    }
+
+    protected final void setCarry(boolean flag) {
+        cpu.setCarryFlag(flag);
+    }
+
+    protected final void setOverflow(boolean flag) {
+        cpu.setOverflowFlag(flag);
+    }
+
+    protected final void setDecimal(boolean flag) {
+        cpu.setDecimalFlag(flag);
+    }
+
+    protected final void setInterruptDisable(boolean flag) {
+        cpu.setInterruptDisableFlag(flag);
+    }
+
+    protected final void compare(byte minuend, byte subtrahend) {
+        Instruction.CMP.compare(minuend, subtrahend, cpu);
+    }
+
+    protected final void adc(byte value) {
+        Instruction.ADC.execute(AddressingMode.NO_ADDRESS, value, cpu);
+    }
+
+    protected final void sbc(byte value) {
+        Instruction.SBC.execute(AddressingMode.NO_ADDRESS, value, cpu);
+    }
+
+    protected final void bit(byte value) {
+        Instruction.BIT.execute(AddressingMode.NO_ADDRESS, value, cpu);
+    }
+
+    protected final void asl(int address, byte value) {
+        Instruction.ASL.execute(address, value, cpu);
+    }
+
+    protected final void lsr(int address, byte value) {
+        Instruction.LSR.execute(address, value, cpu);
+    }
+
+    protected final void rol(int address, byte value) {
+        Instruction.ROL.execute(address, value, cpu);
+    }
+
+    protected final void ror(int address, byte value) {
+        Instruction.ROR.execute(address, value, cpu);
+    }
+
+    protected final void inc(int address) {
+        Instruction.INC.execute(address, (byte)0, cpu);
+    }
+
+    protected final void dec(int address) {
+        Instruction.DEC.execute(address, (byte)0, cpu);
+    }
+
+    protected final void jsr(int address) {
+        Instruction.JSR.execute(address, (byte)0, cpu);
+    }
+
+    protected final void rts() {
+        Instruction.RTS.execute(AddressingMode.NO_ADDRESS, (byte)0, cpu);
+    }
+
+    protected final void rti() {
+        Instruction.RTI.execute(AddressingMode.NO_ADDRESS, (byte)0, cpu);
+    }
+
+    protected final void brk() {
+        Instruction.BRK.execute(AddressingMode.NO_ADDRESS, (byte)0, cpu);
+    }
+
+    protected final void pha() {
+        cpu.pushA();
+    }
+
+    protected final void pla() {
+        cpu.pullA();
+    }
+
+    protected final void plp() {
+        cpu.pullP();
+    }
+}
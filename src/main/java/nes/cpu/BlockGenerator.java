@@ -0,0 +1,522 @@
+package nes.cpu;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.InvocationTargetException;
+
+import static nes.cpu.MemoryMapper.PROGRAM_OFFSET;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates a {@link BlockCode} subclass for a {@link CompiledBlock}.
+ *
+ * Operands, static addresses and cycles are constants of the generated code, and loads, stores, transfers,
+ * logical operations, compares, increments, flag operations and branches are emitted inline.
+ * Each instruction first checks whether an interrupt is pending or the deadline is reached,
+ * and an instruction with a dynamic address returns before it touches a register, as in {@link Recompiler}.
+ * The PC is only set where it is read: before jumps, branches and interrupts, and when returning.
+ */
+class BlockGenerator {
+    private static final String SUPER_NAME = Type.getInternalName(BlockCode.class);
+    private static final String CONSTRUCTOR_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(CPU.class));
+
+    private static final int ADDRESS = 1; // local variables of run()
+    private static final int VALUE = 2;
+
+    private static class BlockClassLoader extends ClassLoader {
+        BlockClassLoader() {
+            super(BlockCode.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private final CPU cpu;
+    private final BlockClassLoader loader = new BlockClassLoader();
+    private int count;
+
+    BlockGenerator(CPU cpu) {
+        this.cpu = cpu;
+    }
+
+    BlockCode generate(CompiledBlock block) {
+        String name = String.format("nes.cpu.Block$%04X$%d", block.startAddress, count++);
+        Class<?> clazz = loader.define(name, toBytes(name.replace('.', '/'), block));
+        try {
+            BlockCode code = (BlockCode)clazz.getConstructor(CPU.class).newInstance(cpu);
+            code.block = block;
+            return code;
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toBytes(String internalName, CompiledBlock block) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, internalName, null, SUPER_NAME, null);
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESCRIPTOR, null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitVarInsn(ALOAD, 1);
+        init.visitMethodInsn(INVOKESPECIAL, SUPER_NAME, "<init>", CONSTRUCTOR_DESCRIPTOR, false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(ACC_PROTECTED, "run", "()I", null, null);
+        mv.visitCode();
+        new Emitter(mv, block).emit();
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static class Emitter {
+        private final MethodVisitor mv;
+        private final CompiledBlock block;
+
+        Emitter(MethodVisitor mv, CompiledBlock block) {
+            this.mv = mv;
+            this.block = block;
+        }
+
+        void emit() {
+            for (int i = 0; i < block.length; i++) {
+                if (emitInstruction(i)) {
+                    return;
+                }
+            }
+            exit(block.nextAddresses[block.length - 1], block.length);
+        }
+
+        /**
+         * @return true if the instruction has returned from run()
+         */
+        private boolean emitInstruction(int i) {
+            Operation op = block.operations[i];
+            Instruction instruction = op.getInstruction();
+
+            Label go = new Label();
+            mv.visitVarInsn(ALOAD, 0);
+            call("mustLeave", "()Z");
+            mv.visitJumpInsn(IFEQ, go);
+            exit(block.instructionAddresses[i], i);
+            mv.visitLabel(go);
+
+            emitAddress(i);
+            if (block.checkIo[i]) {
+                Label ok = new Label();
+                mv.visitVarInsn(ILOAD, ADDRESS);
+                push(Recompiler.IO_START);
+                mv.visitJumpInsn(IF_ICMPLT, ok);
+                mv.visitVarInsn(ILOAD, ADDRESS);
+                push(Recompiler.IO_END);
+                mv.visitJumpInsn(IF_ICMPGE, ok);
+                exit(block.instructionAddresses[i], i);
+                mv.visitLabel(ok);
+            }
+            if (block.checkMapper[i]) {
+                Label ok = new Label();
+                mv.visitVarInsn(ILOAD, ADDRESS);
+                push(PROGRAM_OFFSET);
+                mv.visitJumpInsn(IF_ICMPLT, ok);
+                exit(block.instructionAddresses[i], i);
+                mv.visitLabel(ok);
+            }
+            emitValue(i);
+
+            mv.visitVarInsn(ALOAD, 0);
+            push(i);
+            call("trace", "(I)V");
+
+            switch (instruction) {
+                case BCC:
+                    return branch(i, "getCarry", IFNE);
+                case BCS:
+                    return branch(i, "getCarry", IFEQ);
+                case BNE:
+                    return branch(i, "getZero", IFNE);
+                case BEQ:
+                    return branch(i, "getZero", IFEQ);
+                case BPL:
+                    return branch(i, "getNegative", IFNE);
+                case BMI:
+                    return branch(i, "getNegative", IFEQ);
+                case BVC:
+                    return branch(i, "getOverflow", IFNE);
+                case BVS:
+                    return branch(i, "getOverflow", IFEQ);
+                case JMP:
+                    return leave(i, "jump", "(I)V", true);
+                case JSR:
+                    return leave(i, "jsr", "(I)V", true);
+                case RTS:
+                    return leave(i, "rts", "()V", false);
+                case RTI:
+                    return leave(i, "rti", "()V", false);
+                case BRK:
+                    return leave(i, "brk", "()V", false);
+
+                case LDA:
+                    load("setA", true);
+                    break;
+                case LDX:
+                    load("setX", true);
+                    break;
+                case LDY:
+                    load("setY", true);
+                    break;
+                case STA:
+                    store("getA");
+                    break;
+                case STX:
+                    store("getX");
+                    break;
+                case STY:
+                    store("getY");
+                    break;
+                case TAX:
+                    transfer("getA", "setX", true);
+                    break;
+                case TAY:
+                    transfer("getA", "setY", true);
+                    break;
+                case TSX:
+                    transfer("getS", "setX", true);
+                    break;
+                case TXA:
+                    transfer("getX", "setA", true);
+                    break;
+                case TYA:
+                    transfer("getY", "setA", true);
+                    break;
+                case TXS:
+                    transfer("getX", "setS", false);
+                    break;
+                case INX:
+                    add("getX", "setX", 1);
+                    break;
+                case INY:
+                    add("getY", "setY", 1);
+                    break;
+                case DEX:
+                    add("getX", "setX", -1);
+                    break;
+                case DEY:
+                    add("getY", "setY", -1);
+                    break;
+                case AND:
+                    logical(IAND);
+                    break;
+                case ORA:
+                    logical(IOR);
+                    break;
+                case EOR:
+                    logical(IXOR);
+                    break;
+                case CMP:
+                    compare("getA");
+                    break;
+                case CPX:
+                    compare("getX");
+                    break;
+                case CPY:
+                    compare("getY");
+                    break;
+                case SEC:
+                    flag("setCarry", true);
+                    break;
+                case CLC:
+                    flag("setCarry", false);
+                    break;
+                case SED:
+                    flag("setDecimal", true);
+                    break;
+                case CLD:
+                    flag("setDecimal", false);
+                    break;
+                case SEI:
+                    flag("setInterruptDisable", true);
+                    break;
+                case CLI:
+                    flag("setInterruptDisable", false);
+                    break;
+                case CLV:
+                    flag("setOverflow", false);
+                    break;
+                case NOP:
+                    break;
+
+                case ADC:
+                    withValue("adc");
+                    break;
+                case SBC:
+                    withValue("sbc");
+                    break;
+                case BIT:
+                    withValue("bit");
+                    break;
+                case ASL:
+                case LSR:
+                case ROL:
+                case ROR:
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitVarInsn(ILOAD, ADDRESS);
+                    mv.visitVarInsn(ILOAD, VALUE);
+                    call(instruction.name().toLowerCase(), "(IB)V");
+                    break;
+                case INC:
+                case DEC:
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitVarInsn(ILOAD, ADDRESS);
+                    call(instruction.name().toLowerCase(), "(I)V");
+                    break;
+                case PHA:
+                case PLA:
+                case PLP:
+                    mv.visitVarInsn(ALOAD, 0);
+                    call(instruction.name().toLowerCase(), "()V");
+                    break;
+                default:
+                    throw new IllegalArgumentException(instruction.toString());
+            }
+            addCycles(op.getCycles());
+            return false;
+        }
+
+        private void emitAddress(int i) {
+            int operand1 = block.operands1[i];
+            int operand2 = block.operands2[i];
+            switch (block.operations[i].getAddressingMode()) {
+                case ZERO_PAGE_X:
+                    indexed(operand1, "getX", 0xFF);
+                    break;
+                case ZERO_PAGE_Y:
+                    indexed(operand1, "getY", 0xFF);
+                    break;
+                case ABSOLUTE_X:
+                    indexed((operand2 << 8) + operand1, "getX", 0xFFFF);
+                    break;
+                case ABSOLUTE_Y:
+                    indexed((operand2 << 8) + operand1, "getY", 0xFFFF);
+                    break;
+                case INDIRECT:
+                    // the pointer wraps around within its page, as in AddressingMode.INDIRECT
+                    readAddress((operand2 << 8) + operand1, (operand2 << 8) + ((operand1 + 1) & 0xFF));
+                    break;
+                case INDIRECT_INDEXED_Y:
+                    readAddress(operand1, (operand1 + 1) & 0xFF);
+                    unsigned("getY");
+                    mv.visitInsn(IADD);
+                    break;
+                default:
+                    push(block.addresses[i]);
+            }
+            mv.visitVarInsn(ISTORE, ADDRESS);
+        }
+
+        private void emitValue(int i) {
+            switch (block.valueSources[i]) {
+                case OPERAND:
+                    push((byte)block.operands1[i]);
+                    break;
+                case MEMORY:
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitVarInsn(ILOAD, ADDRESS);
+                    call("read", "(I)B");
+                    break;
+                case ACCUMULATOR:
+                    mv.visitVarInsn(ALOAD, 0);
+                    call("getA", "()B");
+                    break;
+                default:
+                    push(0);
+            }
+            mv.visitVarInsn(ISTORE, VALUE);
+        }
+
+        // (base + register) & mask
+        private void indexed(int base, String register, int mask) {
+            push(base);
+            unsigned(register);
+            mv.visitInsn(IADD);
+            push(mask);
+            mv.visitInsn(IAND);
+        }
+
+        // upper << 8 | lower, both read from memory
+        private void readAddress(int lowerAddress, int upperAddress) {
+            mv.visitVarInsn(ALOAD, 0);
+            push(upperAddress);
+            call("read", "(I)B");
+            push(0xFF);
+            mv.visitInsn(IAND);
+            push(8);
+            mv.visitInsn(ISHL);
+            mv.visitVarInsn(ALOAD, 0);
+            push(lowerAddress);
+            call("read", "(I)B");
+            push(0xFF);
+            mv.visitInsn(IAND);
+            mv.visitInsn(IADD);
+        }
+
+        private void unsigned(String register) {
+            mv.visitVarInsn(ALOAD, 0);
+            call(register, "()B");
+            push(0xFF);
+            mv.visitInsn(IAND);
+        }
+
+        /**
+         * The branch ends the block, the target is counted by the jump as in the interpreter.
+         * @param skip jumps over the branch when the flag is (IFNE) or is not (IFEQ) set
+         */
+        private boolean branch(int i, String flag, int skip) {
+            setPC(block.nextAddresses[i]);
+            Label notTaken = new Label();
+            mv.visitVarInsn(ALOAD, 0);
+            call(flag, "()Z");
+            mv.visitJumpInsn(skip, notTaken);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ILOAD, ADDRESS);
+            call("jump", "(I)V");
+            mv.visitLabel(notTaken);
+            addCycles(block.operations[i].getCycles());
+            push(i + 1);
+            mv.visitInsn(IRETURN);
+            return true;
+        }
+
+        /**
+         * Jumps, subroutine calls and returns read the PC and end the block.
+         */
+        private boolean leave(int i, String method, String descriptor, boolean withAddress) {
+            setPC(block.nextAddresses[i]);
+            mv.visitVarInsn(ALOAD, 0);
+            if (withAddress) {
+                mv.visitVarInsn(ILOAD, ADDRESS);
+            }
+            call(method, descriptor);
+            addCycles(block.operations[i].getCycles());
+            push(i + 1);
+            mv.visitInsn(IRETURN);
+            return true;
+        }
+
+        private void store(String getter) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 0);
+            call(getter, "()B");
+            mv.visitVarInsn(ILOAD, ADDRESS);
+            call("write", "(BI)V");
+        }
+
+        private void transfer(String getter, String setter, boolean flags) {
+            mv.visitVarInsn(ALOAD, 0);
+            call(getter, "()B");
+            mv.visitVarInsn(ISTORE, VALUE);
+            load(setter, flags);
+        }
+
+        private void add(String getter, String setter, int addend) {
+            mv.visitVarInsn(ALOAD, 0);
+            call(getter, "()B");
+            push(addend);
+            mv.visitInsn(IADD);
+            mv.visitInsn(I2B);
+            mv.visitVarInsn(ISTORE, VALUE);
+            load(setter, true);
+        }
+
+        private void logical(int opcode) {
+            mv.visitVarInsn(ALOAD, 0);
+            call("getA", "()B");
+            mv.visitVarInsn(ILOAD, VALUE);
+            mv.visitInsn(opcode);
+            mv.visitInsn(I2B);
+            mv.visitVarInsn(ISTORE, VALUE);
+            load("setA", true);
+        }
+
+        private void load(String setter, boolean flags) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ILOAD, VALUE);
+            call(setter, "(B)V");
+            if (flags) {
+                setZeroAndNegative(VALUE);
+            }
+        }
+
+        private void compare(String register) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 0);
+            call(register, "()B");
+            mv.visitVarInsn(ILOAD, VALUE);
+            call("compare", "(BB)V");
+        }
+
+        private void flag(String setter, boolean value) {
+            mv.visitVarInsn(ALOAD, 0);
+            push(value ? 1 : 0);
+            call(setter, "(Z)V");
+        }
+
+        private void withValue(String method) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ILOAD, VALUE);
+            call(method, "(B)V");
+        }
+
+        private void setZeroAndNegative(int local) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ILOAD, local);
+            call("setZeroAndNegative", "(B)V");
+        }
+
+        private void addCycles(int cycles) {
+            mv.visitVarInsn(ALOAD, 0);
+            push(cycles);
+            call("addCycles", "(I)V");
+        }
+
+        private void setPC(int address) {
+            mv.visitVarInsn(ALOAD, 0);
+            push(address);
+            call("setPC", "(I)V");
+        }
+
+        private void exit(int pc, int executed) {
+            setPC(pc);
+            push(executed);
+            mv.visitInsn(IRETURN);
+        }
+
+        /**
+         * Invoke a helper of BlockCode, "this" and the arguments are on the stack
+         */
+        private void call(String name, String descriptor) {
+            mv.visitMethodInsn(INVOKEVIRTUAL, SUPER_NAME, name, descriptor, false);
+        }
+
+        private void push(int value) {
+            if (value >= -1 && value <= 5) {
+                mv.visitInsn(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                mv.visitIntInsn(BIPUSH, value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                mv.visitIntInsn(SIPUSH, value);
+            } else {
+                mv.visitLdcInsn(value);
+            }
+        }
+    }
+}
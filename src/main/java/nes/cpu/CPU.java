@@ -1,20 +1,28 @@
 package nes.cpu;
 
 import common.*;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import nes.Scheduler;
 import nes.Controller;
 import nes.apu.APU;
 import nes.cpu.register.FlagRegister;
 import nes.cpu.register.JoystickRegister;
 import nes.cpu.register.OAMDMARegister;
 import nes.cpu.register.ProgramCounter;
+import nes.mapper.Mapper;
 import nes.ppu.PPU;
 
+import java.nio.ByteBuffer;
+
 import static nes.cpu.MemoryMapper.PROGRAM_OFFSET;
 
 // http://hp.vector.co.jp/authors/VA042397/nes/index.html
 @Slf4j
-public class CPU implements Runnable {
+public class CPU implements Runnable, StateSerializable {
+    public static final int CLOCK_RATE = 1789773; // Hz (NTSC)
+
     private static final int CODE_WIDTH = 8;
     private static final int RAM_SIZE = 2048;
 
@@ -25,52 +33,206 @@ public class CPU implements Runnable {
     private final OperationFactory operationFactory;
 
     // https://wiki.nesdev.com/w/index.php/CPU_power_up_state
-    private final ByteRegister regA = new ByteRegisterImpl((byte)0);    // Accumulator
-    private final ByteRegister regX = new ByteRegisterImpl((byte)0);    // X Index
-    private final ByteRegister regY = new ByteRegisterImpl((byte)0);    // Y Index
-    private final ByteRegister regS = new ByteRegisterImpl((byte)0xFD);    // Stack Pointer
+    private final ByteRegisterImpl regA = new ByteRegisterImpl((byte)0);    // Accumulator
+    private final ByteRegisterImpl regX = new ByteRegisterImpl((byte)0);    // X Index
+    private final ByteRegisterImpl regY = new ByteRegisterImpl((byte)0);    // Y Index
+    private final ByteRegisterImpl regS = new ByteRegisterImpl((byte)0xFD);    // Stack Pointer
     private final FlagRegister regP = new FlagRegister((byte)0x34);
     private final IntegerRegister regPC = new ProgramCounter(PROGRAM_OFFSET, 16);
 
     final OAMDMARegister regOAMDMA; // $4014
-    final ByteRegister regJOY1; // $4016
-    public final ByteRegister regJOY2 = new ByteRegisterImpl((byte)0); // $4017
+    final JoystickRegister regJOY1; // $4016
+    public final ByteRegisterImpl regJOY2 = new ByteRegisterImpl((byte)0); // $4017
 
     final ByteArrayMemory ram;
-    final ByteArrayMemory programRom;
+    final Mapper mapper;
 
     private final MemoryMapper memoryMapper;
 
     private boolean flagNMI;
-    // TODO handle IRQ
 
-    public CPU(PPU ppu, APU apu, ByteArrayMemory programRom, Controller controller1) {
+    private Recompiler recompiler; // null when running on the interpreter only
+
+    @Setter
+    private TraceRecorder trace; // null when not tracing
+
+    public CPU(PPU ppu, APU apu, Mapper mapper, Controller controller1) {
         operationFactory = new OperationFactory();
-        memoryMapper = new MemoryMapper(this, ppu, apu);
-        this.programRom = programRom;
+        this.mapper = mapper;
         this.ram = new ByteArrayMemory(new byte[0x800]);
         this.regOAMDMA = new OAMDMARegister(this, ppu);
         flagNMI = false;
         regJOY1 = new JoystickRegister(controller1);
+        // registers are bound to the memory map on construction
+        memoryMapper = new MemoryMapper(this, ppu, apu);
     }
 
     private long cycles;
+    private int operationCycles; // of the instruction being executed, counted after it
+    private long deadline = Long.MAX_VALUE; // cycle to return at from runUntil, blocks are cut there
+
+    @Setter
+    private Scheduler scheduler; // null when PPU/APU are stepped by the caller
+    boolean statusPredicted; // PPUSTATUS does not change before the deadline, see runUntil
+
+    // idle loop detection, see skipIdleLoop
+    private static final int MAX_LOOP_BYTES = 32;
+    @Setter
+    private boolean idleLoopSkipping = true;
+    @Getter
+    private long skippedCycles;
+    private boolean jumpedBack; // in the last instruction
+    boolean loopClean; // nothing but RAM and the cartridge has been accessed, and only read, since the loop start
+    private int loopStart = -1;
+    private long loopStartCycles;
+    private byte loopA, loopX, loopY, loopS, loopP;
 
     synchronized public long getCyclesSynchronized() {
         return cycles;
     }
 
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @return cycle after the instruction being executed, when a DMA it starts halts the CPU
+     */
+    public long getCyclesAfterOperation() {
+        return cycles + operationCycles;
+    }
+
+    /**
+     * Run until the cycle count reaches the deadline; the last instruction may overshoot it.
+     * The deadline is no later than the next PPU event, so PPUSTATUS reads as it did at the last synchronization
+     * and is read without one. A write to a PPU or I/O register may bring the event forward, see updateDeadline;
+     * a write to the cartridge may change the pattern tables without the PPU being synchronized,
+     * so PPUSTATUS is synchronized again on each read from then on.
+     */
+    public void runUntil(long deadline) {
+        this.deadline = deadline;
+        statusPredicted = scheduler != null;
+        loopClean = false; // a round which read PPUSTATUS before the last event is not repeated after it
+        while (cycles < deadline) {
+            runStep();
+            if (jumpedBack) {
+                jumpedBack = false;
+                skipIdleLoop();
+            }
+        }
+        this.deadline = Long.MAX_VALUE;
+        statusPredicted = false;
+    }
+
+    /**
+     * Games wait for the NMI in loops such as "JMP *" or "LDA $10 / BEQ" which only read RAM and ROM.
+     * When a short loop has gone round once without writing memory or touching a register,
+     * and CPU registers are as they were at its start, every further round is the same until an interrupt.
+     * The rounds up to the deadline of runUntil, the next PPU event, are then counted instead of run;
+     * the round reaching the deadline is run, so cycles and registers end exactly as without skipping.
+     */
+    private void skipIdleLoop() {
+        int pc = regPC.get();
+        if (pc == loopStart && loopClean && regA.get() == loopA && regX.get() == loopX && regY.get() == loopY
+                && regS.get() == loopS && regP.get() == loopP) {
+            long period = cycles - loopStartCycles;
+            if (idleLoopSkipping && trace == null && deadline != Long.MAX_VALUE && cycles < deadline
+                    && !flagNMI && !mapper.isIrqAsserted()) {
+                long skipped = (deadline - cycles) / period * period;
+                cycles += skipped;
+                skippedCycles += skipped;
+            }
+        } else {
+            loopStart = pc;
+            loopA = regA.get();
+            loopX = regX.get();
+            loopY = regY.get();
+            loopS = regS.get();
+            loopP = regP.get();
+        }
+        loopStartCycles = cycles;
+        loopClean = true;
+    }
+
+    /**
+     * After a register write, at the cycle the PPU has been synchronized to, predict the next event again.
+     */
+    void updateDeadline() {
+        if (scheduler != null && deadline != Long.MAX_VALUE) {
+            deadline = Math.min(deadline, scheduler.getNextEvent());
+        }
+    }
+
+    /**
+     * Bring the PPU/APU up to the current cycle before one of their registers is accessed.
+     */
+    void synchronize() {
+        if (scheduler != null) {
+            scheduler.catchUp();
+        }
+    }
+
+    /**
+     * PRG RAM and the bank registers are saved with the mapper.
+     */
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.putLong(cycles);
+        regA.save(buffer);
+        regX.save(buffer);
+        regY.save(buffer);
+        regS.save(buffer);
+        regP.save(buffer);
+        regPC.save(buffer);
+        buffer.put((byte)(flagNMI ? 1 : 0));
+        ram.save(buffer);
+        regJOY1.save(buffer);
+        regJOY2.save(buffer);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        cycles = buffer.getLong();
+        regA.load(buffer);
+        regX.load(buffer);
+        regY.load(buffer);
+        regS.load(buffer);
+        regP.load(buffer);
+        regPC.load(buffer);
+        flagNMI = buffer.get() != 0;
+        ram.load(buffer);
+        regJOY1.load(buffer);
+        regJOY2.load(buffer);
+        loopStart = -1;
+    }
+
     public void reset() {
         cycles = 0L;
         jump(getAddress(memoryMapper.get(RESET_VECTOR_ADDRESS), memoryMapper.get(RESET_VECTOR_ADDRESS + 1)));
     };
 
+    /**
+     * Run hot PRG ROM blocks as JVM classes generated for them instead of interpreting them one by one.
+     */
+    public void setRecompilerEnabled(boolean enabled) {
+        recompiler = enabled ? new Recompiler(this, operationFactory) : null;
+    }
+
     public void runStep() {
         if (flagNMI) {
             handleNMI();
+        } else if (!getInterruptDisableFlag() && mapper.isIrqAsserted()) {
+            handleIRQ();
         }
 
-        byte code = getCode();
+        if (recompiler != null) {
+            CompiledBlock block = recompiler.getBlock(regPC.get());
+            if (block != null && block.code.run() > 0) {
+                return;
+            }
+        }
+
+        int code = fetch();
         Operation op = operationFactory.get(code);
         if (op == null) {
             log.error(BinaryUtil.toBinaryString(code, CODE_WIDTH));
@@ -78,7 +240,7 @@ public class CPU implements Runnable {
         if (log.isDebugEnabled()) {
             log.debug("PC={} op={}({}:{}) [X={} Y={} A={} S={} P={}] cycle={}",
                     BinaryUtil.toHexString(regPC.get() - 1),
-                    BinaryUtil.toHexString(code),
+                    BinaryUtil.toHexString((byte)code),
                     op.getInstruction().toString(),
                     op.getAddressingMode().toString(),
                     BinaryUtil.toHexString(getX()),
@@ -88,27 +250,31 @@ public class CPU implements Runnable {
                     BinaryUtil.toBinaryString(regP.get(), 8),
                     cycles);
         }
-        if (regPC.get() != 0x8058) {
-            log.info(String.format("%04x %x %x %x %x %x %x", regPC.get() - 1, code, getA(), getX(), getY(), getS(), regP.get()));
+        int bytes = op.getAddressingMode().addressBytes;
+        int operand1 = bytes > 0 ? fetch() : AddressingMode.NO_OPERAND;
+        int operand2 = bytes > 1 ? fetch() : AddressingMode.NO_OPERAND;
+        if (trace != null) {
+            trace.record(regPC.get() - 1 - bytes, code, operand1, operand2, getA(), getX(), getY(), getS(), regP.get(), cycles);
         }
+        operationCycles = op.getCycles();
+        executeInstruction(op, operand1, operand2);
+        // counted after execution, so that a register access sees the cycle the instruction started at
+        cycles += operationCycles;
+        operationCycles = 0;
+    }
 
-        cycles += op.getCycles();
+    /**
+     * @return true if an interrupt is pending or the deadline of runUntil is reached,
+     * so a compiled block returns to runStep before its next instruction
+     */
+    boolean mustLeaveBlock() {
+        return flagNMI || !getInterruptDisableFlag() && mapper.isIrqAsserted() || cycles >= deadline;
+    }
 
-        switch (op.getAddressingMode().addressBytes) {
-            case 0:
-                executeInstruction(op, null, null);
-                return;
-            case 1:
-                byte operand = getCode();
-                executeInstruction(op, operand, null);
-                return;
-            case 2:
-                byte operand1 = getCode();
-                byte operand2 = getCode();
-                executeInstruction(op, operand1, operand2);
-                return;
-            default:
-                throw new IllegalStateException();
+    void trace(CompiledBlock block, int i) {
+        if (trace != null) {
+            trace.record(block.instructionAddresses[i], block.opcodes[i], block.operands1[i], block.operands2[i],
+                    getA(), getX(), getY(), getS(), regP.get(), cycles);
         }
     }
 
@@ -136,6 +302,16 @@ public class CPU implements Runnable {
         jump(getAddress(memoryMapper.get(NMI_VECTOR_ADDRESS), memoryMapper.get(NMI_VECTOR_ADDRESS + 1)));
     }
 
+    // IRQ is level triggered, the mapper keeps asserting it until acknowledged
+    private void handleIRQ() {
+        log.debug("*** IRQ ***");
+        pushPC();
+        setBreakCommandFlag(false);
+        pushP();
+        setInterruptDisableFlag(true);
+        jump(getAddress(memoryMapper.get(IRQ_BRK_VECTOR_ADDRESS), memoryMapper.get(IRQ_BRK_VECTOR_ADDRESS + 1)));
+    }
+
     void handleBRK() {
         log.debug("*** BRK ***");
         pushPC();
@@ -191,18 +367,21 @@ public class CPU implements Runnable {
         return 0x0100 + Byte.toUnsignedInt(regS.get());
     }
 
-    private byte getCode() {
+    /**
+     * @return next byte of the program as unsigned value (0-255)
+     */
+    private int fetch() {
         byte code = memoryMapper.get(regPC.get());
         regPC.increment();
-        return code;
+        return Byte.toUnsignedInt(code);
     }
 
-    private void executeInstruction(Operation op, Byte operand1, Byte operand2) {
-        Integer address = op.getAddressingMode().getAddress(operand1, operand2, this);
-        Byte value = null;
+    private void executeInstruction(Operation op, int operand1, int operand2) {
+        int address = op.getAddressingMode().getAddress(operand1, operand2, this);
+        byte value = 0;
         switch (op.getAddressingMode()) {
             case IMMEDIATE:
-                value = operand1;
+                value = (byte)operand1;
                 break;
             case ZERO_PAGE:
             case ZERO_PAGE_X:
@@ -230,25 +409,30 @@ public class CPU implements Runnable {
         if (log.isDebugEnabled()) {
             StringBuilder sb = new StringBuilder();
             sb.append("  (");
-            if (operand1 != null) {
-                sb.append(BinaryUtil.toHexString(operand1));
+            if (operand1 != AddressingMode.NO_OPERAND) {
+                sb.append(BinaryUtil.toHexString((byte)operand1));
             }
-            if (operand2 != null) {
+            if (operand2 != AddressingMode.NO_OPERAND) {
                 sb.append(", ");
-                sb.append(BinaryUtil.toHexString(operand2));
+                sb.append(BinaryUtil.toHexString((byte)operand2));
             }
             sb.append(")");
-            if (address != null) {
+            if (address != AddressingMode.NO_ADDRESS) {
                 sb.append(String.format(" addr=%s", BinaryUtil.toHexString(address)));
             }
-            if (value != null) {
-                sb.append(String.format(" value=%s", BinaryUtil.toHexString(value)));
-            }
+            sb.append(String.format(" value=%s", BinaryUtil.toHexString(value)));
             log.debug(sb.toString());
         }
         op.getInstruction().execute(address, value, this);
     }
 
+    /**
+     * @return copy of the 2KB internal RAM
+     */
+    public byte[] getRam() {
+        return ram.getRange(0, RAM_SIZE);
+    }
+
     public byte read(int address) {
         return memoryMapper.get(address);
     }
@@ -257,6 +441,20 @@ public class CPU implements Runnable {
         memoryMapper.set(value, address);
     }
 
+    /**
+     * @param page 0-$FF, read from $XX00-$XXFF
+     */
+    public void readPage(int page, byte[] dest) {
+        memoryMapper.readPage(page, dest);
+    }
+
+    /**
+     * Halt for cycles, as for DMA; the PPU and APU run through them when they catch up.
+     */
+    public void stall(int cycles) {
+        this.cycles += cycles;
+    }
+
     public byte increment(int address) {
         return memoryMapper.increment(address);
     }
@@ -289,13 +487,24 @@ public class CPU implements Runnable {
         if (log.isDebugEnabled()) {
             log.debug("jump to {}", BinaryUtil.toHexString(address));
         }
+        int next = regPC.get();
+        if (address <= next && next - address <= MAX_LOOP_BYTES) {
+            jumpedBack = true;
+        }
         regPC.set(address);
+        if (recompiler != null) {
+            recompiler.countBranchTarget(address);
+        }
     }
 
     int getPC() {
         return regPC.get();
     }
 
+    void setPC(int address) {
+        regPC.set(address);
+    }
+
     void setNegativeFlag(boolean flag) {
         regP.setNegative(flag);
     }
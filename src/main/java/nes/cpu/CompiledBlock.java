@@ -0,0 +1,43 @@
+package nes.cpu;
+
+/**
+ * A basic block of PRG ROM decoded once by {@link Recompiler}, and the code generated from it.
+ * Operands are already fetched and addresses that do not depend on registers are already resolved,
+ * so running it skips the fetch/decode/addressing work of the interpreter.
+ */
+class CompiledBlock {
+    static final int DYNAMIC_ADDRESS = -2;
+
+    enum ValueSource { NONE, OPERAND, MEMORY, ACCUMULATOR }
+
+    final int startAddress;
+    final int length;
+
+    final int[] opcodes;
+    final Operation[] operations;
+    final int[] operands1;
+    final int[] operands2;
+    final int[] addresses;       // resolved address, NO_ADDRESS or DYNAMIC_ADDRESS
+    final ValueSource[] valueSources;
+    final boolean[] checkIo;     // dynamic address that may hit a PPU/APU register
+    final boolean[] checkMapper; // dynamic store that may hit a mapper register
+    final int[] instructionAddresses;
+    final int[] nextAddresses;   // PC after fetching the operands
+
+    BlockCode code;
+
+    CompiledBlock(int startAddress, int length) {
+        this.startAddress = startAddress;
+        this.length = length;
+        opcodes = new int[length];
+        operations = new Operation[length];
+        operands1 = new int[length];
+        operands2 = new int[length];
+        addresses = new int[length];
+        valueSources = new ValueSource[length];
+        checkIo = new boolean[length];
+        checkMapper = new boolean[length];
+        instructionAddresses = new int[length];
+        nextAddresses = new int[length];
+    }
+}
@@ -11,7 +11,7 @@ import lombok.extern.slf4j.Slf4j;
 enum Instruction {
     ADC(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             byte a = cpu.getA();
             byte c = cpu.getCarryFlag() ? (byte)1 : (byte)0;
             int signedResult = a + value + c;
@@ -28,7 +28,7 @@ enum Instruction {
     }, // Add with Carry
     SBC(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             byte a = cpu.getA();
             byte c = cpu.getCarryFlag() ? (byte)0 : (byte)1;
             int signedResult = a - value - c;
@@ -46,7 +46,7 @@ enum Instruction {
 
     AND(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             byte result = (byte)(cpu.getA() & value);
             cpu.setA(result);
             cpu.setZeroFlag(result);
@@ -55,7 +55,7 @@ enum Instruction {
     }, // Logical AND
     ORA(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             byte result = (byte)(cpu.getA() | value);
             cpu.setA(result);
             cpu.setZeroFlag(result);
@@ -64,7 +64,7 @@ enum Instruction {
     }, // Logical Inclusive OR
     EOR(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             byte result = (byte)(cpu.getA() ^ value);
             cpu.setA(result);
             cpu.setZeroFlag(result);
@@ -74,9 +74,9 @@ enum Instruction {
 
     ASL(true) {
         @Override
-        void execute(Integer address, Byte oldValue, CPU cpu) {
+        void execute(int address, byte oldValue, CPU cpu) {
             byte newValue = (byte)(oldValue << 1);
-            if (address == null) {
+            if (address == AddressingMode.NO_ADDRESS) {
                 cpu.setA(newValue);
             } else {
                 cpu.write(newValue, address);
@@ -88,9 +88,9 @@ enum Instruction {
     }, // Arithmetic Shift Left
     LSR(true) {
         @Override
-        void execute(Integer address, Byte oldValue, CPU cpu) {
+        void execute(int address, byte oldValue, CPU cpu) {
             byte newValue = BinaryUtil.setBit(false, (byte)(oldValue >> 1), 7);
-            if (address == null) {
+            if (address == AddressingMode.NO_ADDRESS) {
                 // accumulator
                 cpu.setA(newValue);
             } else {
@@ -104,9 +104,9 @@ enum Instruction {
     }, // Logical Shift Right
     ROL(true) {
         @Override
-        void execute(Integer address, Byte oldValue, CPU cpu) {
+        void execute(int address, byte oldValue, CPU cpu) {
             byte newValue = BinaryUtil.setBit(cpu.getCarryFlag(), (byte)(oldValue << 1), 0);
-            if (address == null) {
+            if (address == AddressingMode.NO_ADDRESS) {
                 // accumulator
                 cpu.setA(newValue);
             } else {
@@ -121,9 +121,9 @@ enum Instruction {
     }, // Rotate Left
     ROR(true) {
         @Override
-        void execute(Integer address, Byte oldValue, CPU cpu) {
+        void execute(int address, byte oldValue, CPU cpu) {
             byte newValue = BinaryUtil.setBit(cpu.getCarryFlag(), (byte)(oldValue >> 1), 7);
-            if (address == null) {
+            if (address == AddressingMode.NO_ADDRESS) {
                 // accumulator
                 cpu.setA(newValue);
             } else {
@@ -138,7 +138,7 @@ enum Instruction {
 
     BCC(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             if (!cpu.getCarryFlag()) {
                 cpu.jump(address);
             }
@@ -146,7 +146,7 @@ enum Instruction {
     }, // Branch if Carry Clear
     BCS(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             if (cpu.getCarryFlag()) {
                 cpu.jump(address);
             }
@@ -154,7 +154,7 @@ enum Instruction {
     }, // Branch if Carry Set
     BEQ(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             if (cpu.getZeroFlag()) {
                 cpu.jump(address);
             }
@@ -162,7 +162,7 @@ enum Instruction {
     }, // Branch if Equal
     BMI(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             if (cpu.getNegativeFlag()) {
                 cpu.jump(address);
             }
@@ -170,7 +170,7 @@ enum Instruction {
     }, // Branch if Minus
     BNE(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             if (!cpu.getZeroFlag()) {
                 cpu.jump(address);
             }
@@ -178,7 +178,7 @@ enum Instruction {
     }, // Branch if Not Equal
     BPL(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             if (!cpu.getNegativeFlag()) {
                 cpu.jump(address);
             }
@@ -187,7 +187,7 @@ enum Instruction {
     }, // Branch if Positive
     BVC(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             if (!cpu.getOverflowFlag()) {
                 cpu.jump(address);
             }
@@ -195,7 +195,7 @@ enum Instruction {
     }, // Branch if Overflow Clear
     BVS(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             if (cpu.getOverflowFlag()) {
                 cpu.jump(address);
             }
@@ -204,7 +204,7 @@ enum Instruction {
 
     BIT(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             byte masked = (byte)(Byte.toUnsignedInt(value) & Byte.toUnsignedInt(cpu.getA()));
             cpu.setZeroFlag(masked);
             cpu.setOverflowFlag(BinaryUtil.getBit(value, 6));
@@ -214,20 +214,20 @@ enum Instruction {
 
     JMP(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.jump(address);
         }
     }, // Jump
     JSR(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.push16(cpu.getPC() - 1);
             cpu.jump(address);
         }
     }, // Jump to Subroutine
     RTS(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             int returnTo = cpu.pull16() + 1;
             if (log.isDebugEnabled()) {
                 log.debug("return to: {}", BinaryUtil.toHexString(returnTo));
@@ -238,13 +238,13 @@ enum Instruction {
 
     BRK(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.handleBRK();
         }
     }, // Force Interrupt
     RTI(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.pullP();
             cpu.jump(cpu.pull16());
         }
@@ -252,32 +252,32 @@ enum Instruction {
 
     CMP(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             compare(cpu.getA(), value, cpu);
         }
     }, // Compare
     CPX(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             compare(cpu.getX(), value, cpu);
         }
     }, // Compare X Register
     CPY(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             compare(cpu.getY(), value, cpu);
         }
     }, // Compare Y Register
 
     INC(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             incrementMemory(address, cpu);
         }
     }, // Increment Memory
     INX(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.incrementX();
             final byte x = cpu.getX();
             cpu.setZeroFlag(x);
@@ -286,7 +286,7 @@ enum Instruction {
     }, // Increment X Register
     INY(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.incrementY();
             final byte y = cpu.getY();
             cpu.setZeroFlag(y);
@@ -295,13 +295,13 @@ enum Instruction {
     }, // Increment Y Register
     DEC(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             decrementMemory(address, cpu);
         }
     }, // Decrement Memory
     DEX(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.decrementX();
             final byte x = cpu.getX();
             cpu.setZeroFlag(x);
@@ -310,7 +310,7 @@ enum Instruction {
     }, // Decrement X Register
     DEY(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.decrementY();
             final byte y = cpu.getY();
             cpu.setZeroFlag(y);
@@ -320,45 +320,50 @@ enum Instruction {
 
     SEC(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.setCarryFlag(true);
         }
     }, // Set Carry Flag
     CLC(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.setCarryFlag(false);
         }
     }, // Clear Carry Flag
     SED(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.setDecimalFlag(true);
         }
     }, // Set Decimal Flag
     CLD(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.setDecimalFlag(false);
         }
     }, // Clear Decimal Mode
     SEI(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.setInterruptDisableFlag(true);
         }
     }, // Set Interrupt Disable
-    CLI(false), // Clear Interrupt Disable
+    CLI(false) {
+        @Override
+        void execute(int address, byte value, CPU cpu) {
+            cpu.setInterruptDisableFlag(false);
+        }
+    }, // Clear Interrupt Disable
     CLV(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.setOverflowFlag(false);
         }
     }, // Clear Overflow Flag
 
     LDA(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.setA(value);
             cpu.setZeroFlag(value);
             cpu.setNegativeFlag(value);
@@ -366,7 +371,7 @@ enum Instruction {
     }, // Load Accumulator
     LDX(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.setX(value);
             cpu.setZeroFlag(value);
             cpu.setNegativeFlag(value);
@@ -374,7 +379,7 @@ enum Instruction {
     }, // Load X Register
     LDY(true) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.setY(value);
             cpu.setZeroFlag(value);
             cpu.setNegativeFlag(value);
@@ -382,7 +387,7 @@ enum Instruction {
     }, // Load Y Register
     STA(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             final byte a = cpu.getA();
             if (log.isDebugEnabled()) {
                 log.debug("{}={}", BinaryUtil.toHexString(address), BinaryUtil.toHexString(a));
@@ -392,7 +397,7 @@ enum Instruction {
     }, // Store Accumulator
     STX(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             final byte x = cpu.getX();
             if (log.isDebugEnabled()) {
                 log.debug("{}={}", BinaryUtil.toHexString(address), BinaryUtil.toHexString(x));
@@ -402,7 +407,7 @@ enum Instruction {
     }, // Store X Register
     STY(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             final byte y = cpu.getY();
             if (log.isDebugEnabled()) {
                 log.debug("{}={}", BinaryUtil.toHexString(address), BinaryUtil.toHexString(y));
@@ -413,7 +418,7 @@ enum Instruction {
 
     TAX(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             final byte a = cpu.getA();
             cpu.setX(a);
             cpu.setZeroFlag(a);
@@ -422,7 +427,7 @@ enum Instruction {
     }, // Transfer Accumulator to X
     TAY(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             final byte a = cpu.getA();
             cpu.setY(a);
             cpu.setZeroFlag(a);
@@ -431,7 +436,7 @@ enum Instruction {
     }, // Transfer Accumulator to Y
     TSX(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             final byte s = cpu.getS();
             cpu.setX(s);
             cpu.setZeroFlag(s);
@@ -440,7 +445,7 @@ enum Instruction {
     }, // Transfer Stack Pointer to X
     TXA(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             final byte x = cpu.getX();
             cpu.setA(x);
             cpu.setZeroFlag(x);
@@ -449,7 +454,7 @@ enum Instruction {
     }, // Transfer X to Accumulator
     TYA(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             final byte y = cpu.getY();
             cpu.setA(y);
             cpu.setZeroFlag(y);
@@ -458,34 +463,34 @@ enum Instruction {
     }, // Transfer Y to Accumulator
     TXS(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.setS(cpu.getX());
         }
     }, // Transfer X to Stack Pointer
 
     PHA(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.pushA();
         }
     }, // Push Accumulator
     PLA(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.pullA();
         }
     }, // Pull Accumulator
     PHP(false), // Push Processor Status
     PLP(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
             cpu.pullP();
         }
     }, // Pull Processor Status
 
     NOP(false) {
         @Override
-        void execute(Integer address, Byte value, CPU cpu) {
+        void execute(int address, byte value, CPU cpu) {
         }
     }; // No Operation
 
@@ -493,7 +498,7 @@ enum Instruction {
 
     final boolean needsValue;
 
-    void execute(Integer address, Byte value, CPU cpu) {
+    void execute(int address, byte value, CPU cpu) {
         throw new UnsupportedOperationException(this.toString());
     };
 
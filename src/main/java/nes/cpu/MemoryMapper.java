@@ -2,18 +2,13 @@ package nes.cpu;
 
 import common.ByteArrayMemory;
 import common.ByteRegister;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import nes.apu.APU;
+import nes.mapper.Mapper;
 import nes.ppu.PPU;
-import org.eclipse.collections.api.tuple.Pair;
 
-import static nes.cpu.MemoryMapper.Permission.*;
-import static nes.cpu.MemoryMapper.Type.MEMORY;
-import static nes.cpu.MemoryMapper.Type.REGISTER;
-import static org.eclipse.collections.impl.tuple.Tuples.pair;
+import static nes.cpu.MemoryMapper.PageType.*;
 
-@RequiredArgsConstructor
 @Slf4j
 public class MemoryMapper {
     /**
@@ -33,204 +28,240 @@ public class MemoryMapper {
      *     $8000-$FFFF Program ROM
      */
     static final int PROGRAM_OFFSET = 0x8000;
+    private static final int CARTRIDGE_OFFSET = 0x4100; // $4020-$40FF is left unmapped
 
-    enum Type { REGISTER, MEMORY };
-    enum Permission {RO, WO, RW}
-
-    Type getType(int address) {
-        if (address >= 0x0000 && address < 0x2000) {
-            return MEMORY;
-        } else if (address >= 0x2000 && address < 0x4000) {
-            return REGISTER;
-        } else if (address >= 0x4000 && address < 0x4018) {
-            log.debug("access to APU & I/O registers");
-            return REGISTER;
-        } else if (address >= 0x4018 && address < 0x4020) {
-            throw new IllegalArgumentException("APU and I/O functionality that is normally disabled");
-        } else if (address >= 0x4020 && address < 0x10000) {
-            return MEMORY;
+    private static final int PAGE_COUNT = 0x100;
+    private static final int PAGE_SIZE = 0x100;
+    private static final int RAM_MASK = 0x7FF;
+    private static final int PPU_REGISTER_COUNT = 8;
+    private static final int PPU_STATUS_INDEX = 2;
+    private static final int IO_REGISTER_COUNT = 0x18;
+    private static final int IO_DISABLED_END = 0x20;
+
+    enum PageType { RAM, PPU_REGISTER, IO_REGISTER, CARTRIDGE, UNMAPPED }
+
+    // indexed by the upper byte of the address
+    private final PageType[] pages = new PageType[PAGE_COUNT];
+
+    private final CPU cpu;
+    private final ByteArrayMemory ram;
+    private final Mapper mapper;
+
+    // null where the register is not readable / writable
+    private final ByteRegister[] readablePPURegisters = new ByteRegister[PPU_REGISTER_COUNT];
+    private final ByteRegister[] writablePPURegisters = new ByteRegister[PPU_REGISTER_COUNT];
+    private final ByteRegister[] readableIORegisters = new ByteRegister[IO_REGISTER_COUNT];
+    private final ByteRegister[] writableIORegisters = new ByteRegister[IO_REGISTER_COUNT];
+
+    MemoryMapper(CPU cpu, PPU ppu, APU apu) {
+        this.cpu = cpu;
+        ram = cpu.ram;
+        mapper = cpu.mapper;
+
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            int address = page << 8;
+            if (address < 0x2000) {
+                pages[page] = RAM;
+            } else if (address < 0x4000) {
+                pages[page] = PPU_REGISTER;
+            } else if (address == 0x4000) {
+                pages[page] = IO_REGISTER;
+            } else if (address >= CARTRIDGE_OFFSET) {
+                pages[page] = CARTRIDGE;
+            } else {
+                pages[page] = UNMAPPED;
+            }
         }
-        throw new IllegalArgumentException("address out of range");
+
+        // https://wiki.nesdev.com/w/index.php/PPU_registers
+        bindPPU(0, ppu.regPPUCTRL, false, true);
+        bindPPU(1, ppu.regPPUMASK, false, true);
+        bindPPU(2, ppu.regPPUSTATUS, true, false);
+        bindPPU(3, ppu.regOAMADDR, false, true);
+        bindPPU(4, ppu.regOAMDATA, true, true);
+        bindPPU(5, ppu.regPPUSCROLL, false, true);
+        bindPPU(6, ppu.regPPUADDR, false, true);
+        bindPPU(7, ppu.regPPUDATA, true, true);
+
+        // APU and I/O registers
+        bindIO(0x4000, apu.regSQ1_VOL, false, true);
+        bindIO(0x4001, apu.regSQ1_SWEEP, false, true);
+        bindIO(0x4002, apu.regSQ1_LO, false, true);
+        bindIO(0x4003, apu.regSQ1_HI, false, true);
+        bindIO(0x4004, apu.regSQ2_VOL, false, true);
+        bindIO(0x4005, apu.regSQ2_SWEEP, false, true);
+        bindIO(0x4006, apu.regSQ2_LO, false, true);
+        bindIO(0x4007, apu.regSQ2_HI, false, true);
+        bindIO(0x4008, apu.regTRI_LINEAR, false, true);
+        bindIO(0x4009, apu.regUNUSED1, true, true);
+        bindIO(0x400A, apu.regTRI_LO, false, true);
+        bindIO(0x400B, apu.regTRI_HI, false, true);
+        bindIO(0x400C, apu.regNOISE_VOL, false, true);
+        bindIO(0x400D, apu.regUNUSED2, true, true);
+        bindIO(0x400E, apu.regNOISE_LO, false, true);
+        bindIO(0x400F, apu.regNOISE_HI, false, true);
+        bindIO(0x4010, apu.regDMC_FREQ, false, true);
+        bindIO(0x4011, apu.regDMC_RAW, false, true);
+        bindIO(0x4012, apu.regDMC_START, false, true);
+        bindIO(0x4013, apu.regDMC_LEN, false, true);
+        bindIO(0x4014, cpu.regOAMDMA, false, true);
+        bindIO(0x4015, apu.regAPUSTATUS, false, true);
+        bindIO(0x4016, cpu.regJOY1, true, true);
+        bindIO(0x4017, cpu.regJOY2, true, true);
     }
 
-    private final CPU cpu;
-    private final PPU ppu;
-    private final APU apu;
+    private void bindPPU(int index, ByteRegister register, boolean readable, boolean writable) {
+        readablePPURegisters[index] = readable ? register : null;
+        writablePPURegisters[index] = writable ? register : null;
+    }
+
+    private void bindIO(int address, ByteRegister register, boolean readable, boolean writable) {
+        readableIORegisters[address - 0x4000] = readable ? register : null;
+        writableIORegisters[address - 0x4000] = writable ? register : null;
+    }
 
     public byte get(int address) {
-        switch (getType(address)) {
-            case REGISTER:
-                ByteRegister register = getReadableRegister(address);
-                return register.get();
-            case MEMORY:
-                Pair<ByteArrayMemory, Integer> pair = getReadableMemory(address);
-                return pair.getOne().get(pair.getTwo());
+        switch (pages[address >> 8]) {
+            case RAM:
+                return ram.get(address & RAM_MASK);
+            case CARTRIDGE:
+                return mapper.readProgram(address);
+            case PPU_REGISTER:
+                int index = address & (PPU_REGISTER_COUNT - 1);
+                if (index == PPU_STATUS_INDEX && cpu.statusPredicted) {
+                    // the same value on every read until the next PPU event, so polling loops stay idle
+                    return readablePPURegisters[index].get();
+                }
+                cpu.loopClean = false;
+                cpu.synchronize();
+                return getReadableRegister(readablePPURegisters[index]).get();
+            case IO_REGISTER:
+                cpu.loopClean = false;
+                cpu.synchronize();
+                return getReadableRegister(getIORegister(readableIORegisters, address)).get();
+            default:
+                throw new IllegalArgumentException("unimplemented memory");
+        }
+    }
+
+    /**
+     * Read $XX00-$XXFF at once from RAM and the cartridge, a byte at a time from registers.
+     *
+     * @param page 0-$FF
+     */
+    void readPage(int page, byte[] dest) {
+        int address = page << 8;
+        switch (pages[page]) {
+            case RAM:
+                ram.copyTo(address & RAM_MASK, dest, 0, PAGE_SIZE);
+                return;
+            case CARTRIDGE:
+                mapper.readProgram(address, dest, PAGE_SIZE);
+                return;
+            default:
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    dest[i] = get(address + i);
+                }
         }
-        throw new IllegalArgumentException();
     }
 
     void set(byte value, int address) {
-        switch (getType(address)) {
-            case REGISTER:
-                ByteRegister register = getWritableRegister(address);
-                register.set(value);
+        cpu.loopClean = false;
+        switch (pages[address >> 8]) {
+            case RAM:
+                ram.set(value, address & RAM_MASK);
                 return;
-            case MEMORY:
-                Pair<ByteArrayMemory, Integer> pair = getWritableMemory(address);
-                pair.getOne().set(value, pair.getTwo());
+            case CARTRIDGE:
+                cpu.statusPredicted = false;
+                mapper.writeProgram(value, address);
                 return;
+            case PPU_REGISTER:
+                cpu.synchronize();
+                getWritableRegister(writablePPURegisters[address & (PPU_REGISTER_COUNT - 1)]).set(value);
+                cpu.updateDeadline();
+                return;
+            case IO_REGISTER:
+                cpu.synchronize();
+                getWritableRegister(getIORegister(writableIORegisters, address)).set(value);
+                cpu.updateDeadline();
+                return;
+            default:
+                throw new IllegalArgumentException("unimplemented memory");
         }
-        throw new IllegalArgumentException();
     }
 
     byte increment(int address) {
-        switch (getType(address)) {
-            case REGISTER:
+        cpu.loopClean = false;
+        switch (pages[address >> 8]) {
+            case RAM:
+                return ram.increment(address & RAM_MASK);
+            case CARTRIDGE:
+                cpu.statusPredicted = false;
+                byte incremented = (byte)(mapper.readProgram(address) + 1);
+                mapper.writeProgram(incremented, address);
+                return incremented;
+            case PPU_REGISTER:
+            case IO_REGISTER:
+                cpu.synchronize();
                 ByteRegister register = getWritableRegister(address);
                 register.increment();
+                cpu.updateDeadline();
                 return register.get();
-            case MEMORY:
-                Pair<ByteArrayMemory, Integer> pair = getWritableMemory(address);
-                return pair.getOne().increment(pair.getTwo());
+            default:
+                throw new IllegalArgumentException("unimplemented memory");
         }
-        throw new IllegalArgumentException();
     }
 
     byte decrement(int address) {
-        switch (getType(address)) {
-            case REGISTER:
+        cpu.loopClean = false;
+        switch (pages[address >> 8]) {
+            case RAM:
+                return ram.decrement(address & RAM_MASK);
+            case CARTRIDGE:
+                cpu.statusPredicted = false;
+                byte decremented = (byte)(mapper.readProgram(address) - 1);
+                mapper.writeProgram(decremented, address);
+                return decremented;
+            case PPU_REGISTER:
+            case IO_REGISTER:
+                cpu.synchronize();
                 ByteRegister register = getWritableRegister(address);
                 register.decrement();
+                cpu.updateDeadline();
                 return register.get();
-            case MEMORY:
-                Pair<ByteArrayMemory, Integer> pair = getWritableMemory(address);
-                return pair.getOne().decrement(pair.getTwo());
-        }
-        throw new IllegalArgumentException();
-    }
-
-    /**
-     *
-     * @param address
-     * @return pair of memory and offset
-     */
-    private Pair<ByteArrayMemory, Integer> getWritableMemory(int address) {
-        Pair<Pair<ByteArrayMemory, Integer>, Permission> pair = getMemory(address);
-        if (pair.getTwo() == RO) {
-            throw new IllegalArgumentException("not writable memory");
+            default:
+                throw new IllegalArgumentException("unimplemented memory");
         }
-        return pair.getOne();
     }
 
-    private Pair<ByteArrayMemory, Integer> getReadableMemory(int address) {
-        Pair<Pair<ByteArrayMemory, Integer>, Permission> pair = getMemory(address);
-        if (pair.getTwo() == WO) {
-            throw new IllegalArgumentException("not readable memory");
-        }
-        return pair.getOne();
-    }
-
-    private Pair<Pair<ByteArrayMemory, Integer>, Permission> getMemory(int address) {
-        if (address < 0x2000) {
-            return pair(pair(cpu.ram, address % 0x800), RW);
-        } else if (address >= 0x4020 && address < PROGRAM_OFFSET) {
-            throw new IllegalArgumentException("unimplemented memory");
-        } else if (address >= PROGRAM_OFFSET && address < 0x10000) {
-            return pair(pair(cpu.programRom, address - PROGRAM_OFFSET), RO);
+    private ByteRegister getWritableRegister(int address) {
+        if (pages[address >> 8] == PPU_REGISTER) {
+            return getWritableRegister(writablePPURegisters[address & (PPU_REGISTER_COUNT - 1)]);
         }
-        throw new IllegalArgumentException();
+        return getWritableRegister(getIORegister(writableIORegisters, address));
     }
 
-    private ByteRegister getWritableRegister(int address) {
-        Pair<ByteRegister, Permission> pair = getRegister(address);
-        if (pair.getTwo() == RO) {
-            throw new IllegalArgumentException("not writable register");
+    private static ByteRegister getIORegister(ByteRegister[] registers, int address) {
+        int index = address & 0xFF;
+        if (index < IO_REGISTER_COUNT) {
+            return registers[index];
+        } else if (index < IO_DISABLED_END) {
+            throw new IllegalArgumentException("APU and I/O functionality that is normally disabled");
         }
-        return pair.getOne();
+        throw new IllegalArgumentException("unimplemented memory");
     }
 
-    private ByteRegister getReadableRegister(int address) {
-        Pair<ByteRegister, Permission> pair = getRegister(address);
-        if (pair.getTwo() == WO) {
+    private static ByteRegister getReadableRegister(ByteRegister register) {
+        if (register == null) {
             throw new IllegalArgumentException("not readable register");
         }
-        return pair.getOne();
+        return register;
     }
 
-    private Pair<ByteRegister, Permission> getRegister(int address) {
-        if (address >= 0x2000 && address < 0x4000) {
-            // PPU registers
-            switch (address % 8) {
-                case 0:
-                    return pair(ppu.regPPUCTRL, WO);
-                case 1:
-                    return pair(ppu.regPPUMASK, WO);
-                case 2:
-                    return pair(ppu.regPPUSTATUS, RO);
-                case 3:
-                    return pair(ppu.regOAMADDR, WO);
-                case 4:
-                    return pair(ppu.regOAMDATA, RW);
-                case 5:
-                    return pair(ppu.regPPUSCROLL, WO);
-                case 6:
-                    return pair(ppu.regPPUADDR, WO);
-                case 7:
-                    return pair(ppu.regPPUDATA, RW);
-            }
-        } else {
-            // APU and I/O registers
-            switch (address) {
-                case 0x4000:
-                    return pair(apu.regSQ1_VOL, WO);
-                case 0x4001:
-                    return pair(apu.regSQ1_SWEEP, WO);
-                case 0x4002:
-                    return pair(apu.regSQ1_LO, WO);
-                case 0x4003:
-                    return pair(apu.regSQ1_HI, WO);
-                case 0x4004:
-                    return pair(apu.regSQ2_VOL, WO);
-                case 0x4005:
-                    return pair(apu.regSQ2_SWEEP, WO);
-                case 0x4006:
-                    return pair(apu.regSQ2_LO, WO);
-                case 0x4007:
-                    return pair(apu.regSQ2_HI, WO);
-                case 0x4008:
-                    return pair(apu.regTRI_LINEAR, WO);
-                case 0x4009:
-                    return pair(apu.regUNUSED1, RW);
-                case 0x400A:
-                    return pair(apu.regTRI_LO, WO);
-                case 0x400B:
-                    return pair(apu.regTRI_HI, WO);
-                case 0x400C:
-                    return pair(apu.regNOISE_VOL, WO);
-                case 0x400D:
-                    return pair(apu.regUNUSED2, RW);
-                case 0x400E:
-                    return pair(apu.regNOISE_LO, WO);
-                case 0x400F:
-                    return pair(apu.regNOISE_HI, WO);
-                case 0x4010:
-                    return pair(apu.regDMC_FREQ, WO);
-                case 0x4011:
-                    return pair(apu.regDMC_RAW, WO);
-                case 0x4012:
-                    return pair(apu.regDMC_START, WO);
-                case 0x4013:
-                    return pair(apu.regDMC_LEN, WO);
-                case 0x4014:
-                    return pair(cpu.regOAMDMA, WO);
-                case 0x4015:
-                    return pair(apu.regAPUSTATUS, WO);
-                case 0x4016:
-                    return pair(cpu.regJOY1, RW);
-                case 0x4017:
-                    return pair(cpu.regJOY2, RW);
-            }
+    private static ByteRegister getWritableRegister(ByteRegister register) {
+        if (register == null) {
+            throw new IllegalArgumentException("not writable register");
         }
-        throw new IllegalArgumentException();
+        return register;
     }
 }
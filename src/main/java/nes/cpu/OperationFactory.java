@@ -1,19 +1,21 @@
 package nes.cpu;
 
 import org.eclipse.collections.api.tuple.Pair;
-import org.eclipse.collections.impl.factory.Maps;
 
-import java.util.Map;
+import java.util.Arrays;
 
 import static nes.cpu.AddressingMode.*;
 import static nes.cpu.Instruction.*;
 import static org.eclipse.collections.impl.tuple.Tuples.pair;
 
 class OperationFactory {
-    private final Map<Byte, Operation> instanceMap;
+    private static final int OPCODE_COUNT = 0x100;
+
+    // indexed by unsigned opcode; null for unofficial/unimplemented opcodes
+    private final Operation[] operations;
 
     OperationFactory() {
-        instanceMap = Maps.mutable.empty();
+        operations = new Operation[OPCODE_COUNT];
 
         putInstance(0x69, pair(ADC, IMMEDIATE), 2);
         putInstance(0x65, pair(ADC, ZERO_PAGE), 3);
@@ -198,24 +200,26 @@ class OperationFactory {
         putInstance(0x9A, pair(TXS, IMPLICIT),2);
     }
 
-    private void putInstance(int opcodeInt, Pair<Instruction, AddressingMode> value, int cycles) {
-        byte opcode = (byte)opcodeInt;
-        if (instanceMap.containsKey(opcode)) {
+    private void putInstance(int opcode, Pair<Instruction, AddressingMode> value, int cycles) {
+        if (operations[opcode] != null) {
             throw new IllegalArgumentException();
         }
         Instruction newInstruction = value.getOne();
         AddressingMode newAddressingMode = value.getTwo();
         Operation newOperation = new Operation(newInstruction, newAddressingMode, cycles);
-        boolean dup = instanceMap.values().stream().anyMatch(operation -> {
-            return operation.getInstruction() == newInstruction && operation.getAddressingMode() == newAddressingMode;
+        boolean dup = Arrays.stream(operations).anyMatch(operation -> {
+            return operation != null && operation.getInstruction() == newInstruction && operation.getAddressingMode() == newAddressingMode;
         });
         if (dup) {
             throw new IllegalArgumentException();
         }
-        instanceMap.put(opcode, newOperation);
+        operations[opcode] = newOperation;
     }
 
-    Operation get(byte opcode) {
-        return instanceMap.get(opcode);
+    /**
+     * @param opcode 0-255
+     */
+    Operation get(int opcode) {
+        return operations[opcode];
     }
 }
@@ -0,0 +1,227 @@
+package nes.cpu;
+
+import lombok.extern.slf4j.Slf4j;
+import nes.mapper.Mapper;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static nes.cpu.AddressingMode.NO_ADDRESS;
+import static nes.cpu.AddressingMode.NO_OPERAND;
+import static nes.cpu.Instruction.*;
+import static nes.cpu.MemoryMapper.PROGRAM_OFFSET;
+
+/**
+ * Finds hot basic blocks in PRG ROM by counting branch targets, decodes them into {@link CompiledBlock}s
+ * and generates a JVM class for each by {@link BlockGenerator}.
+ *
+ * Only PRG ROM is compiled, so code in RAM (which may be modified by itself) is always interpreted.
+ * Instructions that access the PPU/APU registers ($2000-$4017) end the block, so that the interpreter
+ * runs them one by one with the usual timing. So do stores to the mapper registers ($8000-$FFFF),
+ * since they may switch the bank the block is running from. Instructions the interpreter does not implement
+ * end the block too, so that they fail there as before.
+ *
+ * Blocks are keyed by the offset in the whole PRG ROM rather than the CPU address, so they stay valid
+ * across bank switches and a block never crosses an 8KB bank slot.
+ */
+@Slf4j
+class Recompiler {
+    static final int HOT_THRESHOLD = 16;
+    static final int MAX_BLOCK_LENGTH = 32;
+
+    private static final int BANK_MASK = ~0x1FFF;
+
+    static final int IO_START = 0x2000;
+    static final int IO_END = 0x4018;
+
+    // these end a basic block
+    private static final Set<Instruction> BLOCK_ENDS = EnumSet.of(
+            BCC, BCS, BEQ, BMI, BNE, BPL, BVC, BVS, JMP, JSR, RTS, RTI, BRK);
+
+    // address given by the addressing mode is a jump target, not a memory access
+    private static final Set<Instruction> JUMPS = EnumSet.of(
+            BCC, BCS, BEQ, BMI, BNE, BPL, BVC, BVS, JMP, JSR);
+
+    private static final Set<Instruction> STORES = EnumSet.of(
+            STA, STX, STY, INC, DEC, ASL, LSR, ROL, ROR);
+
+    private static final Set<Instruction> UNSUPPORTED = EnumSet.of(PHP);
+
+    private final CPU cpu;
+    private final Mapper mapper;
+    private final OperationFactory operationFactory;
+    private final BlockGenerator generator;
+
+    // indexed by the offset in PRG ROM
+    private final int[] hitCounts;
+    private final CompiledBlock[] blocks;
+
+    Recompiler(CPU cpu, OperationFactory operationFactory) {
+        this.cpu = cpu;
+        this.mapper = cpu.mapper;
+        this.operationFactory = operationFactory;
+        generator = new BlockGenerator(cpu);
+        hitCounts = new int[mapper.getProgramRomSize()];
+        blocks = new CompiledBlock[mapper.getProgramRomSize()];
+    }
+
+    static boolean isIoAddress(int address) {
+        return address >= IO_START && address < IO_END;
+    }
+
+    static boolean isMapperRegister(int address) {
+        return address >= PROGRAM_OFFSET;
+    }
+
+    /**
+     * @return compiled block starting at the address, or null if it is not hot (yet)
+     */
+    CompiledBlock getBlock(int address) {
+        if (address < PROGRAM_OFFSET) {
+            return null;
+        }
+        CompiledBlock block = blocks[mapper.getProgramRomOffset(address)];
+        // the same bank may be mapped to another slot
+        return block != null && block.startAddress == address ? block : null;
+    }
+
+    void countBranchTarget(int address) {
+        if (address < PROGRAM_OFFSET) {
+            return;
+        }
+        int offset = mapper.getProgramRomOffset(address);
+        if (hitCounts[offset] == HOT_THRESHOLD) {
+            if (blocks[offset] != null && blocks[offset].startAddress != address) {
+                blocks[offset] = compile(address);
+            }
+            return;
+        }
+        hitCounts[offset]++;
+        if (hitCounts[offset] == HOT_THRESHOLD) {
+            blocks[offset] = compile(address);
+        }
+    }
+
+    private CompiledBlock compile(int startAddress) {
+        int[] opcodes = new int[MAX_BLOCK_LENGTH];
+        Operation[] operations = new Operation[MAX_BLOCK_LENGTH];
+        int[] operands1 = new int[MAX_BLOCK_LENGTH];
+        int[] operands2 = new int[MAX_BLOCK_LENGTH];
+        int[] instructionAddresses = new int[MAX_BLOCK_LENGTH];
+
+        int length = 0;
+        int pc = startAddress;
+        while (length < MAX_BLOCK_LENGTH) {
+            int opcode = Byte.toUnsignedInt(cpu.read(pc));
+            Operation op = operationFactory.get(opcode);
+            if (op == null || UNSUPPORTED.contains(op.getInstruction())
+                    || op.getAddressingMode() == AddressingMode.INDEXED_INDIRECT_X) {
+                break;
+            }
+            int bytes = op.getAddressingMode().addressBytes;
+            if (((pc + bytes) & BANK_MASK) != (startAddress & BANK_MASK)) {
+                break;
+            }
+            int operand1 = bytes >= 1 ? Byte.toUnsignedInt(cpu.read(pc + 1)) : NO_OPERAND;
+            int operand2 = bytes >= 2 ? Byte.toUnsignedInt(cpu.read(pc + 2)) : NO_OPERAND;
+            if (accessesMemory(op) && isStatic(op.getAddressingMode())) {
+                int address = resolve(op.getAddressingMode(), operand1, operand2, pc + 1 + bytes);
+                if (isIoAddress(address) || (STORES.contains(op.getInstruction()) && isMapperRegister(address))) {
+                    // leave the register access to the interpreter
+                    break;
+                }
+            }
+            opcodes[length] = opcode;
+            operations[length] = op;
+            operands1[length] = operand1;
+            operands2[length] = operand2;
+            instructionAddresses[length] = pc;
+            length++;
+            pc += 1 + bytes;
+            if (BLOCK_ENDS.contains(op.getInstruction())) {
+                break;
+            }
+        }
+        if (length == 0) {
+            return null;
+        }
+
+        CompiledBlock block = new CompiledBlock(startAddress, length);
+        for (int i = 0; i < length; i++) {
+            Operation op = operations[i];
+            AddressingMode mode = op.getAddressingMode();
+            int next = instructionAddresses[i] + 1 + mode.addressBytes;
+            block.opcodes[i] = opcodes[i];
+            block.operations[i] = op;
+            block.operands1[i] = operands1[i];
+            block.operands2[i] = operands2[i];
+            block.instructionAddresses[i] = instructionAddresses[i];
+            block.nextAddresses[i] = next;
+            block.addresses[i] = isStatic(mode) ? resolve(mode, operands1[i], operands2[i], next) : CompiledBlock.DYNAMIC_ADDRESS;
+            block.checkIo[i] = !isStatic(mode) && accessesMemory(op);
+            block.checkMapper[i] = block.checkIo[i] && STORES.contains(op.getInstruction());
+            block.valueSources[i] = getValueSource(op);
+        }
+        block.code = generator.generate(block);
+        if (log.isDebugEnabled()) {
+            log.debug("compiled block at {} ({} instructions)", Integer.toHexString(startAddress), length);
+        }
+        return block;
+    }
+
+    private static boolean accessesMemory(Operation op) {
+        switch (op.getAddressingMode()) {
+            case IMPLICIT:
+            case ACCUMULATOR:
+            case IMMEDIATE:
+            case RELATIVE:
+                return false;
+            default:
+                return !JUMPS.contains(op.getInstruction());
+        }
+    }
+
+    /**
+     * @return true if the address does not depend on registers or memory
+     */
+    private static boolean isStatic(AddressingMode mode) {
+        switch (mode) {
+            case IMPLICIT:
+            case ACCUMULATOR:
+            case IMMEDIATE:
+            case ZERO_PAGE:
+            case RELATIVE:
+            case ABSOLUTE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int resolve(AddressingMode mode, int operand1, int operand2, int nextAddress) {
+        switch (mode) {
+            case ZERO_PAGE:
+                return operand1;
+            case RELATIVE:
+                return nextAddress + (byte)operand1;
+            case ABSOLUTE:
+                return (operand2 << 8) + operand1;
+            default:
+                return NO_ADDRESS;
+        }
+    }
+
+    private static CompiledBlock.ValueSource getValueSource(Operation op) {
+        switch (op.getAddressingMode()) {
+            case IMMEDIATE:
+                return CompiledBlock.ValueSource.OPERAND;
+            case ACCUMULATOR:
+                return CompiledBlock.ValueSource.ACCUMULATOR;
+            case IMPLICIT:
+            case RELATIVE:
+                return CompiledBlock.ValueSource.NONE;
+            default:
+                return op.getInstruction().needsValue ? CompiledBlock.ValueSource.MEMORY : CompiledBlock.ValueSource.NONE;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package nes.cpu;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static nes.cpu.TraceRecorder.*;
+
+/**
+ * Text of a {@link TraceRecorder} file, oldest instruction first, one line per instruction as nestest.log has them:
+ * C000  4C F5 C5  JMP $C5F5                       A:00 X:00 Y:00 P:24 SP:FD CYC:7
+ * The trace holds no memory contents, so effective addresses and values are not shown.
+ */
+public class TraceDecoder {
+    private final OperationFactory operationFactory = new OperationFactory();
+
+    public void decode(Path file, PrintStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), out);
+        }
+    }
+
+    public void decode(ByteBuffer trace, PrintStream out) {
+        checkArgument(trace.limit() >= HEADER_SIZE && trace.getInt(0) == MAGIC, "not a trace");
+        int version = trace.getInt(4);
+        checkArgument(version == VERSION, "unsupported trace version %s", version);
+        int capacity = trace.getInt(8);
+        long count = trace.getLong(16);
+        checkArgument(capacity > 0 && trace.limit() >= HEADER_SIZE + (long)capacity * RECORD_SIZE, "truncated trace");
+
+        long first = Math.max(0, count - capacity);
+        StringBuilder sb = new StringBuilder();
+        for (long n = first; n < count; n++) {
+            sb.setLength(0);
+            format(trace, HEADER_SIZE + (int)(n % capacity) * RECORD_SIZE, sb);
+            out.println(sb);
+        }
+    }
+
+    void format(ByteBuffer trace, int offset, StringBuilder sb) {
+        int pc = Short.toUnsignedInt(trace.getShort(offset));
+        int opcode = Byte.toUnsignedInt(trace.get(offset + 2));
+        int operand1 = Byte.toUnsignedInt(trace.get(offset + 3));
+        int operand2 = Byte.toUnsignedInt(trace.get(offset + 4));
+        long cycle = (long)Short.toUnsignedInt(trace.getShort(offset + 10)) << 32
+                | Integer.toUnsignedLong(trace.getInt(offset + 12));
+
+        Operation op = operationFactory.get(opcode);
+        int bytes = op != null ? op.getAddressingMode().addressBytes : 0;
+        sb.append(String.format("%04X  %02X", pc, opcode));
+        sb.append(bytes > 0 ? String.format(" %02X", operand1) : "   ");
+        sb.append(bytes > 1 ? String.format(" %02X", operand2) : "   ");
+        sb.append("  ");
+        int start = sb.length();
+        if (op == null) {
+            sb.append("???");
+        } else {
+            sb.append(op.getInstruction());
+            String operand = formatOperand(op.getAddressingMode(), pc, operand1, operand2);
+            if (!operand.isEmpty()) {
+                sb.append(' ').append(operand);
+            }
+        }
+        while (sb.length() < start + 32) {
+            sb.append(' ');
+        }
+        sb.append(String.format("A:%02X X:%02X Y:%02X P:%02X SP:%02X CYC:%d",
+                trace.get(offset + 5), trace.get(offset + 6), trace.get(offset + 7),
+                trace.get(offset + 9), trace.get(offset + 8), cycle));
+    }
+
+    private static String formatOperand(AddressingMode mode, int pc, int operand1, int operand2) {
+        int address = operand2 << 8 | operand1;
+        switch (mode) {
+            case IMPLICIT:
+                return "";
+            case ACCUMULATOR:
+                return "A";
+            case IMMEDIATE:
+                return String.format("#$%02X", operand1);
+            case ZERO_PAGE:
+                return String.format("$%02X", operand1);
+            case ZERO_PAGE_X:
+                return String.format("$%02X,X", operand1);
+            case ZERO_PAGE_Y:
+                return String.format("$%02X,Y", operand1);
+            case RELATIVE:
+                return String.format("$%04X", (pc + 2 + (byte)operand1) & 0xFFFF);
+            case ABSOLUTE:
+                return String.format("$%04X", address);
+            case ABSOLUTE_X:
+                return String.format("$%04X,X", address);
+            case ABSOLUTE_Y:
+                return String.format("$%04X,Y", address);
+            case INDIRECT:
+                return String.format("($%04X)", address);
+            case INDEXED_INDIRECT_X:
+                return String.format("($%02X,X)", operand1);
+            case INDIRECT_INDEXED_Y:
+                return String.format("($%02X),Y", operand1);
+            default:
+                throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package nes.cpu;
+
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Binary record of every instruction executed, kept in a ring of fixed size records, so that only the last
+ * capacity instructions are kept however long the run is. Decoded to text offline by {@link TraceDecoder}.
+ *
+ * Recording stores 16 bytes with absolute puts and allocates nothing. The ring is either on the heap,
+ * written to a file at the end with {@link #write}, or a memory mapped file for traces larger than the heap.
+ *
+ * Format: header (magic, version, capacity, reserved: big endian ints, number of records written: long),
+ * then capacity records of PC (2 bytes), opcode, the operand bytes, A, X, Y, S, P, and the cycle the instruction
+ * started at (6 bytes). Record n is at index n % capacity.
+ */
+public class TraceRecorder implements Closeable {
+    static final int MAGIC = 0x4E455354; // "NEST"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int RECORD_SIZE = 16;
+    private static final int COUNT_OFFSET = 16;
+
+    private final ByteBuffer buffer;
+    private final FileChannel channel; // null on the heap
+    private final int end;
+    private int offset = HEADER_SIZE;
+    @Getter
+    private long count;
+
+    private TraceRecorder(ByteBuffer buffer, FileChannel channel, int capacity) {
+        this.buffer = buffer;
+        this.channel = channel;
+        end = HEADER_SIZE + capacity * RECORD_SIZE;
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, 0);
+        buffer.putLong(COUNT_OFFSET, 0);
+    }
+
+    /**
+     * @param capacity number of instructions kept
+     */
+    public static TraceRecorder inMemory(int capacity) {
+        checkArgument(capacity > 0 && capacity <= (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE);
+        return new TraceRecorder(ByteBuffer.allocate(HEADER_SIZE + capacity * RECORD_SIZE), null, capacity);
+    }
+
+    /**
+     * The file is sized for the whole ring up front; the OS writes it back as it sees fit.
+     */
+    public static TraceRecorder mapped(Path file, int capacity) throws IOException {
+        checkArgument(capacity > 0 && capacity <= (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity * RECORD_SIZE);
+        return new TraceRecorder(buffer, channel, capacity);
+    }
+
+    /**
+     * @param operand1 first operand byte, or AddressingMode.NO_OPERAND
+     * @param operand2 second operand byte, or AddressingMode.NO_OPERAND
+     */
+    void record(int pc, int opcode, int operand1, int operand2, byte a, byte x, byte y, byte s, byte p, long cycle) {
+        ByteBuffer b = buffer;
+        int o = offset;
+        b.putShort(o, (short)pc);
+        b.put(o + 2, (byte)opcode);
+        b.put(o + 3, (byte)operand1);
+        b.put(o + 4, (byte)operand2);
+        b.put(o + 5, a);
+        b.put(o + 6, x);
+        b.put(o + 7, y);
+        b.put(o + 8, s);
+        b.put(o + 9, p);
+        b.putShort(o + 10, (short)(cycle >>> 32));
+        b.putInt(o + 12, (int)cycle);
+        o += RECORD_SIZE;
+        offset = o == end ? HEADER_SIZE : o;
+        count++;
+    }
+
+    /**
+     * Write the header and the ring as one trace file.
+     */
+    public void write(OutputStream out) throws IOException {
+        buffer.putLong(COUNT_OFFSET, count);
+        ByteBuffer all = buffer.duplicate();
+        all.clear();
+        Channels.newChannel(out).write(all);
+    }
+
+    /**
+     * Store the number of records in the header; the mapped file is then complete.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.putLong(COUNT_OFFSET, count);
+        if (channel != null) {
+            ((MappedByteBuffer)buffer).force();
+            channel.close();
+        }
+    }
+}
@@ -1,76 +1,51 @@
 package nes.cpu.register;
 
-import common.BinaryUtil;
 import common.ByteRegister;
+import common.StateSerializable;
 import nes.Controller;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
 
-import static nes.Controller.Button.*;
-
-public class JoystickRegister implements ByteRegister {
-    private Controller controller;
+/**
+ * $4016: the buttons are latched into a shift register while the strobe bit is set,
+ * then read one by one from bit 0 (A, B, SELECT, START, UP, DOWN, LEFT, RIGHT).
+ * After 8 reads the official pads return 1.
+ */
+public class JoystickRegister implements ByteRegister, StateSerializable {
+    private final Controller controller;
     private boolean strobe;
-    private Map<Controller.Button, Boolean> pressed;
-    private Controller.Button readNext;
+    private int shiftRegister;
 
     public JoystickRegister(Controller controller) {
-        strobe = false;
-        pressed = new HashMap<>();
-        pressed.put(null, true);
-        readNext = A;
         this.controller = controller;
     }
 
     @Override
     public void set(byte value) {
-        strobe = BinaryUtil.getBit(value, 0);
-        if (!strobe) {
-            updateState();
-        }
-        readNext = A;
+        strobe = (value & 1) != 0;
+        shiftRegister = controller.getButtons();
     }
 
     @Override
     public byte get() {
         if (strobe) {
-            updateState();
-            return pressed.get(A) ? (byte)1 : (byte)0;  // TODO expansion and microphone
-        } else {
-            byte ret = pressed.get(readNext) ? (byte)1 : (byte)0;
-            readNext = nextReadNext();
-            return ret;
+            // reloaded all the time, so A is read over and over
+            return (byte)(controller.getButtons() & 1);  // TODO expansion and microphone
         }
+        int bit = shiftRegister & 1;
+        shiftRegister = (shiftRegister >>> 1) | 0x80;
+        return (byte)bit;
     }
 
-    private void updateState() {
-        pressed.putAll(controller.getPressed());
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.put((byte)shiftRegister);
+        buffer.put((byte)(strobe ? 1 : 0));
     }
 
-    private Controller.Button nextReadNext() {
-        if (readNext == null) {
-            return null;
-        }
-        switch (readNext) {
-            case A:
-                return B;
-            case B:
-                return SELECT;
-            case SELECT:
-                return START;
-            case START:
-                return UP;
-            case UP:
-                return DOWN;
-            case DOWN:
-                return LEFT;
-            case LEFT:
-                return RIGHT;
-            case RIGHT:
-                return null;
-        }
-        return null;
+    @Override
+    public void load(ByteBuffer buffer) {
+        shiftRegister = Byte.toUnsignedInt(buffer.get());
+        strobe = buffer.get() != 0;
     }
-
 }
@@ -4,10 +4,19 @@ import common.ByteRegister;
 import nes.cpu.CPU;
 import nes.ppu.PPU;
 
+/**
+ * https://wiki.nesdev.com/w/index.php/PPU_registers#OAM_DMA_.28.244014.29_.3E_write
+ *
+ * The page is read in bulk from RAM and the cartridge, then written to OAM from OAMADDR on.
+ * The CPU is halted for 513 cycles from the cycle after the writing instruction,
+ * plus one to align when that cycle is odd.
+ */
 public class OAMDMARegister implements ByteRegister {
+    static final int STALL_CYCLES = 513;
 
     private final CPU cpu;
     private final PPU ppu;
+    private final byte[] page = new byte[PPU.OAM_SIZE];
 
     public OAMDMARegister(CPU cpu, PPU ppu) {
         this.cpu = cpu;
@@ -17,10 +26,8 @@ public class OAMDMARegister implements ByteRegister {
     @Override
     public void set(byte value) {
         // copy $XX00-$XXFF to PPU OAM
-        final int base = Byte.toUnsignedInt(value) * 0x100;
-        for (int offset = 0; offset < 0x100; offset++) {
-            final int address = base + offset;
-            ppu.oam.set(cpu.read(address), offset);
-        }
+        cpu.readPage(Byte.toUnsignedInt(value), page);
+        ppu.oam.copy(page, Byte.toUnsignedInt(ppu.regOAMADDR.get()));
+        cpu.stall(STALL_CYCLES + (int)(cpu.getCyclesAfterOperation() & 1));
     }
 }
@@ -0,0 +1,210 @@
+package nes.mapper;
+
+import common.ByteArrayMemory;
+import lombok.Getter;
+import nes.ppu.Mirroring;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bank switching by offsets: PRG ROM is mapped in four 8KB slots ($8000, $A000, $C000, $E000)
+ * and CHR in eight 1KB slots, each holding the offset of the bank in the whole ROM.
+ * Switching a bank only rewrites an offset, nothing is copied.
+ */
+public abstract class AbstractMapper implements Mapper {
+    static final int PROGRAM_BANK_SIZE = 0x2000;
+    static final int CHARACTER_BANK_SIZE = 0x400;
+
+    static final int PROGRAM_OFFSET = 0x8000;
+    private static final int PROGRAM_RAM_OFFSET = 0x6000;
+    private static final int PROGRAM_RAM_SIZE = 0x2000;
+    private static final int CHARACTER_RAM_SIZE = 0x2000;
+
+    protected final ByteArrayMemory programRom;
+    protected final ByteArrayMemory programRam;
+    protected final ByteArrayMemory characterMemory; // CHR ROM, or CHR RAM if the cartridge has no CHR ROM
+    private final boolean characterRam;
+
+    private final int[] programBanks = new int[4];
+    private final int[] characterBanks = new int[8];
+
+    @Getter
+    protected Mirroring mirroring;
+
+    AbstractMapper(ByteArrayMemory programRom, ByteArrayMemory characterRom, Mirroring mirroring) {
+        checkArgument(programRom.size() > 0 && programRom.size() % PROGRAM_BANK_SIZE == 0);
+        this.programRom = programRom;
+        this.programRam = new ByteArrayMemory(new byte[PROGRAM_RAM_SIZE]);
+        this.characterRam = characterRom == null;
+        this.characterMemory = characterRam ? new ByteArrayMemory(new byte[CHARACTER_RAM_SIZE]) : characterRom;
+        this.mirroring = mirroring;
+
+        // power up: first 16KB at $8000, last 16KB at $C000, first 8KB of CHR
+        setProgramBank16k(0, 0);
+        setProgramBank16k(1, getProgramBankCount16k() - 1);
+        setCharacterBank8k(0);
+    }
+
+    @Override
+    public byte readProgram(int address) {
+        if (address >= PROGRAM_OFFSET) {
+            return programRom.get(getProgramRomOffset(address));
+        } else if (address >= PROGRAM_RAM_OFFSET) {
+            return programRam.get(address - PROGRAM_RAM_OFFSET);
+        }
+        throw new IllegalArgumentException("unimplemented memory");
+    }
+
+    @Override
+    public void readProgram(int address, byte[] dest, int length) {
+        if (address >= PROGRAM_OFFSET) {
+            programRom.copyTo(getProgramRomOffset(address), dest, 0, length);
+        } else if (address >= PROGRAM_RAM_OFFSET) {
+            programRam.copyTo(address - PROGRAM_RAM_OFFSET, dest, 0, length);
+        } else {
+            throw new IllegalArgumentException("unimplemented memory");
+        }
+    }
+
+    @Override
+    public void writeProgram(byte value, int address) {
+        if (address >= PROGRAM_OFFSET) {
+            writeRegister(value, address);
+        } else if (address >= PROGRAM_RAM_OFFSET) {
+            programRam.set(value, address - PROGRAM_RAM_OFFSET);
+        } else {
+            throw new IllegalArgumentException("unimplemented memory");
+        }
+    }
+
+    /**
+     * Write to $8000-$FFFF
+     */
+    abstract void writeRegister(byte value, int address);
+
+    @Override
+    public byte readCharacter(int address) {
+        return characterMemory.get(getCharacterOffset(address));
+    }
+
+    @Override
+    public void writeCharacter(byte value, int address) {
+        if (!characterRam) {
+            throw new IllegalArgumentException("Cannot write to pattern tables");
+        }
+        characterMemory.set(value, getCharacterOffset(address));
+    }
+
+    @Override
+    public int getCharacterOffset(int address) {
+        return characterBanks[address >> 10] + (address & (CHARACTER_BANK_SIZE - 1));
+    }
+
+    @Override
+    public int getCharacterSize() {
+        return characterMemory.size();
+    }
+
+    @Override
+    public boolean hasCharacterRam() {
+        return characterRam;
+    }
+
+    @Override
+    public int getProgramRomOffset(int address) {
+        return programBanks[(address >> 13) & 3] + (address & (PROGRAM_BANK_SIZE - 1));
+    }
+
+    @Override
+    public int getProgramRomSize() {
+        return programRom.size();
+    }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        for (int bank : programBanks) {
+            buffer.putInt(bank);
+        }
+        for (int bank : characterBanks) {
+            buffer.putInt(bank);
+        }
+        buffer.put((byte)mirroring.ordinal());
+        programRam.save(buffer);
+        if (characterRam) {
+            characterMemory.save(buffer);
+        }
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        for (int i = 0; i < programBanks.length; i++) {
+            programBanks[i] = buffer.getInt();
+        }
+        for (int i = 0; i < characterBanks.length; i++) {
+            characterBanks[i] = buffer.getInt();
+        }
+        mirroring = Mirroring.values()[buffer.get()];
+        programRam.load(buffer);
+        if (characterRam) {
+            characterMemory.load(buffer);
+        }
+    }
+
+    int getProgramBankCount8k() {
+        return programRom.size() / PROGRAM_BANK_SIZE;
+    }
+
+    int getProgramBankCount16k() {
+        return Math.max(1, programRom.size() / (2 * PROGRAM_BANK_SIZE));
+    }
+
+    int getCharacterBankCount1k() {
+        return characterMemory.size() / CHARACTER_BANK_SIZE;
+    }
+
+    /**
+     * @param slot 0-3 ($8000, $A000, $C000, $E000)
+     */
+    void setProgramBank8k(int slot, int bank) {
+        programBanks[slot] = Math.floorMod(bank, getProgramBankCount8k()) * PROGRAM_BANK_SIZE;
+    }
+
+    /**
+     * @param slot 0-1 ($8000, $C000)
+     */
+    void setProgramBank16k(int slot, int bank) {
+        int base = Math.floorMod(bank, getProgramBankCount16k()) * 2 * PROGRAM_BANK_SIZE;
+        // a 16KB ROM (NROM-128) is simply mirrored
+        programBanks[slot * 2] = base % programRom.size();
+        programBanks[slot * 2 + 1] = (base + PROGRAM_BANK_SIZE) % programRom.size();
+    }
+
+    void setProgramBank32k(int bank) {
+        setProgramBank16k(0, bank * 2);
+        setProgramBank16k(1, bank * 2 + 1);
+    }
+
+    /**
+     * @param slot 0-7 ($0000, $0400, ..., $1C00)
+     */
+    void setCharacterBank1k(int slot, int bank) {
+        characterBanks[slot] = Math.floorMod(bank, getCharacterBankCount1k()) * CHARACTER_BANK_SIZE;
+    }
+
+    /**
+     * @param slot 0-1 ($0000, $1000)
+     */
+    void setCharacterBank4k(int slot, int bank) {
+        for (int i = 0; i < 4; i++) {
+            setCharacterBank1k(slot * 4 + i, bank * 4 + i);
+        }
+    }
+
+    void setCharacterBank8k(int bank) {
+        for (int i = 0; i < 8; i++) {
+            setCharacterBank1k(i, bank * 8 + i);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package nes.mapper;
+
+import common.ByteArrayMemory;
+import nes.ppu.Mirroring;
+
+/**
+ * Mapper 3
+ * https://wiki.nesdev.com/w/index.php/CNROM
+ *
+ * $0000-$1FFF (PPU): switchable 8KB CHR bank
+ */
+public class CNROM extends AbstractMapper {
+
+    public CNROM(ByteArrayMemory programRom, ByteArrayMemory characterRom, Mirroring mirroring) {
+        super(programRom, characterRom, mirroring);
+    }
+
+    @Override
+    void writeRegister(byte value, int address) {
+        setCharacterBank8k(Byte.toUnsignedInt(value));
+    }
+}
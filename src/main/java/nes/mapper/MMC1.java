@@ -0,0 +1,130 @@
+package nes.mapper;
+
+import common.ByteArrayMemory;
+import nes.ppu.Mirroring;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mapper 1
+ * https://wiki.nesdev.com/w/index.php/MMC1
+ *
+ * Registers are written serially through a 5 bit shift register.
+ * $8000-$9FFF Control  (CPPMM: CHR mode, PRG mode, mirroring)
+ * $A000-$BFFF CHR bank 0
+ * $C000-$DFFF CHR bank 1
+ * $E000-$FFFF PRG bank
+ */
+public class MMC1 extends AbstractMapper {
+
+    private static final int SHIFT_REGISTER_RESET = 0b10000;
+
+    private int shiftRegister;
+    private int control;
+    private int characterBank0;
+    private int characterBank1;
+    private int programBank;
+
+    public MMC1(ByteArrayMemory programRom, ByteArrayMemory characterRom, Mirroring mirroring) {
+        super(programRom, characterRom, mirroring);
+        shiftRegister = SHIFT_REGISTER_RESET;
+        control = 0x0C; // PRG mode 3 on power up
+        updateBanks();
+    }
+
+    @Override
+    void writeRegister(byte value, int address) {
+        if ((value & 0x80) != 0) {
+            shiftRegister = SHIFT_REGISTER_RESET;
+            control |= 0x0C;
+            updateBanks();
+            return;
+        }
+        boolean full = (shiftRegister & 1) != 0;
+        shiftRegister = (shiftRegister >> 1) | ((value & 1) << 4);
+        if (!full) {
+            return;
+        }
+        int data = shiftRegister;
+        shiftRegister = SHIFT_REGISTER_RESET;
+        switch ((address >> 13) & 3) {
+            case 0:
+                control = data;
+                break;
+            case 1:
+                characterBank0 = data;
+                break;
+            case 2:
+                characterBank1 = data;
+                break;
+            case 3:
+                programBank = data & 0x0F;
+                break;
+        }
+        updateBanks();
+    }
+
+    private void updateBanks() {
+        switch (control & 0b11) {
+            case 0:
+                mirroring = Mirroring.SINGLE_SCREEN_LOWER;
+                break;
+            case 1:
+                mirroring = Mirroring.SINGLE_SCREEN_UPPER;
+                break;
+            case 2:
+                mirroring = Mirroring.VERTICAL;
+                break;
+            case 3:
+                mirroring = Mirroring.HORIZONTAL;
+                break;
+        }
+
+        switch ((control >> 2) & 0b11) {
+            case 0:
+            case 1:
+                // switch 32KB at $8000, ignoring low bit of bank number
+                setProgramBank32k(programBank >> 1);
+                break;
+            case 2:
+                // fix first bank at $8000 and switch 16KB bank at $C000
+                setProgramBank16k(0, 0);
+                setProgramBank16k(1, programBank);
+                break;
+            case 3:
+                // fix last bank at $C000 and switch 16KB bank at $8000
+                setProgramBank16k(0, programBank);
+                setProgramBank16k(1, getProgramBankCount16k() - 1);
+                break;
+        }
+
+        if ((control & 0x10) == 0) {
+            // switch 8KB at a time
+            setCharacterBank8k(characterBank0 >> 1);
+        } else {
+            // switch two separate 4KB banks
+            setCharacterBank4k(0, characterBank0);
+            setCharacterBank4k(1, characterBank1);
+        }
+    }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.put((byte)shiftRegister);
+        buffer.put((byte)control);
+        buffer.put((byte)characterBank0);
+        buffer.put((byte)characterBank1);
+        buffer.put((byte)programBank);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        super.load(buffer);
+        shiftRegister = buffer.get();
+        control = buffer.get();
+        characterBank0 = buffer.get();
+        characterBank1 = buffer.get();
+        programBank = buffer.get();
+    }
+}
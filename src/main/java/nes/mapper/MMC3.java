@@ -0,0 +1,179 @@
+package nes.mapper;
+
+import common.ByteArrayMemory;
+import nes.ppu.Mirroring;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Mapper 4
+ * https://wiki.nesdev.com/w/index.php/MMC3
+ *
+ * $8000-$9FFF even: bank select, odd: bank data
+ * $A000-$BFFF even: mirroring, odd: PRG RAM protect (bit 7: enable, bit 6: deny writes)
+ * $C000-$DFFF even: IRQ latch, odd: IRQ reload
+ * $E000-$FFFF even: IRQ disable, odd: IRQ enable
+ */
+public class MMC3 extends AbstractMapper {
+
+    private final int[] bankRegisters = new int[8]; // R0-R7
+    private int bankSelect;
+    private int programRamProtect = 0x80; // enabled and writable on power up, as games expect
+
+    private int irqLatch;
+    private int irqCounter;
+    private boolean irqReload;
+    private boolean irqEnabled;
+    private boolean irqAsserted;
+
+    public MMC3(ByteArrayMemory programRom, ByteArrayMemory characterRom, Mirroring mirroring) {
+        super(programRom, characterRom, mirroring);
+        updateBanks();
+    }
+
+    @Override
+    void writeRegister(byte value, int address) {
+        int data = Byte.toUnsignedInt(value);
+        boolean even = (address & 1) == 0;
+        switch ((address >> 13) & 3) {
+            case 0:
+                if (even) {
+                    bankSelect = data;
+                } else {
+                    bankRegisters[bankSelect & 0b111] = data;
+                }
+                updateBanks();
+                break;
+            case 1:
+                if (even) {
+                    mirroring = (data & 1) == 0 ? Mirroring.VERTICAL : Mirroring.HORIZONTAL;
+                } else {
+                    programRamProtect = data;
+                }
+                break;
+            case 2:
+                if (even) {
+                    irqLatch = data;
+                } else {
+                    irqCounter = 0;
+                    irqReload = true;
+                }
+                break;
+            case 3:
+                if (even) {
+                    irqEnabled = false;
+                    irqAsserted = false;
+                } else {
+                    irqEnabled = true;
+                }
+                break;
+        }
+    }
+
+    private boolean isProgramRamEnabled() {
+        return (programRamProtect & 0x80) != 0;
+    }
+
+    // a disabled PRG RAM reads as 0, open bus is not emulated
+    @Override
+    public byte readProgram(int address) {
+        if (address < PROGRAM_OFFSET && !isProgramRamEnabled()) {
+            return 0;
+        }
+        return super.readProgram(address);
+    }
+
+    @Override
+    public void readProgram(int address, byte[] dest, int length) {
+        if (address < PROGRAM_OFFSET && !isProgramRamEnabled()) {
+            Arrays.fill(dest, 0, length, (byte)0);
+            return;
+        }
+        super.readProgram(address, dest, length);
+    }
+
+    @Override
+    public void writeProgram(byte value, int address) {
+        if (address < PROGRAM_OFFSET && (!isProgramRamEnabled() || (programRamProtect & 0x40) != 0)) {
+            return;
+        }
+        super.writeProgram(value, address);
+    }
+
+    private void updateBanks() {
+        int secondLast = getProgramBankCount8k() - 2;
+        if ((bankSelect & 0x40) == 0) {
+            setProgramBank8k(0, bankRegisters[6]);
+            setProgramBank8k(2, secondLast);
+        } else {
+            setProgramBank8k(0, secondLast);
+            setProgramBank8k(2, bankRegisters[6]);
+        }
+        setProgramBank8k(1, bankRegisters[7]);
+        setProgramBank8k(3, getProgramBankCount8k() - 1);
+
+        // two 2KB banks and four 1KB banks, swapped when A12 is inverted
+        int twoKiloBytes = (bankSelect & 0x80) == 0 ? 0 : 4;
+        int oneKiloBytes = 4 - twoKiloBytes;
+        setCharacterBank1k(twoKiloBytes, bankRegisters[0] & 0xFE);
+        setCharacterBank1k(twoKiloBytes + 1, bankRegisters[0] | 1);
+        setCharacterBank1k(twoKiloBytes + 2, bankRegisters[1] & 0xFE);
+        setCharacterBank1k(twoKiloBytes + 3, bankRegisters[1] | 1);
+        for (int i = 0; i < 4; i++) {
+            setCharacterBank1k(oneKiloBytes + i, bankRegisters[2 + i]);
+        }
+    }
+
+    @Override
+    public void clockScanline() {
+        if (irqCounter == 0 || irqReload) {
+            irqCounter = irqLatch;
+            irqReload = false;
+        } else {
+            irqCounter--;
+        }
+        if (irqCounter == 0 && irqEnabled) {
+            irqAsserted = true;
+        }
+    }
+
+    @Override
+    public boolean isIrqAsserted() {
+        return irqAsserted;
+    }
+
+    @Override
+    public boolean isIrqEnabled() {
+        return irqEnabled;
+    }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        super.save(buffer);
+        for (int bank : bankRegisters) {
+            buffer.put((byte)bank);
+        }
+        buffer.put((byte)bankSelect);
+        buffer.put((byte)programRamProtect);
+        buffer.put((byte)irqLatch);
+        buffer.put((byte)irqCounter);
+        buffer.put((byte)((irqReload ? 1 : 0) | (irqEnabled ? 2 : 0) | (irqAsserted ? 4 : 0)));
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        super.load(buffer);
+        for (int i = 0; i < bankRegisters.length; i++) {
+            bankRegisters[i] = Byte.toUnsignedInt(buffer.get());
+        }
+        bankSelect = Byte.toUnsignedInt(buffer.get());
+        programRamProtect = Byte.toUnsignedInt(buffer.get());
+        irqLatch = Byte.toUnsignedInt(buffer.get());
+        irqCounter = Byte.toUnsignedInt(buffer.get());
+        int flags = buffer.get();
+        irqReload = (flags & 1) != 0;
+        irqEnabled = (flags & 2) != 0;
+        irqAsserted = (flags & 4) != 0;
+    }
+}
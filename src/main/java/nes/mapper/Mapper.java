@@ -0,0 +1,81 @@
+package nes.mapper;
+
+import common.StateSerializable;
+import nes.ppu.Mirroring;
+
+/**
+ * Cartridge hardware seen from both buses.
+ * https://wiki.nesdev.com/w/index.php/Mapper
+ *
+ * CPU: $4020-$FFFF (PRG RAM at $6000-$7FFF, PRG ROM and mapper registers at $8000-$FFFF)
+ * PPU: $0000-$1FFF (pattern tables in CHR ROM/RAM) and the nametable mirroring
+ *
+ * Its save state holds the bank registers, PRG RAM and CHR RAM, but not the ROMs.
+ */
+public interface Mapper extends StateSerializable {
+
+    byte readProgram(int address);
+
+    void writeProgram(byte value, int address);
+
+    /**
+     * Read length bytes from the address at once, for DMA.
+     *
+     * @param address start of a page of PRG RAM or PRG ROM, the bytes do not cross a bank
+     */
+    default void readProgram(int address, byte[] dest, int length) {
+        for (int i = 0; i < length; i++) {
+            dest[i] = readProgram(address + i);
+        }
+    }
+
+    /**
+     * @param address $0000-$1FFF
+     */
+    byte readCharacter(int address);
+
+    /**
+     * @param address $0000-$1FFF
+     */
+    void writeCharacter(byte value, int address);
+
+    Mirroring getMirroring();
+
+    /**
+     * @param address $8000-$FFFF
+     * @return offset in PRG ROM currently mapped at the address
+     */
+    int getProgramRomOffset(int address);
+
+    int getProgramRomSize();
+
+    /**
+     * @param address $0000-$1FFF
+     * @return offset in CHR ROM/RAM currently mapped at the address
+     */
+    int getCharacterOffset(int address);
+
+    int getCharacterSize();
+
+    /**
+     * @return true if the pattern tables are CHR RAM, which is saved with the state
+     */
+    boolean hasCharacterRam();
+
+    /**
+     * Called by the PPU once per rendered scanline (MMC3 IRQ counter).
+     */
+    default void clockScanline() {
+    }
+
+    default boolean isIrqAsserted() {
+        return false;
+    }
+
+    /**
+     * @return true if clockScanline may assert the IRQ, so the scanlines have to be run on time
+     */
+    default boolean isIrqEnabled() {
+        return false;
+    }
+}
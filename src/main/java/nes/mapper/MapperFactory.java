@@ -0,0 +1,26 @@
+package nes.mapper;
+
+import lombok.extern.slf4j.Slf4j;
+import nes.NesData;
+
+@Slf4j
+public class MapperFactory {
+
+    public static Mapper create(NesData nesData) {
+        log.info("Mapper = {}", nesData.mapperNumber);
+        switch (nesData.mapperNumber) {
+            case 0:
+                return new NROM(nesData.programRom, nesData.characterRom, nesData.mirroring);
+            case 1:
+                return new MMC1(nesData.programRom, nesData.characterRom, nesData.mirroring);
+            case 2:
+                return new UxROM(nesData.programRom, nesData.characterRom, nesData.mirroring);
+            case 3:
+                return new CNROM(nesData.programRom, nesData.characterRom, nesData.mirroring);
+            case 4:
+                return new MMC3(nesData.programRom, nesData.characterRom, nesData.mirroring);
+            default:
+                throw new IllegalArgumentException(String.format("unsupported mapper %d", nesData.mapperNumber));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package nes.mapper;
+
+import common.ByteArrayMemory;
+import nes.ppu.Mirroring;
+
+/**
+ * Mapper 0
+ * https://wiki.nesdev.com/w/index.php/NROM
+ */
+public class NROM extends AbstractMapper {
+
+    public NROM(ByteArrayMemory programRom, ByteArrayMemory characterRom, Mirroring mirroring) {
+        super(programRom, characterRom, mirroring);
+    }
+
+    @Override
+    void writeRegister(byte value, int address) {
+        throw new IllegalArgumentException("not writable memory");
+    }
+}
@@ -0,0 +1,23 @@
+package nes.mapper;
+
+import common.ByteArrayMemory;
+import nes.ppu.Mirroring;
+
+/**
+ * Mapper 2
+ * https://wiki.nesdev.com/w/index.php/UxROM
+ *
+ * $8000-$BFFF: switchable 16KB bank
+ * $C000-$FFFF: fixed to the last bank
+ */
+public class UxROM extends AbstractMapper {
+
+    public UxROM(ByteArrayMemory programRom, ByteArrayMemory characterRom, Mirroring mirroring) {
+        super(programRom, characterRom, mirroring);
+    }
+
+    @Override
+    void writeRegister(byte value, int address) {
+        setProgramBank16k(0, Byte.toUnsignedInt(value));
+    }
+}
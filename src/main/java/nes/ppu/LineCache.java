@@ -0,0 +1,111 @@
+package nes.ppu;
+
+import java.util.Arrays;
+
+import static nes.screen.MainScreen.HEIGHT;
+import static nes.screen.MainScreen.WIDTH;
+
+/**
+ * Keys of the scanlines in the framebuffer, so that a line is drawn again only when something it is drawn from has changed.
+ *
+ * The key of a line holds the scroll, PPUCTRL, PPUMASK, mirroring and CHR banks it was drawn with,
+ * and the versions of OAM, palette RAM, CHR RAM and the nametable rows it read.
+ * Versions only count writes which change a value, as most games copy the same OAM by DMA every frame.
+ */
+class LineCache {
+    private static final int ROWS = 30;
+    private static final int CHARACTER_BANKS = 8;
+    private static final int KEY_SIZE = 8 + CHARACTER_BANKS;
+
+    private final PPU ppu;
+
+    private final int[] rowVersions = new int[2 * ROWS]; // physical nametable, tile row
+    private int characterVersion;
+
+    private final int[] key = new int[KEY_SIZE];
+    private final int[] keys = new int[HEIGHT * KEY_SIZE];
+    private final boolean[] valid = new boolean[HEIGHT];
+    private final boolean[] sprite0Hits = new boolean[HEIGHT];
+
+    LineCache(PPU ppu) {
+        this.ppu = ppu;
+    }
+
+    /**
+     * @param offset 0-$7FF in the nametable memory
+     */
+    void nametableWritten(int offset) {
+        int nametable = offset >> 10;
+        int position = offset & 0x3FF;
+        if (position < 0x3C0) {
+            rowVersions[nametable * ROWS + position / 32]++;
+        } else {
+            // an attribute byte colors 4 tile rows
+            int row = (position - 0x3C0) / 8 * 4;
+            for (int i = row; i < Math.min(row + 4, ROWS); i++) {
+                rowVersions[nametable * ROWS + i]++;
+            }
+        }
+    }
+
+    void characterWritten() {
+        characterVersion++;
+    }
+
+    void invalidateAll() {
+        Arrays.fill(valid, false);
+    }
+
+    /**
+     * @param y 0-239
+     * @return true if line y is drawn from the same inputs as in the last frame.
+     * Otherwise the new key is remembered, and the line has to be drawn.
+     */
+    boolean reuse(int y, int scrollX, int scrollY) {
+        key[0] = scrollX | scrollY << 8 | Byte.toUnsignedInt(ppu.regPPUCTRL.get()) << 16;
+        key[1] = Byte.toUnsignedInt(ppu.regPPUMASK.get()) | ppu.getMirroring().ordinal() << 8;
+        key[2] = ppu.oam.getVersion();
+        key[3] = ppu.paletteRam.getVersion();
+        key[4] = characterVersion;
+        if (ppu.regPPUMASK.enableBackground()) {
+            // the line may span two nametables horizontally
+            int yy = y + scrollY;
+            int row = (yy % HEIGHT) / 8;
+            int left = ppu.getScreen(scrollX, yy);
+            int right = ppu.getScreen(scrollX + WIDTH - 1, yy);
+            key[5] = left | right << 1 | row << 2;
+            key[6] = rowVersions[left * ROWS + row];
+            key[7] = rowVersions[right * ROWS + row];
+        } else {
+            key[5] = key[6] = key[7] = 0;
+        }
+        for (int i = 0; i < CHARACTER_BANKS; i++) {
+            key[8 + i] = ppu.mapper.getCharacterOffset(i * 0x400);
+        }
+
+        int from = y * KEY_SIZE;
+        if (valid[y] && sameKey(from)) {
+            return true;
+        }
+        System.arraycopy(key, 0, keys, from, KEY_SIZE);
+        valid[y] = true;
+        return false;
+    }
+
+    private boolean sameKey(int from) {
+        for (int i = 0; i < KEY_SIZE; i++) {
+            if (keys[from + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void setSprite0Hit(int y, boolean hit) {
+        sprite0Hits[y] = hit;
+    }
+
+    boolean hasSprite0Hit(int y) {
+        return sprite0Hits[y];
+    }
+}
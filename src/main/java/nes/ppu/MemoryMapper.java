@@ -1,12 +1,7 @@
 package nes.ppu;
 
 import common.BinaryUtil;
-import common.ByteArrayMemory;
 import lombok.extern.slf4j.Slf4j;
-import org.eclipse.collections.api.tuple.Pair;
-import org.eclipse.collections.impl.tuple.Tuples;
-
-import static nes.ppu.PPU.NAMETABLE_MEMORY_SIZE;
 
 @Slf4j
 public class MemoryMapper {
@@ -15,6 +10,7 @@ public class MemoryMapper {
     public static final int PALETTE_RAM_OFFSET = 0x3F00;
 
     private static final int NAMETABLE_OFFSET = 0x2000;
+    private static final int NAMETABLE_SIZE = 0x400;
     private static final int SIZE = 0x4000;
 
     /**
@@ -24,8 +20,9 @@ public class MemoryMapper {
      *   $2000-$23BF Nametable
      *   $23C0-$23FF Attribute table (coloring)
      * $2400-$27FF Nametable 1
-     * $2800-$2BFF Nametable 2 (mirror of Nametable 0)
-     * $2C00-$2FFF Nametable 3 (mirror of Nametable 1)
+     * $2800-$2BFF Nametable 2
+     * $2C00-$2FFF Nametable 3
+     *   (only 2KB of VRAM, mapped to the 4 nametables by the cartridge's Mirroring)
      * $3000-$3EFF Mirrors of $2000-$2EFF
      * $3F00-$3F1F Palette RAM indices
      * $3F20-$3FFF Mirrors of $3F00-$3F1F
@@ -59,37 +56,46 @@ public class MemoryMapper {
         if (log.isDebugEnabled()) {
             log.debug("Get: PPU {} (type={})", BinaryUtil.toHexString(address), getType(address));
         }
-        Pair<ByteArrayMemory, Integer> memoryOffsetPair = getMemory(address);
-        ByteArrayMemory memory = memoryOffsetPair.getOne();
-        int offset = memoryOffsetPair.getTwo();
-        return memory.get(offset);
+        if (address < NAMETABLE_OFFSET) {
+            return ppu.mapper.readCharacter(address);
+        } else if (address < PALETTE_RAM_OFFSET) {
+            return ppu.nametables.get(getNametableOffset(address));
+        } else if (address < SIZE) {
+            return ppu.paletteRam.get((address - PALETTE_RAM_OFFSET) % PaletteRam.SIZE);
+        }
+        throw new IllegalArgumentException();
     }
 
     public void set(byte value, int address) {
         if (log.isDebugEnabled()) {
             log.debug("Set PPU {}={} (type={})", BinaryUtil.toHexString(address), BinaryUtil.toHexString(value), getType(address));
         }
-        Pair<ByteArrayMemory, Integer> memoryOffsetPair = getMemory(address);
-        ByteArrayMemory memory = memoryOffsetPair.getOne();
-        int offset = memoryOffsetPair.getTwo();
-        if (memory == ppu.characterRom) {
-          throw new IllegalArgumentException("Cannot write to pattern tables");
+        if (address < NAMETABLE_OFFSET) {
+            boolean changed = ppu.mapper.readCharacter(address) != value;
+            ppu.mapper.writeCharacter(value, address);
+            if (changed) {
+                ppu.tileCache.invalidate(address);
+                ppu.lineCache.characterWritten();
+            }
+        } else if (address < PALETTE_RAM_OFFSET) {
+            int offset = getNametableOffset(address);
+            if (ppu.nametables.get(offset) != value) {
+                ppu.nametables.set(value, offset);
+                ppu.lineCache.nametableWritten(offset);
+            }
+        } else if (address < SIZE) {
+            ppu.paletteRam.set(value, (address - PALETTE_RAM_OFFSET) % PaletteRam.SIZE);
+        } else {
+            throw new IllegalArgumentException();
         }
-        memory.set(value, offset);
     }
 
     /**
-     * @param address
-     * @return (memory, offset)
+     * @param address $2000-$3EFF
+     * @return offset in the 2KB VRAM, after mirroring
      */
-    private Pair<ByteArrayMemory, Integer> getMemory(int address) {
-        if (address < NAMETABLE_OFFSET) {
-            return Tuples.pair(ppu.characterRom, address);
-        } else if (address < PALETTE_RAM_OFFSET) {
-            return Tuples.pair(ppu.nametables, (address - NAMETABLE_OFFSET) % NAMETABLE_MEMORY_SIZE);
-        } else if (address < SIZE) {
-            return Tuples.pair(ppu.paletteRam, (address - PALETTE_RAM_OFFSET) % PaletteRam.SIZE);
-        }
-        throw new IllegalArgumentException();
+    private int getNametableOffset(int address) {
+        int nametable = ((address - NAMETABLE_OFFSET) >> 10) & 3;
+        return ppu.getMirroring().getPhysicalNametable(nametable) * NAMETABLE_SIZE + (address & (NAMETABLE_SIZE - 1));
     }
 }
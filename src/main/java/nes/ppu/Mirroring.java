@@ -1,5 +1,34 @@
 package nes.ppu;
 
+/**
+ * Nametable arrangement, decided by the cartridge.
+ *
+ * Vertical  Horizontal  Single screen
+ *  +-+-+      +-+-+       +-+-+
+ *  |0|1|      |0|0|       |n|n|
+ *  +-+-+      +-+-+       +-+-+
+ *  |0|1|      |1|1|       |n|n|
+ *  +-+-+      +-+-+       +-+-+
+ */
 public enum Mirroring {
-    HORIZONTAL, VERTICAL
+    HORIZONTAL, VERTICAL, SINGLE_SCREEN_LOWER, SINGLE_SCREEN_UPPER;
+
+    /**
+     * @param nametable logical nametable 0-3 ($2000, $2400, $2800, $2C00)
+     * @return physical nametable 0-1 in the 2KB VRAM
+     */
+    public int getPhysicalNametable(int nametable) {
+        switch (this) {
+            case HORIZONTAL:
+                return nametable >> 1;
+            case VERTICAL:
+                return nametable & 1;
+            case SINGLE_SCREEN_LOWER:
+                return 0;
+            case SINGLE_SCREEN_UPPER:
+                return 1;
+            default:
+                throw new IllegalStateException();
+        }
+    }
 }
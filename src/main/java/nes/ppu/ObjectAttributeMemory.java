@@ -2,15 +2,47 @@ package nes.ppu;
 
 import common.BinaryUtil;
 import common.ByteArrayMemory;
+import lombok.Getter;
 
 import static nes.ppu.PPU.OAM_SIZE;
 
 public class ObjectAttributeMemory extends ByteArrayMemory {
 
+    /**
+     * Count of writes which changed a sprite
+     */
+    @Getter
+    private int version;
+
     public ObjectAttributeMemory() {
         super(new byte[OAM_SIZE]);
     }
 
+    @Override
+    public void set(byte value, int offset) {
+        if (get(offset) != value) {
+            super.set(value, offset);
+            version++;
+        }
+    }
+
+    /**
+     * Write 256 bytes from the offset on, wrapping around, as OAM DMA does through $2004.
+     */
+    public void copy(byte[] values, int offset) {
+        boolean changed = false;
+        for (int i = 0; i < OAM_SIZE; i++) {
+            int address = (offset + i) & (OAM_SIZE - 1);
+            if (get(address) != values[i]) {
+                super.set(values[i], address);
+                changed = true;
+            }
+        }
+        if (changed) {
+            version++;
+        }
+    }
+
 //    public Sprite getSprite(int n) {
 //        checkArgument(n >= 0 && n < 64);
 //        return new Sprite(getY(n), getTileIndex(n), getAttributes(n), getX(n));
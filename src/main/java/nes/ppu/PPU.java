@@ -1,26 +1,22 @@
 package nes.ppu;
 
-import common.BinaryUtil;
 import common.ByteArrayMemory;
 import common.ByteRegister;
 import common.ByteRegisterImpl;
+import common.StateSerializable;
 import lombok.Getter;
 import lombok.Setter;
 import nes.cpu.CPU;
+import nes.mapper.Mapper;
 import nes.ppu.register.*;
 import nes.screen.InfoScreen;
 import nes.screen.MainScreen;
 import nes.screen.MainScreenData;
 import nes.screen.ScreenData;
-import org.eclipse.collections.api.tuple.Pair;
-import org.eclipse.collections.impl.tuple.Tuples;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
-import java.util.stream.IntStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -37,9 +33,10 @@ import static nes.screen.MainScreen.WIDTH;
  *
  * パターンテーブル：キャラクタパターンを保存
  */
-public class PPU implements Runnable {
+public class PPU implements Runnable, StateSerializable {
 
     private long cycles;
+    @Getter
     private long frames;
 
     private int scanX;
@@ -48,7 +45,7 @@ public class PPU implements Runnable {
     @Setter
     private CPU cpu;
 
-    private MainScreen mainScreen;
+    private MainScreen mainScreen; // null when running headless
     private InfoScreen infoScreen;
 
     public static final int OAM_SIZE = 0x100;
@@ -56,29 +53,42 @@ public class PPU implements Runnable {
 
     private final MemoryMapper memoryMapper;
 
-    final ByteArrayMemory characterRom;
+    final Mapper mapper; // pattern tables and mirroring live on the cartridge
+    final TileCache tileCache;
+    final LineCache lineCache;
+    final SpriteIndex spriteIndex;
     final ByteArrayMemory nametables;
-    final ByteArrayMemory paletteRam;
+    final PaletteRam paletteRam;
     public final ObjectAttributeMemory oam = new ObjectAttributeMemory();
 
     // https://wiki.nesdev.com/w/index.php/PPU_registers
     public final ControlRegister regPPUCTRL; // $2000
     public final MaskRegister regPPUMASK = new MaskRegister((byte)0);
     public final StatusRegister regPPUSTATUS; // $2002
-    public final ByteRegister regOAMADDR = new ByteRegisterImpl((byte)0);
+    public final ByteRegisterImpl regOAMADDR = new ByteRegisterImpl((byte)0);
     public final ByteRegister regOAMDATA; // $2004
     public final ScrollRegister regPPUSCROLL; // $2005
     public final AddressRegister regPPUADDR; // $2006
-    public final ByteRegister regPPUDATA; // $2007
-
-    @Getter
-    private final Mirroring mirroring;
+    public final DataRegister regPPUDATA; // $2007
 
     public boolean addressLatch;
 
-    public PPU(ByteArrayMemory characterRom, Mirroring mirroring, MainScreen mainScreen, InfoScreen infoScreen) {
+    // metrics
+    @Getter
+    private long renderedLines;
+    @Getter
+    private long reusedLines;
+    @Getter
+    private long presentedFrames;
+    @Getter
+    private long presentNanos;
+
+    public PPU(Mapper mapper, MainScreen mainScreen, InfoScreen infoScreen) {
         memoryMapper = new MemoryMapper(this);
-        this.characterRom = characterRom;
+        this.mapper = mapper;
+        tileCache = new TileCache(mapper);
+        lineCache = new LineCache(this);
+        spriteIndex = new SpriteIndex(oam);
         nametables = new ByteArrayMemory(new byte[NAMETABLE_MEMORY_SIZE]);
         paletteRam = new PaletteRam();
         regPPUCTRL = new ControlRegister();
@@ -88,16 +98,15 @@ public class PPU implements Runnable {
         regPPUADDR = new AddressRegister(this);
         regPPUDATA = new DataRegister(this);
 
-        this.mirroring = mirroring;
-
         this.mainScreen = mainScreen;
         this.infoScreen = infoScreen;
     }
 
     public void reset() {
-        checkNotNull(mainScreen);
-        mainScreen.init();
-        infoScreen.init(mainScreen);
+        if (mainScreen != null) {
+            mainScreen.init();
+            infoScreen.init(mainScreen);
+        }
 
         checkNotNull(cpu);
 
@@ -116,24 +125,42 @@ public class PPU implements Runnable {
             // Scanline 0-239
             if (scanY == 0 && scanX == 0) {
 //                drawInfoScreen();
-
-                mainScreenData.clear();
             }
 
             if (scanX == 0) {
-                // draw line by line
+                // draw line by line, keeping the lines drawn from the same inputs as in the last frame
                 scrollX = regPPUSCROLL.getX();
                 scrollY = regPPUSCROLL.getY();
 
-                if (isCharacterRomAvailable()) {
+                if ((regPPUMASK.enableBackground() || regPPUMASK.enableSprites()) && hasSpriteOverflow(scanY)) {
+                    regPPUSTATUS.setSpriteOverflow(true);
+                }
+                if (lineCache.reuse(scanY, scrollX, scrollY)) {
+                    reusedLines++;
+                    if (lineCache.hasSprite0Hit(scanY)) {
+                        regPPUSTATUS.setSprite0Hit(true);
+                    }
+                } else {
+                    renderedLines++;
                     setLineData(scanY);
                 }
 
-                if (scanY == 239) {
-                    mainScreen.refresh(mainScreenData);
+                if (scanY == 239 && frameChanged) {
+                    // a frame identical to the last one is not presented again
+                    if (mainScreen != null) {
+                        long start = System.nanoTime();
+                        mainScreen.refresh(mainScreenData);
+                        presentNanos += System.nanoTime() - start;
+                    }
+                    presentedFrames++;
+                    frameChanged = false;
                 }
             }
 
+            if (scanX == 260) {
+                clockMapperScanline();
+            }
+
         } else {
             // Scanline 240-261
             if (scanX == 1 && scanY == 241) {
@@ -145,6 +172,8 @@ public class PPU implements Runnable {
                 regPPUSTATUS.setVBlank(false);
                 regPPUSTATUS.setSprite0Hit(false);
                 regPPUSTATUS.setSpriteOverflow(false);
+            } else if (scanX == 260 && scanY == 261) {
+                clockMapperScanline();
             }
         }
         cycles++;
@@ -164,6 +193,164 @@ public class PPU implements Runnable {
         }
     }
 
+    private static final int DOTS_PER_LINE = 341;
+    private static final int VBLANK_POSITION = 241 * DOTS_PER_LINE + 1;
+    private static final int PRE_RENDER_POSITION = 261 * DOTS_PER_LINE + 1;
+    private static final int FRAME_END_POSITION = 261 * DOTS_PER_LINE + 340;
+    private static final int MAPPER_CLOCK_DOT = 260;
+
+    /**
+     * Events are the steps where the PPU may interrupt the CPU (VBlank NMI, mapper IRQ), the end of the frame,
+     * and the steps which change a bit of PPUSTATUS: VBlank set and cleared, and sprite 0 hit and sprite overflow
+     * as predicted for the lines drawn with the current registers. Between events PPUSTATUS stays as it is.
+     *
+     * @return number of steps to run until the next event step has been run
+     */
+    public int getDotsToNextEvent() {
+        int position = scanY * DOTS_PER_LINE + scanX;
+        // the last dot is skipped on odd frames
+        int next = frames % 2 == 1 ? FRAME_END_POSITION - 1 : FRAME_END_POSITION;
+        if (position <= VBLANK_POSITION) {
+            next = VBLANK_POSITION;
+        } else if (position <= PRE_RENDER_POSITION) {
+            next = PRE_RENDER_POSITION;
+        }
+        int statusLine = predictStatusLine(scanX == 0 ? scanY : scanY + 1);
+        if (statusLine >= 0) {
+            next = Math.min(next, statusLine * DOTS_PER_LINE);
+        }
+        if (mapper.isIrqEnabled()) {
+            int line = scanX <= MAPPER_CLOCK_DOT ? scanY : scanY + 1;
+            if (line >= HEIGHT && line < 261) {
+                line = 261;
+            }
+            if (line <= 261) {
+                next = Math.min(next, line * DOTS_PER_LINE + MAPPER_CLOCK_DOT);
+            }
+        }
+        return next - position + 1;
+    }
+
+    /**
+     * Sprite 0 hit and sprite overflow are set at the start of a line, see runStep.
+     * Drawing the lines from the given one with the current registers, OAM and pattern tables,
+     * find the first one which sets a flag that is not set yet: for sprite 0 hit,
+     * the lines of sprite 0 are checked for an opaque dot over an opaque background dot.
+     *
+     * @param from 0-261
+     * @return 0-239, or -1 if no flag is set before VBlank
+     */
+    int predictStatusLine(int from) {
+        if (!regPPUMASK.enableBackground() && !regPPUMASK.enableSprites()) {
+            return -1;
+        }
+        int end = HEIGHT;
+        if (!regPPUSTATUS.isSpriteOverflow()) {
+            for (int y = from; y < end; y++) {
+                if (hasSpriteOverflow(y)) {
+                    end = y;
+                    break;
+                }
+            }
+        }
+        if (!regPPUSTATUS.isSprite0Hit() && regPPUMASK.enableBackground() && regPPUMASK.enableSprites()) {
+            int top = oam.getY(0);
+            for (int y = Math.max(from, top); y < Math.min(top + getSpriteHeight(), end); y++) {
+                if (hasSprite0Hit(y)) {
+                    return y;
+                }
+            }
+        }
+        return end < HEIGHT ? end : -1;
+    }
+
+    /**
+     * The check of setLineData for one line of sprite 0, without drawing the line.
+     */
+    private boolean hasSprite0Hit(int y) {
+        int patternY = y - oam.getY(0);
+        if (oam.isFlippedVertically(0)) {
+            patternY = getSpriteHeight() - 1 - patternY;
+        }
+        int address = getSpritePatternAddress(0, patternY);
+        int opaque = Byte.toUnsignedInt(mapper.readCharacter(address)) | Byte.toUnsignedInt(mapper.readCharacter(address + 8));
+        if (!oam.isFlippedHorizontally(0)) {
+            opaque = Byte.toUnsignedInt(REVERSED_BITS[opaque]);
+        }
+        int spriteX = oam.getX(0);
+        int yy = y + regPPUSCROLL.getY();
+        for (int x = spriteX; x < Math.min(spriteX + SPRITE_WIDTH, WIDTH - 1) && opaque != 0; x++) {
+            if ((opaque & 1) != 0 && getBackgroundColor(x + regPPUSCROLL.getX(), yy) != 0) {
+                return true;
+            }
+            opaque >>= 1;
+        }
+        return false;
+    }
+
+    /**
+     * MMC3 counts scanlines by A12 rising edges, which happen once per line around dot 260 while rendering.
+     */
+    private void clockMapperScanline() {
+        if (regPPUMASK.enableBackground() || regPPUMASK.enableSprites()) {
+            mapper.clockScanline();
+        }
+    }
+
+    /**
+     * Pattern tables are saved with the mapper.
+     */
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.putLong(cycles);
+        buffer.putLong(frames);
+        buffer.putShort((short)scanX);
+        buffer.putShort((short)scanY);
+        buffer.put((byte)scrollX);
+        buffer.put((byte)scrollY);
+        buffer.put((byte)(addressLatch ? 1 : 0));
+        nametables.save(buffer);
+        paletteRam.save(buffer);
+        oam.save(buffer);
+        regPPUCTRL.save(buffer);
+        regPPUMASK.save(buffer);
+        regPPUSTATUS.save(buffer);
+        regOAMADDR.save(buffer);
+        regPPUSCROLL.save(buffer);
+        regPPUADDR.save(buffer);
+        regPPUDATA.save(buffer);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        cycles = buffer.getLong();
+        frames = buffer.getLong();
+        scanX = buffer.getShort();
+        scanY = buffer.getShort();
+        scrollX = Byte.toUnsignedInt(buffer.get());
+        scrollY = Byte.toUnsignedInt(buffer.get());
+        addressLatch = buffer.get() != 0;
+        nametables.load(buffer);
+        paletteRam.load(buffer);
+        oam.load(buffer);
+        regPPUCTRL.load(buffer);
+        regPPUMASK.load(buffer);
+        regPPUSTATUS.load(buffer);
+        regOAMADDR.load(buffer);
+        regPPUSCROLL.load(buffer);
+        regPPUADDR.load(buffer);
+        regPPUDATA.load(buffer);
+        // CHR RAM may have been loaded under it
+        tileCache.invalidateAll();
+        lineCache.invalidateAll();
+        spriteIndex.invalidate();
+        frameChanged = true;
+    }
+
+    public Mirroring getMirroring() {
+        return mapper.getMirroring();
+    }
+
     public byte read(int address) {
         return memoryMapper.get(address);
     }
@@ -176,24 +363,35 @@ public class PPU implements Runnable {
     public void run() {
         reset();
         while (true) {
-//            if (shouldWaitCpu()) {
-//                return;
-//            }
             runStep();
         }
     }
 
+    @Getter
     MainScreenData mainScreenData = new MainScreenData();
 
-    private void drawFrame() {
-        if (isCharacterRomAvailable()) {
-            final int scrollX = regPPUSCROLL.getX();
-            final int scrollY = regPPUSCROLL.getY();
-            IntStream.range(0, HEIGHT).forEach(y -> {
-                setLineData(y);
-            });
+    private static final int BLACK = Color.BLACK.getRGB();
+    private final int[] line = new int[WIDTH];
+    // a line is composed of palette RAM offsets first, then turned to ARGB in one pass
+    private static final int NO_BACKGROUND = PaletteRam.SIZE; // background off: black, transparent
+    private static final int TRANSPARENT_MASK = 3; // color 0 of a background palette lets sprites behind it show
+    private final byte[] backgroundLine = new byte[WIDTH];
+    // sprite line entries: palette RAM offset of the top opaque sprite dot (0 for none), behind and sprite 0 bits
+    private static final int SPRITE_COLOR = 0x1F;
+    private static final int SPRITE_BEHIND = 0x20;
+    private static final int SPRITE_0 = 0x40;
+    private final byte[] spriteLine = new byte[WIDTH];
+    private static final byte[] REVERSED_BITS = new byte[256];
+    private final int[] colors = new int[PaletteRam.SIZE + 1];
+    private int colorsVersion = -1;
+    private boolean sprite0HitOnLine;
+    private int sprite0X = -1; // on the line being drawn, -1 if it is not
+    private boolean frameChanged = true; // since the last presented frame
+
+    static {
+        for (int i = 0; i < REVERSED_BITS.length; i++) {
+            REVERSED_BITS[i] = (byte)(Integer.reverse(i) >>> 24);
         }
-//        mainScreen.refresh(mainScreenData);
     }
 
     ScreenData infoScreenData = new ScreenData(InfoScreen.WIDTH, InfoScreen.HEIGHT);
@@ -201,17 +399,15 @@ public class PPU implements Runnable {
     private void drawInfoScreen() {
         infoScreenData.clear();
         // nametables
-        if (isCharacterRomAvailable()) {
-            for (int nametable = 0; nametable < 2; nametable++) {
-                for (int tile = 0; tile < 256; tile++) {
-                    final int x0 = 8 * (nametable * 16 + (tile % 16));
-                    final int y0 = 8 * (tile / 16);
-                    byte[] characterPattern = getCharacterPattern(nametable, tile);
-                    for (int x = 0; x < 8; x++) {
-                        for (int y = 0; y < 8; y++) {
-                            int color = getColorInPattern(x, y, characterPattern);
-                            infoScreenData.set(Palette.get(color), x0 + x, y0 + y);
-                        }
+        for (int nametable = 0; nametable < 2; nametable++) {
+            for (int tile = 0; tile < 256; tile++) {
+                final int x0 = 8 * (nametable * 16 + (tile % 16));
+                final int y0 = 8 * (tile / 16);
+                int characterTile = tileCache.getTile(nametable, tile);
+                for (int x = 0; x < 8; x++) {
+                    for (int y = 0; y < 8; y++) {
+                        int color = getColorInTile(x, y, characterTile);
+                        infoScreenData.set(Palette.get(color), x0 + x, y0 + y);
                     }
                 }
             }
@@ -234,10 +430,10 @@ public class PPU implements Runnable {
         for (int sprite = 0; sprite < 64; sprite++) {
             final int x0 = 8 * (sprite % 32);
             final int y0 = 8 * (16 + 2 + (sprite / 32));
-            byte[] pattern = getCharacterPattern(spritePatternTable, oam.getTileIndex(sprite));
+            int tile = tileCache.getTile(spritePatternTable, oam.getTileIndex(sprite));
             for (int x = 0; x < 8; x++) {
                 for (int y = 0; y < 8; y++) {
-                    int color = getColorInPattern(x, y, pattern);
+                    int color = getColorInTile(x, y, tile);
                     int colorIndex = getColorIndex(oam.getPalette(sprite), color);
                     infoScreenData.set(Palette.get(colorIndex), x0 + x, y0 + y);
                 }
@@ -248,29 +444,17 @@ public class PPU implements Runnable {
 
     }
 
-//    private void setLineData(int y) {
-//        IntStream.range(0, WIDTH).forEach(x -> {
-//            getColorAt(x, y).ifPresent(c -> {
-//                mainScreenData.set(c, x, y);
-//            });
-//        });
-//    }
-
-    private void setLineData(int y) {
+    void setLineData(int y) {
         int character;
         int palette = 0;
         int bgPatternTable;
-        byte[] pattern = new byte[0];
+        int tile = 0;
 
-        List<Integer> sprites = getSpritesToBeRendered(y);
-
-        for (int x = 0; x < WIDTH; x++) {
-            // get sprite color
-            Pair<Color, Boolean> spriteColorAndIsFront = getSpriteColorAndIsFront(x, y, sprites);
+        sprite0HitOnLine = false;
+        setSpriteLine(y);
 
-            // get background color
-            Color backgroundColor = null;
-            if (regPPUMASK.enableBackground()) {
+        if (regPPUMASK.enableBackground()) {
+            for (int x = 0; x < WIDTH; x++) {
                 // update background character & palette if necessary
                 int xx = x + scrollX;
                 int yy = y + scrollY;
@@ -280,232 +464,163 @@ public class PPU implements Runnable {
                     character = getCharacter(screen, cell);
                     palette = getPalette(screen, cell);
                     bgPatternTable = getBackgroundPatternTable();
-                    pattern = getCharacterPattern(bgPatternTable, character);
+                    tile = tileCache.getTile(bgPatternTable, character);
                 }
-                int color = getColorInPattern(xx % 8, yy % 8, pattern);
-                int colorIndex = getColorIndex(palette, color);
-                backgroundColor = Palette.get(colorIndex);
-            }
-
-            if (spriteColorAndIsFront != null && spriteColorAndIsFront.getTwo()) {
-                mainScreenData.set(spriteColorAndIsFront.getOne(), x, y);
-            } else if (backgroundColor != null) {
-                mainScreenData.set(backgroundColor, x, y);
-            } else if (spriteColorAndIsFront != null && !spriteColorAndIsFront.getTwo()) {
-                mainScreenData.set(spriteColorAndIsFront.getOne(), x, y);
+                int color = getColorInTile(xx % 8, yy % 8, tile);
+                backgroundLine[x] = (byte)(color != 0 ? palette * 4 + color : 0);
             }
+        } else {
+            Arrays.fill(backgroundLine, (byte)NO_BACKGROUND);
         }
-    }
 
-    private Optional<Color> getColorAt(int x, int y) {
-        Integer sprite = findTopSpriteNumber(x, y);
-        Color c = null;
-        if (sprite != null) {
-            c = getSpriteColorAt(x, y, sprite);
-        }
-        if (c == null) {
-            // no sprite exists, or sprite does exist but is transparent
-            c = getBackgroundColorAt(x + scrollX, y + scrollY);
+        int[] colors = getColors();
+        for (int x = 0; x < WIDTH; x++) {
+            int background = backgroundLine[x];
+            int sprite = spriteLine[x];
+            boolean spriteShown = sprite != 0 && ((sprite & SPRITE_BEHIND) == 0 || (background & TRANSPARENT_MASK) == 0);
+            line[x] = colors[spriteShown ? sprite & SPRITE_COLOR : background];
         }
-        return Optional.ofNullable(c);
-    }
 
-    private Color getSpriteColorAt(int x, int y, int sprite) {
-        int spritePatternTable = getSpritePatternTable();
-        byte[] pattern = getCharacterPattern(spritePatternTable, oam.getTileIndex(sprite));
-
-        boolean flippedHorizontally = oam.isFlippedHorizontally(sprite);
-        boolean flippedVertically = oam.isFlippedVertically(sprite);
-        int patternX = flippedHorizontally ? 7 - (x - oam.getX(sprite)) : x - oam.getX(sprite);
-        int patternY = flippedVertically ? 7 - (y - oam.getY(sprite)) : y - oam.getY(sprite);
-        int color = getColorInPattern(patternX, patternY, pattern);
-        if (color == 0) {
-            return null;
-        }
-        if (sprite == 0) {
-            // Sprite 0 hit
-            regPPUSTATUS.setSprite0Hit(true);
+        if (sprite0X >= 0) {
+            // an opaque dot of sprite 0 over an opaque background dot, not at x=255
+            for (int x = sprite0X; x < Math.min(sprite0X + SPRITE_WIDTH, WIDTH - 1); x++) {
+                if ((spriteLine[x] & SPRITE_0) != 0 && (backgroundLine[x] & TRANSPARENT_MASK) != 0) {
+                    sprite0HitOnLine = true;
+                    break;
+                }
+            }
         }
-        int colorIndex = getColorIndex(oam.getPalette(sprite), color);
-        return Palette.get(colorIndex);
-    }
 
-
-    private Integer findTopSpriteNumber(int x, int y) {
-        if (!regPPUMASK.enableSprites()) {
-            return null;
+        if (sprite0HitOnLine) {
+            regPPUSTATUS.setSprite0Hit(true);
         }
-        checkArgument(x >= 0 && x < WIDTH);
-        checkArgument(y >= 0 && y < HEIGHT);
-        checkArgument(regPPUCTRL.getSpriteSize() == ControlRegister.SpriteSize.EIGHT_BY_EIGHT); // TODO 8x16 sprite
-        for (int n = 0; n < 64; n++) {
-            int spriteX = oam.getX(n);
-            int spriteY = oam.getY(n);
-            if (x >= spriteX && x < spriteX + 8 && y >= spriteY && y < spriteY + 8) {
-                return n;
-            }
+        lineCache.setSprite0Hit(y, sprite0HitOnLine);
+        if (mainScreenData.setLine(line, y)) {
+            frameChanged = true;
         }
-        return null;
     }
 
     /**
-     * 最初の不透明なドットを持つスプライトのColorとisFrontフラグを返す
-     * @param x
-     * @param y
-     * @param sprites
-     * @return
+     * Draw the sprites of the line into spriteLine, back to front so that sprites with lower numbers end up on top.
+     * A row of a sprite is read as its two bit planes, bit reversed unless flipped so that bit 0 is the leftmost dot.
      */
-    private Pair<Color, Boolean> getSpriteColorAndIsFront(int x, int y, List<Integer> sprites) {
-        checkArgument(x >= 0 && x < WIDTH);
-        checkArgument(y >= 0 && y < HEIGHT);
-        checkArgument(regPPUCTRL.getSpriteSize() == ControlRegister.SpriteSize.EIGHT_BY_EIGHT); // TODO 8x16 sprite
-        for (int sprite : sprites) {
-            if (!isSpriteInHorizonalRange(sprite, x)) {
-                continue;
+    private void setSpriteLine(int y) {
+        Arrays.fill(spriteLine, (byte)0);
+        sprite0X = -1;
+        if (!regPPUMASK.enableSprites()) {
+            return;
+        }
+        int spriteHeight = getSpriteHeight();
+        spriteIndex.update(spriteHeight);
+        for (int i = spriteIndex.getCount(y) - 1; i >= 0; i--) {
+            int sprite = spriteIndex.getSprite(y, i);
+            int patternY = y - oam.getY(sprite);
+            if (oam.isFlippedVertically(sprite)) {
+                patternY = spriteHeight - 1 - patternY;
             }
-            int spriteX = oam.getX(sprite);
-            int spriteY = oam.getY(sprite);
-            int spritePatternTable = getSpritePatternTable();
-            byte[] pattern = getCharacterPattern(spritePatternTable, oam.getTileIndex(sprite));
-            boolean flippedHorizontally = oam.isFlippedHorizontally(sprite);
-            boolean flippedVertically = oam.isFlippedVertically(sprite);
-            int patternX = flippedHorizontally ? 7 - (x - spriteX) : x - spriteX;
-            int patternY = flippedVertically ? 7 - (y - spriteY) : y - spriteY;
-            int color = getColorInPattern(patternX, patternY, pattern);
-            if (color == 0) {
-                continue;
+            int address = getSpritePatternAddress(sprite, patternY);
+            int lower = Byte.toUnsignedInt(mapper.readCharacter(address));
+            int upper = Byte.toUnsignedInt(mapper.readCharacter(address + 8));
+            if ((lower | upper) == 0) {
+                continue; // transparent row
+            }
+            if (!oam.isFlippedHorizontally(sprite)) {
+                lower = Byte.toUnsignedInt(REVERSED_BITS[lower]);
+                upper = Byte.toUnsignedInt(REVERSED_BITS[upper]);
             }
+            int spriteX = oam.getX(sprite);
+            int attributes = oam.getPalette(sprite) * 4
+                    | (oam.hasFrontPriority(sprite) ? 0 : SPRITE_BEHIND)
+                    | (sprite == 0 ? SPRITE_0 : 0);
             if (sprite == 0) {
-                // Sprite 0 hit
-                regPPUSTATUS.setSprite0Hit(true);
+                sprite0X = spriteX;
+            }
+            int end = Math.min(spriteX + SPRITE_WIDTH, WIDTH);
+            for (int x = spriteX; x < end && (lower | upper) != 0; x++) {
+                int color = (lower & 1) | (upper & 1) << 1;
+                if (color != 0) {
+                    spriteLine[x] = (byte)(attributes | color);
+                }
+                lower >>= 1;
+                upper >>= 1;
             }
-            int colorIndex = getColorIndex(oam.getPalette(sprite), color);
-            return Tuples.pair(Palette.get(colorIndex), oam.hasFrontPriority(sprite));
         }
-        // 該当するスプライトが無い
-        return null;
     }
 
-    private static final int SPRITE_SIZE = 8;
-
     /**
-     * scanline yに乗っているスプライトを最大8個取得
-     * TODO Sprite Overflow
-     * @return
+     * 8x16 sprites take the pattern table from bit 0 of the tile index, the top tile is the even one.
+     *
+     * @param patternY 0 to the sprite height - 1, after flipping
+     * @return address of the lower bit plane of the row, $0000-$1FFF
      */
-    private List<Integer> getSpritesToBeRendered(int y) {
-        if (!regPPUMASK.enableSprites()) {
-            return Collections.emptyList();
-        }
-
-        List<Integer> sprites = new ArrayList<>();
-        for (int n = 0; n < 64; n++) {
-            if (isSpriteOnScanline(n, y)) {
-                sprites.add(n);
-            }
-            if (sprites.size() == 8) {
-                return sprites;
-            }
+    private int getSpritePatternAddress(int sprite, int patternY) {
+        int index = oam.getTileIndex(sprite);
+        if (regPPUCTRL.getSpriteSize() == ControlRegister.SpriteSize.EIGHT_BY_EIGHT) {
+            return getSpritePatternTable() * 0x1000 + index * 16 + patternY;
         }
-        return sprites;
+        return (index & 1) * 0x1000 + ((index & 0xFE) + patternY / 8) * 16 + patternY % 8;
     }
 
-    private boolean isSpriteOnScanline(int n, int y) {
-        int spriteY = oam.getY(n);
-        return y >= spriteY && y < spriteY + SPRITE_SIZE;
+    private int getSpriteHeight() {
+        return regPPUCTRL.getSpriteSize() == ControlRegister.SpriteSize.EIGHT_BY_EIGHT ? 8 : 16;
     }
 
-    private boolean isSpriteInHorizonalRange(int n, int x) {
-        int spriteX = oam.getX(n);
-        return x >= spriteX && x < spriteX + SPRITE_SIZE;
-    }
-
-    private boolean shouldWaitCpu() {
-        long cpuCycles = cpu.getCyclesSynchronized();
-        return this.cycles >= cpuCycles * 3;
+    private boolean hasSpriteOverflow(int y) {
+        spriteIndex.update(getSpriteHeight());
+        return spriteIndex.hasOverflow(y);
     }
 
     /**
-     *
-     * @param table 0-1
-     * @param i 0-255
-     * @return
+     * @return ARGB of palette RAM offsets 0-31, and black for NO_BACKGROUND
      */
-    private byte[] getCharacterPattern(int table, int i) {
-        checkArgument(table >= 0 && table < 2);
-        checkArgument(i >= 0 && i < 256);
-        int from = table * 0x1000 + i * 0x10;
-        return this.characterRom.getRange(from, from + 16);
+    private int[] getColors() {
+        if (colorsVersion != paletteRam.getVersion()) {
+            for (int offset = 0; offset < PaletteRam.SIZE; offset++) {
+                colors[offset] = Palette.getRgb(paletteRam.get(offset) & 0x3F);
+            }
+            colors[NO_BACKGROUND] = BLACK;
+            colorsVersion = paletteRam.getVersion();
+        }
+        return colors;
     }
 
+    private static final int SPRITE_WIDTH = 8;
+
     /**
      *
      * @param x
      * @param y
-     * @return 0 or 1
+     * @return physical nametable 0 or 1
      */
-    private int getScreen(int x, int y) {
+    int getScreen(int x, int y) {
         // TODO support 4 screen mode
         checkArgument(x >= 0 && x < 2 * WIDTH);
         checkArgument(y >= 0 && y < 2 * HEIGHT);
-        /**
-         * Vertical  Horizontal
-         *  +-+-+      +-+-+
-         *  |0|1|      |0|0|
-         *  +-+-+      +-+-+
-         *  |0|1|      |1|1|
-         *  +-+-+      +-+-+
-         */
-        boolean isScreen0 = true;
-        if (mirroring == Mirroring.VERTICAL) {
-            if (x >= WIDTH) {
-                isScreen0 = !isScreen0;
-            }
-            if (regPPUCTRL.getBit(0)) {
-                isScreen0 = !isScreen0;
-            }
-        }
-
-        if (mirroring == Mirroring.HORIZONTAL) {
-            if (y >= HEIGHT) {
-                isScreen0 = !isScreen0;
-            }
-            if (regPPUCTRL.getBit(1)) {
-                isScreen0 = !isScreen0;
-            }
-        }
-        return isScreen0 ? 0 : 1;
+        int logicalX = (x >= WIDTH ? 1 : 0) ^ (regPPUCTRL.getBit(0) ? 1 : 0);
+        int logicalY = (y >= HEIGHT ? 1 : 0) ^ (regPPUCTRL.getBit(1) ? 1 : 0);
+        return getMirroring().getPhysicalNametable(logicalY * 2 + logicalX);
     }
 
-    private Color getBackgroundColorAt(int x, int y) {
-        if (!regPPUMASK.enableBackground()) {
-            return null;
-        }
-        checkArgument(x >= 0 && x < 2 * WIDTH);
-        checkArgument(y >= 0 && y < 2 * HEIGHT);
+    /**
+     * @param x 0-511, scrolled
+     * @param y 0-479, scrolled
+     * @return 0-3, 0 is transparent
+     */
+    private int getBackgroundColor(int x, int y) {
         int screen = getScreen(x, y);
         int cell = getCell(x % WIDTH, y % HEIGHT);
-        int character = getCharacter(screen, cell);
-        int bgPatternTable = getBackgroundPatternTable();
-        byte[] pattern = getCharacterPattern(bgPatternTable, character);
-        int palette = getPalette(screen, cell);
-        int color = getColorInPattern(x % 8, y % 8, pattern);
-        int colorIndex = getColorIndex(palette, color);
-        return Palette.get(colorIndex);
+        int tile = tileCache.getTile(getBackgroundPatternTable(), getCharacter(screen, cell));
+        return getColorInTile(x % 8, y % 8, tile);
     }
 
     /**
-     *
-     * @param x
-     * @param y
-     * @param pattern
+     * @param x 0-7
+     * @param y 0-7
+     * @param tile from {@link TileCache#getTile}
      * @return 0-3
      */
-    private int getColorInPattern(int x, int y, byte[] pattern) {
-        checkArgument(x >= 0 && x < 8);
-        checkArgument(y >= 0 && y < 8);
-        return (BinaryUtil.getBit(pattern[y], 7 - x) ? 1 : 0)
-                + (BinaryUtil.getBit(pattern[y + 8], 7 - x) ? 1 : 0) * 2;
+    private int getColorInTile(int x, int y, int tile) {
+        return tileCache.pixels[tile + y * 8 + x];
     }
 
     /**
@@ -572,11 +687,7 @@ public class PPU implements Runnable {
         checkArgument(palette >= 0 && palette < 8);
         checkArgument(i >= 0 && i < 4);
         int offset = (i != 0) ? palette * 4 + i : 0;
-        return paletteRam.get(offset);
-    }
-
-    private boolean isCharacterRomAvailable() {
-        return characterRom != null;
+        return paletteRam.get(offset) & 0x3F;
     }
 
 }
@@ -6,6 +6,7 @@ import java.util.List;
 
 public class Palette {
     private static final List<Color> LIST;
+    private static final int[] RGB = new int[64]; // ARGB of LIST, for drawing lines
 
     static {
         LIST = ImmutableList.<Color>builder().add(
@@ -74,9 +75,16 @@ public class Palette {
                 new Color(0, 0, 0),
                 new Color(0, 0, 0)
                 ).build();
+        for (int i = 0; i < RGB.length; i++) {
+            RGB[i] = LIST.get(i).getRGB();
+        }
     }
 
     static Color get(int i) {
         return LIST.get(i);
     }
+
+    static int getRgb(int i) {
+        return RGB[i];
+    }
 }
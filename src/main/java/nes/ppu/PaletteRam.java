@@ -1,17 +1,28 @@
 package nes.ppu;
 
 import common.ByteArrayMemory;
+import lombok.Getter;
 
 public class PaletteRam extends ByteArrayMemory {
 
     static final int SIZE = 0x20;
 
+    /**
+     * Count of writes which changed a color
+     */
+    @Getter
+    private int version;
+
     public PaletteRam() {
         super(new byte[SIZE]);
     }
 
     @Override
     public void set(byte value, int offset) {
+        if (get(offset) == value) {
+            return;
+        }
+        version++;
         if (offset % 4 == 0) {
             // mirroring
             super.set(value, offset % 0x10);
@@ -0,0 +1,86 @@
+package nes.ppu;
+
+import java.util.Arrays;
+
+import static nes.screen.MainScreen.HEIGHT;
+
+/**
+ * The sprites on each scanline as sprite evaluation finds them: the first 8 in OAM order, and whether there were more.
+ *
+ * Built for all lines at once, and again only when OAM or the sprite size has changed,
+ * as most games copy the same OAM every frame and the OAM version only counts writes which change a value.
+ * The hardware bug which makes the overflow flag unreliable is not emulated.
+ */
+class SpriteIndex {
+    static final int SPRITES_PER_LINE = 8;
+    private static final int SPRITES = 64;
+
+    private final ObjectAttributeMemory oam;
+
+    private final int[] sprites = new int[HEIGHT * SPRITES_PER_LINE];
+    private final int[] counts = new int[HEIGHT];
+    private final boolean[] overflows = new boolean[HEIGHT];
+
+    private boolean valid;
+    private int oamVersion;
+    private int spriteHeight;
+
+    SpriteIndex(ObjectAttributeMemory oam) {
+        this.oam = oam;
+    }
+
+    /**
+     * Rebuild the index if OAM or the sprite size has changed since it was built.
+     *
+     * @param spriteHeight 8 or 16
+     */
+    void update(int spriteHeight) {
+        if (valid && oamVersion == oam.getVersion() && this.spriteHeight == spriteHeight) {
+            return;
+        }
+        Arrays.fill(counts, 0);
+        Arrays.fill(overflows, false);
+        for (int n = 0; n < SPRITES; n++) {
+            int top = oam.getY(n);
+            for (int y = top; y < Math.min(top + spriteHeight, HEIGHT); y++) {
+                if (counts[y] == SPRITES_PER_LINE) {
+                    overflows[y] = true;
+                } else {
+                    sprites[y * SPRITES_PER_LINE + counts[y]++] = n;
+                }
+            }
+        }
+        valid = true;
+        oamVersion = oam.getVersion();
+        this.spriteHeight = spriteHeight;
+    }
+
+    /**
+     * OAM has been replaced without counting writes, as by loading a state.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * @return number of sprites on the line, 0-8
+     */
+    int getCount(int y) {
+        return counts[y];
+    }
+
+    /**
+     * @param i 0 to getCount(y) - 1, in OAM order
+     * @return sprite number 0-63
+     */
+    int getSprite(int y, int i) {
+        return sprites[y * SPRITES_PER_LINE + i];
+    }
+
+    /**
+     * @return whether more than 8 sprites are on the line
+     */
+    boolean hasOverflow(int y) {
+        return overflows[y];
+    }
+}
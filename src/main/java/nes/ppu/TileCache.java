@@ -0,0 +1,66 @@
+package nes.ppu;
+
+import nes.mapper.Mapper;
+
+import java.util.Arrays;
+
+/**
+ * Pattern table tiles decoded to one color number (0-3) per pixel, 8x8 row by row.
+ *
+ * Tiles are keyed by their offset in the whole CHR ROM/RAM rather than the PPU address,
+ * so switching CHR banks needs no invalidation. A write to CHR RAM invalidates the written tile.
+ */
+class TileCache {
+    private static final int TILE_BYTES = 16;
+    private static final int TILE_PIXELS = 64;
+
+    private final Mapper mapper;
+
+    final byte[] pixels;
+    private final boolean[] decoded;
+
+    TileCache(Mapper mapper) {
+        this.mapper = mapper;
+        int tiles = mapper.getCharacterSize() / TILE_BYTES;
+        pixels = new byte[tiles * TILE_PIXELS];
+        decoded = new boolean[tiles];
+    }
+
+    /**
+     * @param table 0-1
+     * @param i 0-255
+     * @return index of the first pixel of the tile in pixels
+     */
+    int getTile(int table, int i) {
+        int address = table * 0x1000 + i * TILE_BYTES;
+        int tile = mapper.getCharacterOffset(address) / TILE_BYTES;
+        if (!decoded[tile]) {
+            decode(tile, address);
+        }
+        return tile * TILE_PIXELS;
+    }
+
+    /**
+     * @param address $0000-$1FFF
+     */
+    void invalidate(int address) {
+        decoded[mapper.getCharacterOffset(address) / TILE_BYTES] = false;
+    }
+
+    void invalidateAll() {
+        Arrays.fill(decoded, false);
+    }
+
+    private void decode(int tile, int address) {
+        int base = tile * TILE_PIXELS;
+        for (int y = 0; y < 8; y++) {
+            int lower = Byte.toUnsignedInt(mapper.readCharacter(address + y));
+            int upper = Byte.toUnsignedInt(mapper.readCharacter(address + y + 8));
+            for (int x = 0; x < 8; x++) {
+                int shift = 7 - x;
+                pixels[base + y * 8 + x] = (byte)(((lower >> shift) & 1) | (((upper >> shift) & 1) << 1));
+            }
+        }
+        decoded[tile] = true;
+    }
+}
@@ -7,6 +7,8 @@ import lombok.extern.slf4j.Slf4j;
 import nes.ppu.MemoryMapper;
 import nes.ppu.PPU;
 
+import java.nio.ByteBuffer;
+
 @Slf4j
 public class AddressRegister extends ByteRegisterImpl {
 
@@ -40,6 +42,20 @@ public class AddressRegister extends ByteRegisterImpl {
         ppu.addressLatch = !ppu.addressLatch;
     }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.putInt(address);
+        buffer.putInt(tempAddress);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        super.load(buffer);
+        address = buffer.getInt();
+        tempAddress = buffer.getInt();
+    }
+
     @Override
     public boolean increment() {
         throw new UnsupportedOperationException();
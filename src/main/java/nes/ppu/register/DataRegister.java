@@ -2,13 +2,16 @@ package nes.ppu.register;
 
 import common.BinaryUtil;
 import common.ByteRegister;
+import common.StateSerializable;
 import lombok.extern.slf4j.Slf4j;
 import nes.ppu.PPU;
 
+import java.nio.ByteBuffer;
+
 import static nes.ppu.MemoryMapper.PALETTE_RAM_OFFSET;
 
 @Slf4j
-public class DataRegister implements ByteRegister {
+public class DataRegister implements ByteRegister, StateSerializable {
     private final PPU ppu;
 
     private byte readBuffer;
@@ -39,4 +42,13 @@ public class DataRegister implements ByteRegister {
         return ret;
     }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.put(readBuffer);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        readBuffer = buffer.get();
+    }
 }
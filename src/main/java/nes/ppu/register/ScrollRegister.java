@@ -4,6 +4,8 @@ import common.ByteRegisterImpl;
 import lombok.Getter;
 import nes.ppu.PPU;
 
+import java.nio.ByteBuffer;
+
 public class ScrollRegister extends ByteRegisterImpl {
 
     final private PPU ppu;
@@ -28,6 +30,20 @@ public class ScrollRegister extends ByteRegisterImpl {
         ppu.addressLatch = !ppu.addressLatch;
     }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.put((byte)x);
+        buffer.put((byte)y);
+    }
+
+    @Override
+    public void load(ByteBuffer buffer) {
+        super.load(buffer);
+        x = Byte.toUnsignedInt(buffer.get());
+        y = Byte.toUnsignedInt(buffer.get());
+    }
+
     @Override
     public boolean increment() {
         throw new UnsupportedOperationException();
@@ -51,6 +51,10 @@ public class StatusRegister extends ByteRegisterImpl {
 
     public void setSpriteOverflow(boolean flag) { setBit(flag, 5); }
 
+    public boolean isSprite0Hit() { return getBit(6); }
+
+    public boolean isSpriteOverflow() { return getBit(5); }
+
     @Override
     public boolean increment() {
         throw new UnsupportedOperationException();
@@ -1,11 +1,15 @@
 package nes.screen;
 
 import java.awt.*;
+import java.util.List;
 
 public class InfoScreen extends SwingScreen {
     public static final int WIDTH = 8 * 16 * 2;
     public static final int HEIGHT = 8 * 16 + 8 * 4;
 
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final int LINE_HEIGHT = 16;
+
     public void init(MainScreen mainScreen) {
         super.init("info", WIDTH, HEIGHT);
         Point location = mainScreen.mainFrame.getLocation();
@@ -14,13 +18,20 @@ public class InfoScreen extends SwingScreen {
     }
 
     public void refresh(ScreenData data) {
-        gBuffer.clearRect(0, 0, WIDTH, HEIGHT);
-        for (int y = 0; y < HEIGHT; y++) {
-            for (int x = 0; x < WIDTH; x++) {
-                gBuffer.setColor(data.get(x, y));
-                gBuffer.drawLine(x, y, x, y);
-            }
+        draw(data);
+    }
+
+    /**
+     * Overlay of a few lines of text, such as the metrics
+     */
+    public void showText(List<String> lines) {
+        gMain.setColor(Color.BLACK);
+        gMain.fillRect(0, 0, WIDTH, HEIGHT);
+        gMain.setColor(Color.WHITE);
+        gMain.setFont(FONT);
+        for (int i = 0; i < lines.size(); i++) {
+            gMain.drawString(lines.get(i), 4, LINE_HEIGHT * (i + 1));
         }
-        gMain.drawImage(buffer, 0, 0, canvas);
+        Toolkit.getDefaultToolkit().sync();
     }
 }
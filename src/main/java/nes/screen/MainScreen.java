@@ -20,14 +20,7 @@ public class MainScreen extends SwingScreen {
     }
 
     public void refresh(MainScreenData data) {
-        gBuffer.clearRect(0, 0, WIDTH, HEIGHT);
-        for (int y = 0; y < HEIGHT; y++) {
-            for (int x = 0; x < WIDTH; x++) {
-                gBuffer.setColor(data.get(x, y));
-                gBuffer.drawLine(x, y, x, y);
-            }
-        }
-        gMain.drawImage(buffer, 0, 0, canvas);
+        draw(data);
     }
 
 }
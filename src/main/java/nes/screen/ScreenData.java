@@ -1,36 +1,92 @@
 package nes.screen;
 
+import lombok.Getter;
+
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+/**
+ * Framebuffer of packed RGB ints, written in place into the pixels of a BufferedImage
+ * so that the screen is drawn by a single blit.
+ */
 public class ScreenData {
-    private Color[] values;
+    private static final int BLACK = Color.BLACK.getRGB();
+
+    @Getter
+    private final BufferedImage image;
+    private final int[] values;
     private final int width;
     private final int height;
 
     public ScreenData(int width, int height) {
         this.width = width;
         this.height = height;
-        values = new Color[width * height];
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        values = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
         clear();
     }
 
     public void clear() {
-        for (int i = 0; i < width * height; i++) {
-            values[i] = Color.BLACK;
-        }
+        Arrays.fill(values, BLACK);
     }
 
     public Color get(int x, int y) {
+        return new Color(getRGB(x, y));
+    }
+
+    public int getRGB(int x, int y) {
         checkArgument(x >= 0 && x < width);
         checkArgument(y >= 0 && y < height);
         return values[y * width + x];
     }
 
     public void set(Color c, int x, int y) {
+        set(c.getRGB(), x, y);
+    }
+
+    /**
+     * @param line WIDTH pixels
+     * @return true if the line differs from what was there
+     */
+    public boolean setLine(int[] line, int y) {
+        checkArgument(line.length == width);
+        checkArgument(y >= 0 && y < height);
+        int from = y * width;
+        if (sameLine(line, from)) {
+            return false;
+        }
+        System.arraycopy(line, 0, values, from, width);
+        return true;
+    }
+
+    private boolean sameLine(int[] line, int from) {
+        for (int x = 0; x < width; x++) {
+            if (values[from + x] != line[x]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void set(int rgb, int x, int y) {
         checkArgument(x >= 0 && x < width);
         checkArgument(y >= 0 && y < height);
-        values[y * width + x] = c;
+        values[y * width + x] = rgb;
+    }
+
+    /**
+     * @return 64-bit FNV-1a hash of the pixels, to compare frames without keeping them
+     */
+    public long getHash() {
+        long hash = 0xcbf29ce484222325L;
+        for (int value : values) {
+            hash ^= value & 0xFFFFFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
     }
 }
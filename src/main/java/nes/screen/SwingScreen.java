@@ -8,8 +8,6 @@ import static javax.swing.WindowConstants.EXIT_ON_CLOSE;
 public abstract class SwingScreen {
     protected Canvas canvas;
     protected Graphics gMain;
-    protected Graphics gBuffer;
-    protected Image buffer;
     protected JFrame mainFrame;
 
     private int width;
@@ -33,7 +31,13 @@ public abstract class SwingScreen {
         mainFrame.setVisible(true);
 
         gMain = canvas.getGraphics();
-        buffer = canvas.createImage(width, height);
-        gBuffer = buffer.getGraphics();
+    }
+
+    /**
+     * Blit the whole framebuffer at once
+     */
+    protected void draw(ScreenData data) {
+        gMain.drawImage(data.getImage(), 0, 0, canvas);
+        Toolkit.getDefaultToolkit().sync();
     }
 }
@@ -0,0 +1,40 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+    @Test
+    void percentileTest() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+
+        for (int i = 0; i < 90; i++) {
+            histogram.record(100); // bucket [64, 128)
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000); // bucket [512, 1024)
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(190, histogram.getMean());
+        assertEquals(127, histogram.getPercentile(0.5));
+        assertEquals(127, histogram.getPercentile(0.9));
+        assertEquals(1000, histogram.getPercentile(0.99)); // bounded by the max
+    }
+
+    @Test
+    void edgeTest() {
+        Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(-5);
+        assertEquals(0, histogram.getPercentile(1.0));
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(1.0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
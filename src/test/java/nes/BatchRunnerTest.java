@@ -0,0 +1,83 @@
+package nes;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRunnerTest {
+
+    Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("batch");
+        byte[] header = {0x4E, 0x45, 0x53, 0x1A, 2, 0, 0x10, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+        byte[] programRom = SaveStateTest.createNesData().programRom.getRange(0, 0x8000);
+        byte[] rom = Arrays.copyOf(header, header.length + programRom.length);
+        System.arraycopy(programRom, 0, rom, header.length, programRom.length);
+        Files.write(directory.resolve("a.nes"), rom);
+        Files.write(directory.resolve("b.nes"), rom);
+        header[6] = 0x50; // mapper 5 is not supported
+        Files.write(directory.resolve("c.nes"), header);
+        Files.write(directory.resolve("readme.txt"), new byte[0]);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    void testDirectory() throws IOException {
+        List<BatchRunner.Job> jobs = BatchRunner.readJobs(directory, 30);
+        assertEquals(3, jobs.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchRunner runner = new BatchRunner(2);
+        int failures = runner.run(jobs, new PrintStream(out, true));
+        runner.shutdown();
+
+        long frameHash = new NesEmulatorSingleThread().runHeadless(SaveStateTest.createNesData(), 30, Long.MAX_VALUE).getFrameHash();
+        String[] lines = out.toString().split("\n");
+        assertEquals(1, failures);
+        assertEquals(3, lines.length);
+        for (String line : lines) {
+            if (line.contains("c.nes")) {
+                assertTrue(line.contains("\"error\":\"java.lang.IllegalArgumentException: unsupported mapper 5\""), line);
+            } else {
+                assertTrue(line.contains("\"frames\":30,"), line);
+                assertTrue(line.contains(String.format("\"frameHash\":\"%016x\"", frameHash)), line);
+            }
+        }
+    }
+
+    @Test
+    void testManifest() throws IOException {
+        Path manifest = directory.resolve("manifest.txt");
+        Files.write(manifest, Arrays.asList("# ROM frames", "a.nes 10", "", "b.nes"));
+        List<BatchRunner.Job> jobs = BatchRunner.readJobs(manifest, 20);
+        assertEquals(2, jobs.size());
+        assertEquals(directory.resolve("a.nes").toAbsolutePath(), jobs.get(0).getRom());
+        assertEquals(10, jobs.get(0).getFrames());
+        assertEquals(20, jobs.get(1).getFrames());
+    }
+
+    @Test
+    void testQuote() {
+        assertEquals("\"C:\\\\roms\\\\\\\"a\\\".nes\\u000a\"", BatchRunner.quote("C:\\roms\\\"a\".nes\n"));
+    }
+}
@@ -0,0 +1,113 @@
+package nes;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputMovieTest {
+
+    private static final int FRAMES = 600;
+
+    // reads the pad on every NMI into $0300 + NMI count
+    private static final int[] MAIN = {
+            0xA9, 0x80, 0x8D, 0x00, 0x20, // LDA #$80, STA $2000 (NMI on)
+            0x4C, 0x05, 0x80,             // loop: JMP loop
+    };
+    private static final int[] NMI = {
+            0xA9, 0x01, 0x8D, 0x16, 0x40, // LDA #$01, STA $4016
+            0xA9, 0x00, 0x8D, 0x16, 0x40, // LDA #$00, STA $4016
+            0xA2, 0x08,                   // LDX #$08
+            0xAD, 0x16, 0x40,             // read: LDA $4016
+            0x4A,                         // LSR A
+            0x26, 0x20,                   // ROL $20
+            0xCA,                         // DEX
+            0xD0, 0xF7,                   // BNE read
+            0xA6, 0x11,                   // LDX $11
+            0xA5, 0x20,                   // LDA $20
+            0x9D, 0x00, 0x03,             // STA $0300,X
+            0xE6, 0x11,                   // INC $11
+            0x40,                         // RTI
+    };
+
+    private static NesData createNesData() {
+        return TestRom.nrom(MAIN, NMI);
+    }
+
+    private InputMovie createMovie() {
+        InputMovie movie = new InputMovie();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            movie.set(frame, (frame * 37) & 0xFF);
+        }
+        return movie;
+    }
+
+    @Test
+    void testReplay() {
+        NesEmulatorSingleThread emulator = new NesEmulatorSingleThread();
+        HeadlessResult result = emulator.runHeadless(createNesData(), null, createMovie(), FRAMES, Long.MAX_VALUE);
+
+        byte[] ram = result.getRam();
+        // the last 256 NMIs wrapped around $0300-$03FF; A is read first and ends up in bit 7
+        for (int frame = FRAMES - 256; frame < FRAMES; frame++) {
+            int buttons = (frame * 37) & 0xFF;
+            assertEquals(Integer.reverse(buttons) >>> 24, Byte.toUnsignedInt(ram[0x300 + (frame & 0xFF)]));
+        }
+
+        HeadlessResult again = emulator.runHeadless(createNesData(), null, createMovie(), FRAMES, Long.MAX_VALUE);
+        assertArrayEquals(result.getState(), again.getState());
+    }
+
+    @Test
+    void testWriteRead() throws IOException {
+        InputMovie movie = createMovie();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        movie.write(out);
+        assertEquals(16 + FRAMES, out.size());
+
+        InputMovie read = InputMovie.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(FRAMES, read.getLength());
+        for (int frame = 0; frame < FRAMES; frame++) {
+            assertEquals(movie.get(frame), read.get(frame));
+        }
+        assertEquals(0, read.get(FRAMES));
+
+        byte[] bytes = out.toByteArray();
+        bytes[0] = 0;
+        assertThrows(IllegalArgumentException.class, () -> InputMovie.read(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    void testInvalidLength() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createMovie().write(out);
+
+        byte[] negative = out.toByteArray();
+        negative[12] = (byte)0x80;
+        assertThrows(IOException.class, () -> InputMovie.read(new ByteArrayInputStream(negative)));
+
+        byte[] tooLong = out.toByteArray();
+        tooLong[12] = 0x7F;
+        assertThrows(IOException.class, () -> InputMovie.read(new ByteArrayInputStream(tooLong)));
+
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() - 1);
+        assertThrows(IOException.class, () -> InputMovie.read(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    void testRecordAgain() {
+        InputMovie movie = createMovie();
+        movie.set(10, 0xFF);
+        assertEquals(11, movie.getLength());
+        assertEquals(0xFF, movie.get(10));
+        assertEquals(0, movie.get(11));
+
+        movie.set(20, 1);
+        assertEquals(21, movie.getLength());
+        assertEquals(0, movie.get(15));
+    }
+}
@@ -0,0 +1,48 @@
+package nes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    private static long getLong(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\":(\\d+)").matcher(json);
+        assertTrue(matcher.find(), name);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    @Test
+    void testHeadless() {
+        HeadlessResult result = new NesEmulatorSingleThread().runHeadless(SaveStateTest.createNesData(), 30, Long.MAX_VALUE);
+        String json = result.getMetrics();
+        assertEquals(30, getLong(json, "frames"));
+        assertEquals(result.getCycles(), getLong(json, "cycles"));
+        assertEquals(30, getLong(json, "count"));
+        assertTrue(getLong(json, "cpu") > 0);
+        assertTrue(getLong(json, "ppu") > 0);
+        assertTrue(getLong(json, "catchUps") > 0);
+        assertEquals(0, getLong(json, "present"));
+        assertEquals(30 * 240, getLong(json, "renderedLines") + getLong(json, "reusedLines"));
+        assertEquals(0, getLong(json, "audioUnderruns"));
+    }
+
+    @Test
+    void testReport() {
+        NesEmulatorSingleThread.Headless machine = NesEmulatorSingleThread.createHeadless(SaveStateTest.createNesData());
+        Scheduler scheduler = new Scheduler(machine.getCpu(), machine.getPpu(), machine.getApu());
+        scheduler.setFrameLimit(10);
+        scheduler.run(Long.MAX_VALUE);
+
+        List<String> lines = scheduler.getMetrics().report();
+        assertEquals(5, lines.size());
+        assertTrue(lines.get(0).startsWith("fps "), lines.get(0));
+        assertEquals("audio underruns 0 dropped 0", lines.get(4));
+        // rates restart from each report
+        assertTrue(scheduler.getMetrics().report().get(3).endsWith("presented 0"));
+    }
+}
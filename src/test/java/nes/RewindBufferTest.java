@@ -0,0 +1,72 @@
+package nes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RewindBufferTest {
+
+    private Scheduler scheduler;
+    private SaveState saveState;
+    private RewindBuffer rewindBuffer;
+    private final List<byte[]> states = new ArrayList<>(); // full copies of what has been captured
+
+    private void setUp(int frames, int keyframeInterval) {
+        NesEmulatorSingleThread.Headless machine = NesEmulatorSingleThread.createHeadless(SaveStateTest.createNesData());
+        scheduler = new Scheduler(machine.getCpu(), machine.getPpu(), machine.getApu());
+        saveState = new SaveState(scheduler, machine.getCpu(), machine.getPpu(), machine.getApu(), machine.getMapper());
+        rewindBuffer = new RewindBuffer(saveState, frames, keyframeInterval);
+        scheduler.setFrameListener(() -> {
+            rewindBuffer.capture();
+            states.add(saveState.toByteArray());
+        });
+    }
+
+    private void runFrames(long frames) {
+        scheduler.setFrameLimit(frames);
+        scheduler.run(Long.MAX_VALUE);
+    }
+
+    @Test
+    void testRewind() {
+        setUp(8, 4);
+        runFrames(20);
+        assertEquals(20, states.size());
+
+        // the oldest group of 4 is dropped on the 9th, 13th and 17th frame
+        assertEquals(8, rewindBuffer.size());
+        for (int i = 19; i >= 12; i--) {
+            assertTrue(rewindBuffer.rewind());
+            assertArrayEquals(states.get(i), saveState.toByteArray());
+        }
+        assertFalse(rewindBuffer.rewind());
+
+        // 2 full keyframes and 6 deltas take much less than 8 states
+        assertTrue(rewindBuffer.getMemoryUsage() < 4 * states.get(0).length);
+    }
+
+    @Test
+    void testContinueAfterRewind() {
+        setUp(8, 4);
+        runFrames(6);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(rewindBuffer.rewind());
+        }
+        // back at the state captured when the 4th frame started, which has been dropped from the buffer
+        assertArrayEquals(states.get(3), saveState.toByteArray());
+        assertEquals(3, rewindBuffer.size());
+        states.subList(3, states.size()).clear();
+
+        // frames are captured again from the middle of the first group into the second one
+        runFrames(8);
+        assertEquals(7, rewindBuffer.size());
+        for (int i = 6; i >= 0; i--) {
+            assertTrue(rewindBuffer.rewind());
+            assertArrayEquals(states.get(i), saveState.toByteArray());
+        }
+        assertFalse(rewindBuffer.rewind());
+    }
+}
@@ -0,0 +1,95 @@
+package nes;
+
+import common.ByteArrayMemory;
+import nes.apu.APU;
+import nes.cpu.CPU;
+import nes.ppu.PPU;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SaveStateTest {
+
+    // NMI on, a pulse tone, PRG RAM and CHR RAM written every frame
+    private static final int[] MAIN = {
+            0xA9, 0x80, 0x8D, 0x00, 0x20, // LDA #$80, STA $2000 (NMI on)
+            0xA9, 0x01, 0x8D, 0x15, 0x40, // LDA #$01, STA $4015 (pulse 1 on)
+            0xA9, 0xBF, 0x8D, 0x00, 0x40, // LDA #$BF, STA $4000
+            0xA9, 0xFD, 0x8D, 0x02, 0x40, // LDA #$FD, STA $4002
+            0xA9, 0x08, 0x8D, 0x03, 0x40, // LDA #$08, STA $4003
+            0xE6, 0x10,                   // loop: INC $10
+            0xA5, 0x10, 0x8D, 0x00, 0x60, // LDA $10, STA $6000
+            0x4C, 0x19, 0xC0,             // JMP loop
+    };
+    private static final int[] NMI = {
+            0xE6, 0x11,                   // INC $11
+            0xAD, 0x02, 0x20,             // LDA $2002
+            0xA9, 0x00, 0x8D, 0x06, 0x20, // LDA #$00, STA $2006
+            0xA5, 0x11, 0x8D, 0x06, 0x20, // LDA $11, STA $2006
+            0xA5, 0x10, 0x8D, 0x07, 0x20, // LDA $10, STA $2007
+            0x40,                         // RTI
+    };
+
+    static NesData createNesData() {
+        return TestRom.mmc1(MAIN, NMI);
+    }
+
+    @Test
+    void testContinueFromState() {
+        NesEmulatorSingleThread emulator = new NesEmulatorSingleThread();
+        HeadlessResult checkpoint = emulator.runHeadless(createNesData(), 30, Long.MAX_VALUE);
+        HeadlessResult continued = emulator.runHeadless(createNesData(), checkpoint.getState(), null, 30, Long.MAX_VALUE);
+        HeadlessResult straight = emulator.runHeadless(createNesData(), 60, Long.MAX_VALUE);
+
+        assertEquals(60, continued.getFrames());
+        assertEquals(straight.getCycles(), continued.getCycles());
+        assertEquals(straight.getFrameHash(), continued.getFrameHash());
+        assertArrayEquals(straight.getRam(), continued.getRam());
+        assertArrayEquals(straight.getState(), continued.getState());
+        assertNotEquals(0, continued.getRam()[0x11]);
+    }
+
+    @Test
+    void testFanOut() {
+        NesEmulatorSingleThread emulator = new NesEmulatorSingleThread();
+        byte[] state = emulator.runHeadless(createNesData(), 10, Long.MAX_VALUE).getState();
+        HeadlessResult first = emulator.runHeadless(createNesData(), state, null, 5, Long.MAX_VALUE);
+        HeadlessResult second = emulator.runHeadless(createNesData(), state, null, 5, Long.MAX_VALUE);
+        assertArrayEquals(first.getState(), second.getState());
+    }
+
+    private static byte[] saveInitialState(NesData nesData) {
+        NesEmulatorSingleThread.Headless machine = NesEmulatorSingleThread.createHeadless(nesData);
+        CPU cpu = machine.getCpu();
+        PPU ppu = machine.getPpu();
+        APU apu = machine.getApu();
+        return new SaveState(new Scheduler(cpu, ppu, apu), cpu, ppu, apu, machine.getMapper()).toByteArray();
+    }
+
+    @Test
+    void testCharacterRomIsNotSaved() {
+        byte[] withRam = saveInitialState(createNesData());
+        NesData nesData = createNesData();
+        nesData.characterRom = new ByteArrayMemory(new byte[0x20000]);
+        byte[] withRom = saveInitialState(nesData);
+
+        assertEquals(withRam.length - 0x2000, withRom.length);
+    }
+
+    @Test
+    void testInvalidState() {
+        NesEmulatorSingleThread emulator = new NesEmulatorSingleThread();
+        byte[] state = emulator.runHeadless(createNesData(), 1, Long.MAX_VALUE).getState();
+
+        byte[] otherVersion = state.clone();
+        otherVersion[7] = (byte)(SaveState.VERSION + 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> emulator.runHeadless(createNesData(), otherVersion, null, 1, Long.MAX_VALUE));
+
+        byte[] truncated = Arrays.copyOf(state, state.length - 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> emulator.runHeadless(createNesData(), truncated, null, 1, Long.MAX_VALUE));
+    }
+}
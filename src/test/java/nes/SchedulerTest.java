@@ -0,0 +1,166 @@
+package nes;
+
+import nes.apu.APU;
+import nes.cpu.CPU;
+import nes.ppu.PPU;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulerTest {
+
+    private static final long CYCLES = 200000;
+
+    private CPU cpu;
+    private PPU ppu;
+    private APU apu;
+
+    private static final int[] MAIN = {
+            0xA9, 0x80, 0x8D, 0x00, 0x20, // LDA #$80, STA $2000 (NMI on)
+            0xAD, 0x02, 0x20,             // loop: LDA $2002
+            0x85, 0x12,                   // STA $12
+            0xE6, 0x10,                   // INC $10
+            0x4C, 0x05, 0x80,             // JMP loop
+    };
+    private static final int[] NMI = {
+            0xE6, 0x11,                   // INC $11
+            0xAD, 0x02, 0x20,             // LDA $2002
+            0x85, 0x13,                   // STA $13
+            0x40,                         // RTI
+    };
+    // waits for the NMI handler in an idle loop, then does some work
+    private static final int[] IDLE_MAIN = {
+            0xA9, 0x80, 0x8D, 0x00, 0x20, // LDA #$80, STA $2000 (NMI on)
+            0xA5, 0x20,                   // wait: LDA $20
+            0xF0, 0xFC,                   // BEQ wait
+            0xA9, 0x00, 0x85, 0x20,       // LDA #0, STA $20
+            0xA2, 0x30,                   // LDX #$30
+            0xCA,                         // delay: DEX
+            0xD0, 0xFD,                   // BNE delay
+            0xE6, 0x10,                   // INC $10
+            0x4C, 0x05, 0x80,             // JMP wait
+    };
+    private static final int[] IDLE_NMI = {
+            0xE6, 0x11,                   // INC $11
+            0xE6, 0x20,                   // INC $20
+            0x40,                         // RTI
+    };
+
+    // counts the frames by sprite 0 hit, polling PPUSTATUS
+    private static final int[] SPRITE0_MAIN = {
+            0xA9, 0x80, 0x8D, 0x00, 0x20, // LDA #$80, STA $2000 (NMI on)
+            0x2C, 0x02, 0x20,             // hit: BIT $2002
+            0x50, 0xFB,                   // BVC hit
+            0xE6, 0x10,                   // INC $10
+            0x2C, 0x02, 0x20,             // clear: BIT $2002
+            0x70, 0xFB,                   // BVS clear
+            0x4C, 0x05, 0x80,             // JMP hit
+    };
+
+    private void setUp() {
+        setUp(MAIN, NMI);
+    }
+
+    private void setUp(int[] main, int[] nmi) {
+        NesEmulatorSingleThread.Headless machine = NesEmulatorSingleThread.createHeadless(TestRom.nrom(main, nmi));
+        cpu = machine.getCpu();
+        ppu = machine.getPpu();
+        apu = machine.getApu();
+    }
+
+    @Test
+    void testSameTimingAsLockstep() {
+        setUp();
+        while (cpu.getCycles() < CYCLES) {
+            long before = cpu.getCycles();
+            cpu.runStep();
+            for (long i = before; i < cpu.getCycles(); i++) {
+                ppu.runStep();
+                ppu.runStep();
+                ppu.runStep();
+                apu.runStep();
+            }
+        }
+        byte[] lockstepRam = cpu.getRam();
+        long lockstepCycles = cpu.getCycles();
+        long lockstepFrames = ppu.getFrames();
+
+        setUp();
+        new Scheduler(cpu, ppu, apu).run(CYCLES);
+
+        assertEquals(lockstepCycles, cpu.getCycles());
+        assertEquals(lockstepFrames, ppu.getFrames());
+        assertArrayEquals(lockstepRam, cpu.getRam());
+        assertNotEquals(0, lockstepRam[0x11]); // NMI handled
+    }
+
+    @Test
+    void testIdleLoopSkippedExactly() {
+        setUp(IDLE_MAIN, IDLE_NMI);
+        cpu.setIdleLoopSkipping(false);
+        new Scheduler(cpu, ppu, apu).run(CYCLES);
+        byte[] ram = cpu.getRam();
+        long cycles = cpu.getCycles();
+        assertEquals(0, cpu.getSkippedCycles());
+
+        setUp(IDLE_MAIN, IDLE_NMI);
+        new Scheduler(cpu, ppu, apu).run(CYCLES);
+
+        assertEquals(cycles, cpu.getCycles());
+        assertArrayEquals(ram, cpu.getRam());
+        assertTrue(ram[0x11] > 3); // NMI handled
+        assertEquals(ram[0x11], ram[0x10]); // one round of work per frame
+        // the waits are most of the frame
+        assertTrue(cpu.getSkippedCycles() > CYCLES / 2, Long.toString(cpu.getSkippedCycles()));
+    }
+
+    /**
+     * Sprite 0 at line 101 over an opaque background tile.
+     */
+    private void setUpSprite0() {
+        for (int i = 0; i < 8; i++) {
+            ppu.write((byte)0xFF, 0x0010 + i); // tile 1 in CHR RAM
+        }
+        ppu.write((byte)1, 0x2000 + 12 * 32 + 8);
+        ppu.oam.set((byte)100, 0);
+        ppu.oam.set((byte)1, 1);
+        ppu.oam.set((byte)64, 3);
+        ppu.regPPUMASK.set((byte)0x18);
+    }
+
+    @Test
+    void testSprite0HitPollingSkippedExactly() {
+        setUp(SPRITE0_MAIN, IDLE_NMI);
+        setUpSprite0();
+        while (cpu.getCycles() < CYCLES) {
+            long before = cpu.getCycles();
+            cpu.runStep();
+            for (long i = before; i < cpu.getCycles(); i++) {
+                ppu.runStep();
+                ppu.runStep();
+                ppu.runStep();
+                apu.runStep();
+            }
+        }
+        byte[] lockstepRam = cpu.getRam();
+        long lockstepCycles = cpu.getCycles();
+
+        setUp(SPRITE0_MAIN, IDLE_NMI);
+        setUpSprite0();
+        new Scheduler(cpu, ppu, apu).run(CYCLES);
+
+        assertEquals(lockstepCycles, cpu.getCycles());
+        assertArrayEquals(lockstepRam, cpu.getRam());
+        assertTrue(lockstepRam[0x10] > 3); // sprite 0 hit every frame
+        assertTrue(cpu.getSkippedCycles() > CYCLES / 2, Long.toString(cpu.getSkippedCycles()));
+    }
+
+    @Test
+    void testFrameLimit() {
+        setUp();
+        Scheduler scheduler = new Scheduler(cpu, ppu, apu);
+        scheduler.setFrameLimit(3);
+        scheduler.run(Long.MAX_VALUE);
+        assertEquals(3, ppu.getFrames());
+    }
+}
@@ -0,0 +1,44 @@
+package nes;
+
+import common.ByteArrayMemory;
+
+/**
+ * Cartridges for the tests with CHR RAM, the main program at the reset vector and the NMI handler $100 after it
+ */
+class TestRom {
+    private static final int NMI_OFFSET = 0x100;
+
+    /**
+     * NROM with 16KB PRG ROM, main at $8000 and NMI at $8100
+     */
+    static NesData nrom(int[] main, int[] nmi) {
+        return create((byte)0x00, 0x4000, 0x8000, main, nmi);
+    }
+
+    /**
+     * MMC1 with 32KB PRG ROM, main at $C000 and NMI at $C100 in the last bank, which is fixed there on power up
+     */
+    static NesData mmc1(int[] main, int[] nmi) {
+        return create((byte)0x10, 0x8000, 0xC000, main, nmi);
+    }
+
+    private static NesData create(byte flag6, int programSize, int address, int[] main, int[] nmi) {
+        byte[] programRom = new byte[programSize];
+        int offset = address - 0x8000;
+        for (int i = 0; i < main.length; i++) {
+            programRom[offset + i] = (byte)main[i];
+        }
+        for (int i = 0; i < nmi.length; i++) {
+            programRom[offset + NMI_OFFSET + i] = (byte)nmi[i];
+        }
+        int nmiAddress = address + NMI_OFFSET;
+        programRom[programSize - 6] = (byte)nmiAddress; // NMI vector
+        programRom[programSize - 5] = (byte)(nmiAddress >> 8);
+        programRom[programSize - 4] = (byte)address; // reset vector
+        programRom[programSize - 3] = (byte)(address >> 8);
+
+        NesData nesData = new NesData(flag6, (byte)0);
+        nesData.programRom = new ByteArrayMemory(programRom);
+        return nesData;
+    }
+}
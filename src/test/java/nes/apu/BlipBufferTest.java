@@ -0,0 +1,41 @@
+package nes.apu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlipBufferTest {
+
+    @Test
+    void testSamplesAvailable() {
+        BlipBuffer blip = new BlipBuffer(44100 * 10, 44100, 1000);
+        blip.endFrame(995);
+        assertEquals(99, blip.getSamplesAvailable());
+
+        short[] out = new short[200];
+        assertEquals(50, blip.readSamples(out, 50));
+        assertEquals(49, blip.getSamplesAvailable());
+        blip.endFrame(5);
+        assertEquals(50, blip.readSamples(out, 200));
+        assertEquals(0, blip.getSamplesAvailable());
+    }
+
+    @Test
+    void testStep() {
+        BlipBuffer blip = new BlipBuffer(44100 * 10, 44100, 1000);
+        blip.addDelta(105, 10000);
+        blip.endFrame(1000);
+
+        short[] out = new short[100];
+        assertEquals(100, blip.readSamples(out, 100));
+        // silent before the step, apart from the ringing of the kernel
+        assertEquals(0, out[0]);
+        assertTrue(Math.abs(out[10 - BlipBuffer.WIDTH / 2 - 1]) < 1000);
+        // the full step once the kernel has passed, then decaying slowly through the DC blocker
+        int settled = 10 + BlipBuffer.WIDTH / 2 + 4;
+        assertEquals(10000, out[settled], 200);
+        assertTrue(out[99] < out[settled]);
+        assertTrue(out[99] > 9000);
+    }
+}
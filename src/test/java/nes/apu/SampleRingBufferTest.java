@@ -0,0 +1,40 @@
+package nes.apu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SampleRingBufferTest {
+
+    @Test
+    void testCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new SampleRingBuffer(100));
+    }
+
+    @Test
+    void testWrapAround() {
+        SampleRingBuffer ring = new SampleRingBuffer(4);
+        short[] out = new short[4];
+
+        assertEquals(3, ring.write(new short[]{1, 2, 3}, 3));
+        assertEquals(2, ring.read(out, 2));
+        assertEquals(3, ring.write(new short[]{4, 5, 6}, 3));
+        assertEquals(4, ring.size());
+        assertEquals(4, ring.read(out, 4));
+        assertArrayEquals(new short[]{3, 4, 5, 6}, out);
+        assertEquals(0, ring.read(out, 4));
+    }
+
+    @Test
+    void testDropWhenFull() {
+        SampleRingBuffer ring = new SampleRingBuffer(4);
+        short[] out = new short[4];
+
+        assertEquals(4, ring.write(new short[]{1, 2, 3, 4, 5, 6}, 6));
+        assertEquals(0, ring.write(new short[]{7}, 1));
+        assertEquals(4, ring.read(out, 4));
+        assertArrayEquals(new short[]{1, 2, 3, 4}, out);
+    }
+}
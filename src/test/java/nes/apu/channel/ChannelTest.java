@@ -0,0 +1,63 @@
+package nes.apu.channel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelTest {
+
+    /**
+     * clockTimer(n) must end in the same state as n calls of clockTimer()
+     */
+    private void assertBatchedTimer(Supplier<ChannelWithLengthCounter> factory, int timerPeriod) {
+        ChannelWithLengthCounter stepped = factory.get();
+        ChannelWithLengthCounter batched = factory.get();
+        for (ChannelWithLengthCounter channel : new ChannelWithLengthCounter[]{stepped, batched}) {
+            channel.setEnabled(true);
+            channel.getLengthCounter().setValue(1);
+            channel.setTimerPeriod(timerPeriod);
+            if (channel instanceof ChannelWithEnvelope) {
+                ((ChannelWithEnvelope)channel).setUseConstantVolume(true);
+                ((ChannelWithEnvelope)channel).setVolume(15);
+            }
+            if (channel instanceof TriangleChannel) {
+                LinearCounter linearCounter = ((TriangleChannel)channel).getLinearCounter();
+                linearCounter.setLoad(0x7F);
+                linearCounter.setReloadFlag(true);
+                linearCounter.clock();
+            }
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            int clocks = random.nextInt(100);
+            for (int n = 0; n < clocks; n++) {
+                stepped.clockTimer();
+            }
+            batched.clockTimer(clocks);
+            assertEquals(stepped.timer, batched.timer);
+            assertEquals(stepped.getSignal(), batched.getSignal());
+        }
+    }
+
+    @Test
+    void testPulse() {
+        assertBatchedTimer(PulseChannel::new, 8);
+        assertBatchedTimer(PulseChannel::new, 100);
+    }
+
+    @Test
+    void testTriangle() {
+        assertBatchedTimer(TriangleChannel::new, 0);
+        assertBatchedTimer(TriangleChannel::new, 37);
+    }
+
+    @Test
+    void testNoise() {
+        assertBatchedTimer(NoiseChannel::new, 4);
+        assertBatchedTimer(NoiseChannel::new, 202);
+    }
+}
@@ -6,6 +6,8 @@ import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
 
+import static nes.cpu.AddressingMode.NO_ADDRESS;
+import static nes.cpu.AddressingMode.NO_OPERAND;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -23,75 +25,75 @@ class AddressingModeTest {
     class GetAddressTest {
         @Test
         void testImplicit() {
-            Integer actual = AddressingMode.IMPLICIT.getAddress(null, null, cpuMock);
-            assertNull(actual);
+            int actual = AddressingMode.IMPLICIT.getAddress(NO_OPERAND, NO_OPERAND, cpuMock);
+            assertEquals(NO_ADDRESS, actual);
         }
 
         @Test
         void testAccumulator() {
-            Integer actual = AddressingMode.ACCUMULATOR.getAddress(null, null, cpuMock);
-            assertNull(actual);
+            int actual = AddressingMode.ACCUMULATOR.getAddress(NO_OPERAND, NO_OPERAND, cpuMock);
+            assertEquals(NO_ADDRESS, actual);
         }
 
         @Test
         void testImmediate() {
-            Integer actual = AddressingMode.IMMEDIATE.getAddress((byte)0, null, cpuMock);
-            assertNull(actual);
+            int actual = AddressingMode.IMMEDIATE.getAddress(0, NO_OPERAND, cpuMock);
+            assertEquals(NO_ADDRESS, actual);
         }
 
         @Test
         void testImmediateThrows() {
             assertThrows(IllegalArgumentException.class, () -> {
-                AddressingMode.IMMEDIATE.getAddress(null, null, cpuMock);
+                AddressingMode.IMMEDIATE.getAddress(NO_OPERAND, NO_OPERAND, cpuMock);
             });
         }
 
         @Test
         void testZeroPage() {
-            assertEquals(0x00ff, (int)AddressingMode.ZERO_PAGE.getAddress((byte)0xff, null, cpuMock));
+            assertEquals(0x00ff, AddressingMode.ZERO_PAGE.getAddress(0xff, NO_OPERAND, cpuMock));
         }
 
         @Test
         void testZeroPageThrows() {
             assertThrows(IllegalArgumentException.class, () -> {
-                AddressingMode.ZERO_PAGE.getAddress((byte)0, (byte)0, cpuMock);
+                AddressingMode.ZERO_PAGE.getAddress(0, 0, cpuMock);
             });
         }
 
         @Test
         void testZeroPageX() {
             when(cpuMock.getX()).thenReturn((byte)0xff);
-            assertEquals(0x007f, (int)AddressingMode.ZERO_PAGE_X.getAddress((byte)0x80, null, cpuMock));
+            assertEquals(0x007f, AddressingMode.ZERO_PAGE_X.getAddress(0x80, NO_OPERAND, cpuMock));
         }
 
         @Test
         void testZeroPageY() {
             when(cpuMock.getY()).thenReturn((byte)0xff);
-            assertEquals(0x007f, (int)AddressingMode.ZERO_PAGE_Y.getAddress((byte)0x80, null, cpuMock));
+            assertEquals(0x007f, AddressingMode.ZERO_PAGE_Y.getAddress(0x80, NO_OPERAND, cpuMock));
         }
 
         @Test
         void testRelative() {
             when(cpuMock.getPC()).thenReturn(0x1111);
-            assertEquals(0x1091, (int)AddressingMode.RELATIVE.getAddress((byte)0x80 /* -128 */, null, cpuMock));
+            assertEquals(0x1091, AddressingMode.RELATIVE.getAddress(0x80 /* -128 */, NO_OPERAND, cpuMock));
         }
 
         @Test
         void testAbsolute() {
-            assertEquals(0xffdd, (int)AddressingMode.ABSOLUTE.getAddress((byte)0xdd, (byte)0xff, cpuMock));
+            assertEquals(0xffdd, AddressingMode.ABSOLUTE.getAddress(0xdd, 0xff, cpuMock));
 
         }
 
         @Test
         void testAbsoluteX() {
             when(cpuMock.getX()).thenReturn((byte)0x02);
-            assertEquals(0x2101, (int)AddressingMode.ABSOLUTE_X.getAddress((byte)0xff, (byte)0x20, cpuMock));
+            assertEquals(0x2101, AddressingMode.ABSOLUTE_X.getAddress(0xff, 0x20, cpuMock));
         }
 
         @Test
         void testAbsoluteY() {
             when(cpuMock.getY()).thenReturn((byte)0x06);
-            assertEquals(0x5205, (int)AddressingMode.ABSOLUTE_Y.getAddress((byte)0xff, (byte)0x51, cpuMock));
+            assertEquals(0x5205, AddressingMode.ABSOLUTE_Y.getAddress(0xff, 0x51, cpuMock));
         }
 
         @Test
@@ -105,7 +107,7 @@ class AddressingModeTest {
                 f.setAccessible(true);
                 f.set(cpuMock, mockMemoryMapper);
             } catch (Exception e) {}
-            assertEquals(0x2010, (int)AddressingMode.INDIRECT.getAddress((byte)0xff, (byte)0x10, cpuMock));
+            assertEquals(0x2010, AddressingMode.INDIRECT.getAddress(0xff, 0x10, cpuMock));
         }
 
         @Test
@@ -120,7 +122,7 @@ class AddressingModeTest {
                 f.set(cpuMock, mockMemoryMapper);
             } catch (Exception e) {}
             when(cpuMock.getY()).thenReturn((byte)0x02);
-            assertEquals(0x1101, (int)AddressingMode.INDIRECT_INDEXED_Y.getAddress((byte)0xff, null, cpuMock));
+            assertEquals(0x1101, AddressingMode.INDIRECT_INDEXED_Y.getAddress(0xff, NO_OPERAND, cpuMock));
 
         }
     }
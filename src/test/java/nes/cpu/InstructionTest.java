@@ -27,7 +27,7 @@ class InstructionTest {
             when(cpu.getA()).thenReturn((byte)0x10);
             when(cpu.getCarryFlag()).thenReturn(true);
 
-            Instruction.ADC.execute(null, (byte)0x10, cpu);
+            Instruction.ADC.execute(AddressingMode.NO_ADDRESS, (byte)0x10, cpu);
 
             expectA(0x21);
             expectZeroFlag(false);
@@ -43,7 +43,7 @@ class InstructionTest {
             when(cpu.getA()).thenReturn((byte)0x00);
             when(cpu.getCarryFlag()).thenReturn(false);
 
-            Instruction.ADC.execute(null, (byte)0xff, cpu);
+            Instruction.ADC.execute(AddressingMode.NO_ADDRESS, (byte)0xff, cpu);
 
             expectA(0xff);
             expectZeroFlag(false);
@@ -58,7 +58,7 @@ class InstructionTest {
             when(cpu.getA()).thenReturn((byte)0b11111111);
             when(cpu.getCarryFlag()).thenReturn(true);
 
-            Instruction.ADC.execute(null, (byte)0b11111111, cpu);
+            Instruction.ADC.execute(AddressingMode.NO_ADDRESS, (byte)0b11111111, cpu);
 
             expectA(0b11111111);
             expectZeroFlag(false);
@@ -73,7 +73,7 @@ class InstructionTest {
             when(cpu.getA()).thenReturn((byte)0b01111111);
             when(cpu.getCarryFlag()).thenReturn(false);
 
-            Instruction.ADC.execute(null, (byte)0b00000001, cpu);
+            Instruction.ADC.execute(AddressingMode.NO_ADDRESS, (byte)0b00000001, cpu);
 
             expectA(0b10000000);
             expectZeroFlag(false);
@@ -90,7 +90,7 @@ class InstructionTest {
             when(cpu.getA()).thenReturn((byte)0x10);
             when(cpu.getCarryFlag()).thenReturn(false);
 
-            Instruction.SBC.execute(null, (byte)0x01, cpu);
+            Instruction.SBC.execute(AddressingMode.NO_ADDRESS, (byte)0x01, cpu);
 
             expectA(0x0e);
             expectZeroFlag(false);
@@ -105,7 +105,7 @@ class InstructionTest {
             when(cpu.getA()).thenReturn((byte)0b01111111); // +127
             when(cpu.getCarryFlag()).thenReturn(false); // --
 
-            Instruction.SBC.execute(null, (byte)0b01111111, cpu); // +127
+            Instruction.SBC.execute(AddressingMode.NO_ADDRESS, (byte)0b01111111, cpu); // +127
 
             expectA(0b11111111); // -1
             expectZeroFlag(false);
@@ -120,7 +120,7 @@ class InstructionTest {
             when(cpu.getA()).thenReturn((byte)0b01111111);
             when(cpu.getCarryFlag()).thenReturn(true);
 
-            Instruction.SBC.execute(null, (byte)0b11111111, cpu);
+            Instruction.SBC.execute(AddressingMode.NO_ADDRESS, (byte)0b11111111, cpu);
 
             expectA(0b10000000);
             expectZeroFlag(false);
@@ -134,7 +134,7 @@ class InstructionTest {
         @Test
         void testAND() {
             when(cpu.getA()).thenReturn((byte)0b00001111);
-            Instruction.AND.execute(null, (byte)0b11110000, cpu);
+            Instruction.AND.execute(AddressingMode.NO_ADDRESS, (byte)0b11110000, cpu);
             expectA(0);
             expectZeroFlag(true);
             expectNegativeFlag(false);
@@ -145,7 +145,7 @@ class InstructionTest {
         @Test
         void testORA() {
             when(cpu.getA()).thenReturn((byte)0b00001111);
-            Instruction.ORA.execute(null, (byte)0b11110000, cpu);
+            Instruction.ORA.execute(AddressingMode.NO_ADDRESS, (byte)0b11110000, cpu);
             expectA(0b11111111);
             expectZeroFlag(false);
             expectNegativeFlag(true);
@@ -156,7 +156,7 @@ class InstructionTest {
         @Test
         void testEOR() {
             when(cpu.getA()).thenReturn((byte)0b00110011);
-            Instruction.EOR.execute(null, (byte)0b11110000, cpu);
+            Instruction.EOR.execute(AddressingMode.NO_ADDRESS, (byte)0b11110000, cpu);
             expectA(0b11000011);
             expectZeroFlag(false);
             expectNegativeFlag(true);
@@ -166,7 +166,7 @@ class InstructionTest {
 
         @Test
         void testASL() {
-            Instruction.ASL.execute(null, (byte)0b11110000, cpu);
+            Instruction.ASL.execute(AddressingMode.NO_ADDRESS, (byte)0b11110000, cpu);
             expectA(0b11100000);
             expectZeroFlag(false);
             expectNegativeFlag(true);
@@ -177,7 +177,7 @@ class InstructionTest {
 
         @Test
         void testLSR() {
-            Instruction.LSR.execute(null, (byte)0b00001111, cpu);
+            Instruction.LSR.execute(AddressingMode.NO_ADDRESS, (byte)0b00001111, cpu);
             expectA(0b00000111);
             expectZeroFlag(false);
             expectNegativeFlag(false);
@@ -189,7 +189,7 @@ class InstructionTest {
         @Test
         void testROL() {
             when(cpu.getCarryFlag()).thenReturn(true);
-            Instruction.ROL.execute(null, (byte)0b01110000, cpu);
+            Instruction.ROL.execute(AddressingMode.NO_ADDRESS, (byte)0b01110000, cpu);
             expectA(0b11100001);
             expectZeroFlag(false);
             expectNegativeFlag(true);
@@ -201,7 +201,7 @@ class InstructionTest {
         @Test
         void testROR() {
             when(cpu.getCarryFlag()).thenReturn(true);
-            Instruction.ROR.execute(null, (byte)0b11110000, cpu);
+            Instruction.ROR.execute(AddressingMode.NO_ADDRESS, (byte)0b11110000, cpu);
             expectA(0b11111000);
             expectZeroFlag(false);
             expectNegativeFlag(true);
@@ -215,7 +215,7 @@ class InstructionTest {
         @Test
         void testBIT() {
             when(cpu.getA()).thenReturn((byte)0);
-            Instruction.BIT.execute(null, (byte)0b11111111, cpu);
+            Instruction.BIT.execute(AddressingMode.NO_ADDRESS, (byte)0b11111111, cpu);
             expectOverflowFlag(true);
             expectNegativeFlag(true);
             expectZeroFlag(true);
@@ -226,7 +226,7 @@ class InstructionTest {
         @Test
         void testCMPPositive() {
             when(cpu.getA()).thenReturn((byte)0xfe);
-            Instruction.CMP.execute(null, (byte)0xfd, cpu);
+            Instruction.CMP.execute(AddressingMode.NO_ADDRESS, (byte)0xfd, cpu);
             expectCarryFlag(true);
             expectZeroFlag(false);
             expectNegativeFlag(false);
@@ -235,7 +235,7 @@ class InstructionTest {
         @Test
         void testCMPEqual() {
             when(cpu.getA()).thenReturn((byte)0xfe);
-            Instruction.CMP.execute(null, (byte)0xfe, cpu);
+            Instruction.CMP.execute(AddressingMode.NO_ADDRESS, (byte)0xfe, cpu);
             expectCarryFlag(true);
             expectZeroFlag(true);
             expectNegativeFlag(false);
@@ -244,7 +244,7 @@ class InstructionTest {
         @Test
         void testCMPNegative() {
             when(cpu.getA()).thenReturn((byte)0xfe);
-            Instruction.CMP.execute(null, (byte)0xff, cpu);
+            Instruction.CMP.execute(AddressingMode.NO_ADDRESS, (byte)0xff, cpu);
             expectCarryFlag(false);
             expectZeroFlag(false);
             expectNegativeFlag(true);
@@ -0,0 +1,70 @@
+package nes.cpu;
+
+import common.ByteArrayMemory;
+import nes.Controller;
+import nes.apu.APU;
+import nes.mapper.Mapper;
+import nes.mapper.NROM;
+import nes.ppu.Mirroring;
+import nes.ppu.PPU;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryMapperTest {
+
+    PPU ppu;
+    CPU cpu;
+    MemoryMapper sut;
+
+    @BeforeEach
+    void setUp() {
+        byte[] programRom = new byte[0x8000];
+        programRom[0x1234] = (byte)0xab;
+        Mapper mapper = new NROM(new ByteArrayMemory(programRom), null, Mirroring.HORIZONTAL);
+        ppu = new PPU(mapper, null, null);
+        cpu = new CPU(ppu, new APU(), mapper, new Controller());
+        sut = new MemoryMapper(cpu, ppu, new APU());
+    }
+
+    @Test
+    void testRamMirroring() {
+        sut.set((byte)0x12, 0x0801);
+        assertEquals((byte)0x12, sut.get(0x0001));
+        assertEquals((byte)0x12, sut.get(0x1801));
+        assertEquals((byte)0x13, sut.increment(0x1001));
+        assertEquals((byte)0x12, sut.decrement(0x0001));
+    }
+
+    @Test
+    void testProgramRom() {
+        assertEquals((byte)0xab, sut.get(0x9234));
+        assertThrows(IllegalArgumentException.class, () -> sut.set((byte)0, 0x9234));
+    }
+
+    @Test
+    void testProgramRam() {
+        sut.set((byte)0x12, 0x6000);
+        assertEquals((byte)0x12, sut.get(0x6000));
+        assertEquals((byte)0x13, sut.increment(0x6000));
+    }
+
+    @Test
+    void testPPURegisterMirroring() {
+        sut.set((byte)0x80, 0x3ff8); // PPUCTRL
+        assertEquals((byte)0x80, ppu.regPPUCTRL.get());
+    }
+
+    @Test
+    void testRegisterPermission() {
+        assertThrows(IllegalArgumentException.class, () -> sut.get(0x2000)); // PPUCTRL is write only
+        assertThrows(IllegalArgumentException.class, () -> sut.set((byte)0, 0x2002)); // PPUSTATUS is read only
+    }
+
+    @Test
+    void testUnmapped() {
+        assertThrows(IllegalArgumentException.class, () -> sut.get(0x4018));
+        assertThrows(IllegalArgumentException.class, () -> sut.get(0x5000));
+    }
+}
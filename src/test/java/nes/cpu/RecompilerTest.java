@@ -0,0 +1,220 @@
+package nes.cpu;
+
+import common.ByteArrayMemory;
+import nes.Controller;
+import nes.apu.APU;
+import nes.mapper.Mapper;
+import nes.mapper.NROM;
+import nes.ppu.Mirroring;
+import nes.ppu.PPU;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecompilerTest {
+
+    /**
+     * $8000 LDX #$00
+     * $8002 LDY #$00
+     * $8004 TXA
+     * $8005 CLC
+     * $8006 ADC #$03
+     * $8008 STA $0200,X
+     * $800B STA $10,X
+     * $800D STA $2000
+     * $8010 STA $2000,Y
+     * $8013 INX
+     * $8014 BNE $8004
+     * $8016 JMP $8016
+     */
+    private static final int[] PROGRAM = {
+            0xA2, 0x00,
+            0xA0, 0x00,
+            0x8A,
+            0x18,
+            0x69, 0x03,
+            0x9D, 0x00, 0x02,
+            0x95, 0x10,
+            0x8D, 0x00, 0x20,
+            0x99, 0x00, 0x20,
+            0xE8,
+            0xD0, 0xEE,
+            0x4C, 0x16, 0x80
+    };
+
+    /**
+     * $8000 LDX #$14
+     * $8002 LDA #$02
+     * $8004 NOP
+     * $8005 NOP
+     * $8006 STA $4000,X
+     * $8009 JMP $800C
+     * $800C NOP
+     * $800D NOP
+     * $800E STA $4014
+     * $8011 JMP $8004
+     */
+    private static final int[] DMA_PROGRAM = {
+            0xA2, 0x14,
+            0xA9, 0x02,
+            0xEA,
+            0xEA,
+            0x9D, 0x00, 0x40,
+            0x4C, 0x0C, 0x80,
+            0xEA,
+            0xEA,
+            0x8D, 0x14, 0x40,
+            0x4C, 0x04, 0x80
+    };
+
+    private boolean irq;
+
+    private CPU createCPU() {
+        return createCPU(PROGRAM);
+    }
+
+    private CPU createCPU(int[] program) {
+        byte[] programRom = new byte[0x8000];
+        for (int i = 0; i < program.length; i++) {
+            programRom[i] = (byte)program[i];
+        }
+        programRom[0x7FFC] = 0x00;
+        programRom[0x7FFD] = (byte)0x80;
+        Mapper mapper = new NROM(new ByteArrayMemory(programRom), null, Mirroring.HORIZONTAL) {
+            @Override
+            public boolean isIrqAsserted() {
+                return irq;
+            }
+        };
+        PPU ppu = new PPU(mapper, null, null);
+        return new CPU(ppu, new APU(), mapper, new Controller());
+    }
+
+    @Test
+    void testSameResultAsInterpreter() {
+        CPU interpreted = createCPU();
+        CPU recompiled = createCPU();
+        recompiled.setRecompilerEnabled(true);
+        interpreted.reset();
+        recompiled.reset();
+
+        for (int i = 0; i < 5000; i++) {
+            interpreted.runStep();
+            recompiled.runStep();
+        }
+
+        assertEquals(0x8016, interpreted.getPC());
+        assertEquals(interpreted.getPC(), recompiled.getPC());
+        assertEquals(interpreted.getA(), recompiled.getA());
+        assertEquals(interpreted.getX(), recompiled.getX());
+        assertEquals(interpreted.getY(), recompiled.getY());
+        assertArrayEquals(interpreted.ram.getRange(0, 0x800), recompiled.ram.getRange(0, 0x800));
+        assertEquals((byte)0x03, recompiled.ram.get(0x200));
+        assertEquals((byte)0x02, recompiled.ram.get(0x2ff));
+    }
+
+    @Test
+    void testBlockEndsBeforeRegisterAccess() {
+        CPU cpu = createCPU();
+        Recompiler sut = new Recompiler(cpu, new OperationFactory());
+        for (int i = 0; i < Recompiler.HOT_THRESHOLD - 1; i++) {
+            sut.countBranchTarget(0x8004);
+        }
+        assertNull(sut.getBlock(0x8004));
+
+        sut.countBranchTarget(0x8004);
+        CompiledBlock block = sut.getBlock(0x8004);
+        assertNotNull(block);
+        assertEquals(5, block.length); // TXA, CLC, ADC, STA abs,X, STA zp,X
+        assertEquals(0x800D, block.nextAddresses[block.length - 1]);
+        assertTrue(block.checkIo[3]);
+    }
+
+    @Test
+    void testBlockIsGeneratedClass() {
+        CPU cpu = createCPU();
+        Recompiler sut = new Recompiler(cpu, new OperationFactory());
+        for (int i = 0; i < Recompiler.HOT_THRESHOLD; i++) {
+            sut.countBranchTarget(0x8004);
+        }
+        BlockCode code = sut.getBlock(0x8004).code;
+        assertNotEquals(BlockCode.class.getClassLoader(), code.getClass().getClassLoader());
+
+        cpu.setPC(0x8004);
+        cpu.setX((byte)0x10);
+        assertEquals(5, code.run());
+        assertEquals(0x800D, cpu.getPC());
+        assertEquals((byte)0x13, cpu.getA());
+        assertEquals((byte)0x13, cpu.ram.get(0x210));
+        assertEquals((byte)0x13, cpu.ram.get(0x20));
+        assertEquals(2 + 2 + 2 + 5 + 4, cpu.getCycles());
+    }
+
+    @Test
+    void testBlockLeavesForIrq() {
+        CPU cpu = createCPU();
+        Recompiler sut = new Recompiler(cpu, new OperationFactory());
+        for (int i = 0; i < Recompiler.HOT_THRESHOLD; i++) {
+            sut.countBranchTarget(0x8004);
+        }
+        BlockCode code = sut.getBlock(0x8004).code;
+        cpu.setPC(0x8004);
+        irq = true;
+
+        cpu.setInterruptDisableFlag(true);
+        assertEquals(5, code.run());
+
+        cpu.setPC(0x8004);
+        cpu.setInterruptDisableFlag(false);
+        assertEquals(0, code.run());
+        assertEquals(0x8004, cpu.getPC());
+    }
+
+    /**
+     * @return cycles the store after the block was halted for, when the block starts on a cycle of the parity
+     */
+    private long runBlockStall(CPU cpu, int parity, int storeCycles) {
+        if ((cpu.getCycles() & 1) != parity) {
+            cpu.stall(1);
+        }
+        long start = cpu.getCycles();
+        int store = cpu.getPC() + 2;
+        cpu.runStep();
+        assertEquals(store, cpu.getPC()); // the block leaves before the register write
+        cpu.runStep();
+        assertEquals(store + 3, cpu.getPC());
+        long stall = cpu.getCycles() - start - 2 - 2 - storeCycles;
+        cpu.runStep(); // JMP
+        return stall;
+    }
+
+    @Test
+    void testOamDmaStallAfterBlock() {
+        CPU cpu = createCPU(DMA_PROGRAM);
+        cpu.setRecompilerEnabled(true);
+        cpu.reset();
+        cpu.runStep();
+        cpu.runStep();
+        for (int i = 0; i <= Recompiler.HOT_THRESHOLD; i++) {
+            do {
+                cpu.runStep();
+            } while (cpu.getPC() != 0x8004);
+        }
+
+        // the DMA starts on the cycle after the store, STA $4000,X takes 5 cycles and STA $4014 4
+        assertEquals(514, runBlockStall(cpu, 0, 5));
+        assertEquals(513, runBlockStall(cpu, 0, 4));
+        assertEquals(513, runBlockStall(cpu, 1, 5));
+        assertEquals(514, runBlockStall(cpu, 1, 4));
+    }
+
+    @Test
+    void testRamIsNotCompiled() {
+        CPU cpu = createCPU();
+        Recompiler sut = new Recompiler(cpu, new OperationFactory());
+        for (int i = 0; i < Recompiler.HOT_THRESHOLD; i++) {
+            sut.countBranchTarget(0x0300);
+        }
+        assertNull(sut.getBlock(0x0300));
+    }
+}
@@ -0,0 +1,154 @@
+package nes.cpu;
+
+import common.ByteArrayMemory;
+import nes.Controller;
+import nes.apu.APU;
+import nes.mapper.Mapper;
+import nes.mapper.NROM;
+import nes.ppu.Mirroring;
+import nes.ppu.PPU;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceRecorderTest {
+
+    /**
+     * $8000 LDX #$00
+     * $8002 LDA $0200,X
+     * $8005 ASL A
+     * $8006 STA ($10),Y
+     * $8008 INX
+     * $8009 BNE $8002
+     * $800B JMP $800B
+     */
+    private static final int[] PROGRAM = {
+            0xA2, 0x00,
+            0xBD, 0x00, 0x02,
+            0x0A,
+            0x91, 0x10,
+            0xE8,
+            0xD0, 0xF7,
+            0x4C, 0x0B, 0x80
+    };
+
+    private CPU createCPU() {
+        byte[] programRom = new byte[0x8000];
+        for (int i = 0; i < PROGRAM.length; i++) {
+            programRom[i] = (byte)PROGRAM[i];
+        }
+        programRom[0x7FFC] = 0x00;
+        programRom[0x7FFD] = (byte)0x80;
+        Mapper mapper = new NROM(new ByteArrayMemory(programRom), null, Mirroring.HORIZONTAL);
+        PPU ppu = new PPU(mapper, null, null);
+        CPU cpu = new CPU(ppu, new APU(), mapper, new Controller());
+        cpu.reset();
+        return cpu;
+    }
+
+    private static String[] decode(TraceRecorder trace) throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        trace.write(file);
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        new TraceDecoder().decode(ByteBuffer.wrap(file.toByteArray()), new PrintStream(text, true));
+        String s = text.toString();
+        return s.isEmpty() ? new String[0] : s.split(System.lineSeparator());
+    }
+
+    @Test
+    void testDecodeAsNestest() throws IOException {
+        CPU cpu = createCPU();
+        TraceRecorder trace = TraceRecorder.inMemory(16);
+        cpu.setTrace(trace);
+        long start = cpu.getCycles();
+        for (int i = 0; i < 6; i++) {
+            cpu.runStep();
+        }
+
+        String[] lines = decode(trace);
+        assertEquals(6, lines.length);
+        assertEquals("8000  A2 00     LDX #$00                        A:00 X:00 Y:00 P:34 SP:FD CYC:" + start, lines[0]);
+        assertTrue(lines[1].startsWith("8002  BD 00 02  LDA $0200,X                     A:00 X:00 "), lines[1]);
+        assertTrue(lines[2].startsWith("8005  0A        ASL A                           "), lines[2]);
+        assertTrue(lines[3].startsWith("8006  91 10     STA ($10),Y                     "), lines[3]);
+        assertTrue(lines[4].startsWith("8008  E8        INX                             "), lines[4]);
+        assertTrue(lines[5].startsWith("8009  D0 F7     BNE $8002                       A:00 X:01 "), lines[5]);
+    }
+
+    @Test
+    void testRingKeepsLastInstructions() throws IOException {
+        TraceRecorder trace = TraceRecorder.inMemory(3);
+        for (int i = 0; i < 5; i++) {
+            trace.record(0x8000 + i, 0xEA, AddressingMode.NO_OPERAND, AddressingMode.NO_OPERAND,
+                    (byte)i, (byte)0, (byte)0, (byte)0xFD, (byte)0x24, 0x1_0000_0000L + i * 2);
+        }
+        assertEquals(5, trace.getCount());
+
+        String[] lines = decode(trace);
+        assertEquals(3, lines.length);
+        assertEquals("8002  EA        NOP                             A:02 X:00 Y:00 P:24 SP:FD CYC:4294967300", lines[0]);
+        assertTrue(lines[1].startsWith("8003  "));
+        assertTrue(lines[2].startsWith("8004  "));
+    }
+
+    @Test
+    void testMappedFile() throws IOException {
+        Path file = Files.createTempFile("trace", ".bin");
+        try {
+            CPU cpu = createCPU();
+            TraceRecorder trace = TraceRecorder.mapped(file, 1000);
+            cpu.setTrace(trace);
+            for (int i = 0; i < 101; i++) {
+                cpu.runStep();
+            }
+            trace.close();
+            assertEquals(TraceRecorder.HEADER_SIZE + 1000 * TraceRecorder.RECORD_SIZE, Files.size(file));
+
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            new TraceDecoder().decode(file, new PrintStream(text, true));
+            String[] lines = text.toString().split(System.lineSeparator());
+            assertEquals(101, lines.length);
+            assertTrue(lines[100].startsWith("8009  D0 F7     BNE $8002"), lines[100]);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testSameTraceAsRecompiler() throws IOException {
+        CPU interpreted = createCPU();
+        CPU recompiled = createCPU();
+        recompiled.setRecompilerEnabled(true);
+        TraceRecorder interpretedTrace = TraceRecorder.inMemory(10000);
+        TraceRecorder recompiledTrace = TraceRecorder.inMemory(10000);
+        interpreted.setTrace(interpretedTrace);
+        recompiled.setTrace(recompiledTrace);
+        while (interpreted.getCycles() < 5000) {
+            interpreted.runStep();
+        }
+        while (recompiled.getCycles() < 5000) {
+            recompiled.runStep();
+        }
+
+        String[] expected = decode(interpretedTrace);
+        String[] actual = decode(recompiledTrace);
+        int length = Math.min(expected.length, actual.length);
+        assertTrue(length > 1000);
+        for (int i = 0; i < length; i++) {
+            assertEquals(expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    void testNotATrace() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TraceDecoder().decode(ByteBuffer.allocate(64), new PrintStream(new ByteArrayOutputStream())));
+    }
+}
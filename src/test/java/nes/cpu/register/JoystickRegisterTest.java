@@ -0,0 +1,28 @@
+package nes.cpu.register;
+
+import nes.Controller;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JoystickRegisterTest {
+
+    @Test
+    void testRead() {
+        Controller controller = new Controller();
+        controller.setButtons(0b10010101); // RIGHT, DOWN, SELECT, A
+        JoystickRegister register = new JoystickRegister(controller);
+
+        register.set((byte)1);
+        assertEquals(1, register.get());
+        assertEquals(1, register.get());
+
+        register.set((byte)0);
+        // pressing buttons after the strobe changes nothing
+        controller.setButtons(0);
+        int[] expected = {1, 0, 1, 0, 1, 0, 0, 1, 1, 1};
+        for (int bit : expected) {
+            assertEquals(bit, register.get());
+        }
+    }
+}
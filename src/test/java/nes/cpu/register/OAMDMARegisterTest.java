@@ -0,0 +1,122 @@
+package nes.cpu.register;
+
+import common.ByteArrayMemory;
+import nes.Controller;
+import nes.apu.APU;
+import nes.cpu.CPU;
+import nes.mapper.Mapper;
+import nes.mapper.NROM;
+import nes.ppu.Mirroring;
+import nes.ppu.PPU;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OAMDMARegisterTest {
+
+    /**
+     * $8000 LDA #$02
+     * $8002 STA $4014
+     * $8005 LDX #$14
+     * $8007 STA $4000,X
+     * $800A STA $4014
+     * $800D JMP $8007
+     */
+    private static final int[] PROGRAM = {
+            0xA9, 0x02,
+            0x8D, 0x14, 0x40,
+            0xA2, 0x14,
+            0x9D, 0x00, 0x40,
+            0x8D, 0x14, 0x40,
+            0x4C, 0x07, 0x80
+    };
+
+    PPU ppu;
+    CPU cpu;
+
+    @BeforeEach
+    void setUp() {
+        byte[] programRom = new byte[0x8000];
+        for (int i = 0; i < PROGRAM.length; i++) {
+            programRom[i] = (byte)PROGRAM[i];
+        }
+        for (int i = 0; i < 0x100; i++) {
+            programRom[0x7000 + i] = (byte)(0xFF - i); // $F000
+        }
+        programRom[0x7FFC] = 0x00;
+        programRom[0x7FFD] = (byte)0x80;
+        Mapper mapper = new NROM(new ByteArrayMemory(programRom), null, Mirroring.HORIZONTAL);
+        ppu = new PPU(mapper, null, null);
+        cpu = new CPU(ppu, new APU(), mapper, new Controller());
+        cpu.reset();
+        for (int i = 0; i < 0x100; i++) {
+            cpu.write((byte)i, 0x0A00 + i); // mirror of $0200
+        }
+    }
+
+    private long runDma(int parity) {
+        if ((cpu.getCycles() & 1) != parity) {
+            cpu.stall(1);
+        }
+        long start = cpu.getCycles();
+        cpu.runStep();
+        cpu.runStep();
+        return cpu.getCycles() - start;
+    }
+
+    /**
+     * @return cycles the next store of the cycles was halted for, when it starts on a cycle of the parity
+     */
+    private long runStoreStall(int parity, int storeCycles) {
+        if ((cpu.getCycles() & 1) != parity) {
+            cpu.stall(1);
+        }
+        long start = cpu.getCycles();
+        cpu.runStep();
+        return cpu.getCycles() - start - storeCycles;
+    }
+
+    @Test
+    void testStallOnEvenThenOddCycle() {
+        cpu.runStep();
+        cpu.runStep();
+        cpu.runStep();
+        // the DMA starts on the cycle after the store, so a 5 cycle STA $4000,X aligns when a 4 cycle STA $4014 does not
+        assertEquals(514, runStoreStall(0, 5));
+        assertEquals(513, runStoreStall(0, 4));
+        cpu.runStep();
+        assertEquals(513, runStoreStall(1, 5));
+        assertEquals(514, runStoreStall(1, 4));
+    }
+
+    @Test
+    void testCopyFromRam() {
+        // LDA #imm, STA abs and the DMA
+        assertEquals(2 + 4 + 513, runDma(0));
+        for (int i = 0; i < 0x100; i++) {
+            assertEquals((byte)i, ppu.oam.get(i));
+        }
+    }
+
+    @Test
+    void testStallAlignsOnOddCycle() {
+        assertEquals(2 + 4 + 514, runDma(1));
+    }
+
+    @Test
+    void testCopyFromRomFromOamAddress() {
+        ppu.regOAMADDR.set((byte)0x10);
+        int version = ppu.oam.getVersion();
+        cpu.write((byte)0xF0, 0x4014);
+        assertEquals((byte)0xFF, ppu.oam.get(0x10));
+        assertEquals((byte)0xF0, ppu.oam.get(0x1F));
+        assertEquals((byte)0x0F, ppu.oam.get(0x00)); // wrapped around
+        assertEquals((byte)0x10, ppu.regOAMADDR.get());
+        assertEquals(version + 1, ppu.oam.getVersion());
+
+        // the same sprites again change nothing
+        cpu.write((byte)0xF0, 0x4014);
+        assertEquals(version + 1, ppu.oam.getVersion());
+    }
+}
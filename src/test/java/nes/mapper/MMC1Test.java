@@ -0,0 +1,66 @@
+package nes.mapper;
+
+import common.ByteArrayMemory;
+import nes.ppu.Mirroring;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MMC1Test {
+
+    MMC1 sut;
+
+    @BeforeEach
+    void setUp() {
+        // 8 x 16KB PRG banks, each filled with its bank number
+        byte[] programRom = new byte[8 * 0x4000];
+        for (int i = 0; i < programRom.length; i++) {
+            programRom[i] = (byte)(i / 0x4000);
+        }
+        sut = new MMC1(new ByteArrayMemory(programRom), null, Mirroring.HORIZONTAL);
+    }
+
+    private void writeSerial(int value, int address) {
+        for (int i = 0; i < 5; i++) {
+            sut.writeProgram((byte)((value >> i) & 1), address);
+        }
+    }
+
+    @Test
+    void testPowerUp() {
+        assertEquals(0, sut.readProgram(0x8000));
+        assertEquals(7, sut.readProgram(0xFFFF));
+    }
+
+    @Test
+    void testSwitchProgramBank() {
+        writeSerial(3, 0xE000);
+        assertEquals(3, sut.readProgram(0x8000));
+        assertEquals(7, sut.readProgram(0xC000));
+        assertEquals(0x8000 * 3 / 2, sut.getProgramRomOffset(0x8000));
+    }
+
+    @Test
+    void testControl() {
+        writeSerial(0b01010, 0x8000); // vertical, fix first bank at $8000
+        writeSerial(5, 0xE000);
+        assertEquals(Mirroring.VERTICAL, sut.getMirroring());
+        assertEquals(0, sut.readProgram(0x8000));
+        assertEquals(5, sut.readProgram(0xC000));
+    }
+
+    @Test
+    void testReset() {
+        sut.writeProgram((byte)1, 0xE000);
+        sut.writeProgram((byte)0x80, 0xE000);
+        writeSerial(2, 0xE000);
+        assertEquals(2, sut.readProgram(0x8000));
+    }
+
+    @Test
+    void testCharacterRam() {
+        sut.writeCharacter((byte)0x12, 0x1FFF);
+        assertEquals((byte)0x12, sut.readCharacter(0x1FFF));
+    }
+}
@@ -0,0 +1,100 @@
+package nes.mapper;
+
+import common.ByteArrayMemory;
+import nes.ppu.Mirroring;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MMC3Test {
+
+    MMC3 sut;
+
+    @BeforeEach
+    void setUp() {
+        // 16 x 8KB PRG banks, each filled with its bank number
+        byte[] programRom = new byte[16 * 0x2000];
+        for (int i = 0; i < programRom.length; i++) {
+            programRom[i] = (byte)(i / 0x2000);
+        }
+        byte[] characterRom = new byte[32 * 0x400];
+        for (int i = 0; i < characterRom.length; i++) {
+            characterRom[i] = (byte)(i / 0x400);
+        }
+        sut = new MMC3(new ByteArrayMemory(programRom), new ByteArrayMemory(characterRom), Mirroring.VERTICAL);
+    }
+
+    @Test
+    void testProgramBanks() {
+        sut.writeProgram((byte)6, 0x8000);
+        sut.writeProgram((byte)3, 0x8001);
+        assertEquals(3, sut.readProgram(0x8000));
+        assertEquals(14, sut.readProgram(0xC000));
+        assertEquals(15, sut.readProgram(0xE000));
+
+        sut.writeProgram((byte)0x46, 0x8000); // swap $8000 and $C000
+        assertEquals(14, sut.readProgram(0x8000));
+        assertEquals(3, sut.readProgram(0xC000));
+    }
+
+    @Test
+    void testCharacterBanks() {
+        sut.writeProgram((byte)0, 0x8000);
+        sut.writeProgram((byte)9, 0x8001); // R0: 2KB, low bit ignored
+        sut.writeProgram((byte)2, 0x8000);
+        sut.writeProgram((byte)20, 0x8001); // R2: 1KB
+        assertEquals(8, sut.readCharacter(0x0000));
+        assertEquals(9, sut.readCharacter(0x0400));
+        assertEquals(20, sut.readCharacter(0x1000));
+
+        sut.writeProgram((byte)0x80, 0x8000); // invert A12
+        assertEquals(20, sut.readCharacter(0x0000));
+        assertEquals(8, sut.readCharacter(0x1000));
+    }
+
+    @Test
+    void testMirroring() {
+        sut.writeProgram((byte)1, 0xA000);
+        assertEquals(Mirroring.HORIZONTAL, sut.getMirroring());
+    }
+
+    @Test
+    void testProgramRamProtect() {
+        sut.writeProgram((byte)0x12, 0x6000);
+        assertEquals(0x12, sut.readProgram(0x6000));
+
+        sut.writeProgram((byte)0xC0, 0xA001); // write protected
+        sut.writeProgram((byte)0x34, 0x6000);
+        assertEquals(0x12, sut.readProgram(0x6000));
+
+        sut.writeProgram((byte)0x00, 0xA001); // disabled
+        assertEquals(0, sut.readProgram(0x6000));
+        byte[] page = new byte[0x100];
+        Arrays.fill(page, (byte)0xFF);
+        sut.readProgram(0x6000, page, page.length);
+        assertEquals(0, page[0]);
+
+        sut.writeProgram((byte)0x80, 0xA001); // enabled and writable again, contents kept
+        assertEquals(0x12, sut.readProgram(0x6000));
+        sut.writeProgram((byte)0x34, 0x6000);
+        assertEquals(0x34, sut.readProgram(0x6000));
+    }
+
+    @Test
+    void testIrq() {
+        sut.writeProgram((byte)2, 0xC000); // latch
+        sut.writeProgram((byte)0, 0xC001); // reload
+        sut.writeProgram((byte)0, 0xE001); // enable
+        sut.clockScanline(); // reload to 2
+        sut.clockScanline();
+        assertFalse(sut.isIrqAsserted());
+        sut.clockScanline();
+        assertTrue(sut.isIrqAsserted());
+
+        sut.writeProgram((byte)0, 0xE000); // acknowledge
+        assertFalse(sut.isIrqAsserted());
+    }
+}
@@ -0,0 +1,119 @@
+package nes.ppu;
+
+import common.ByteArrayMemory;
+import nes.mapper.Mapper;
+import nes.mapper.NROM;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static nes.screen.MainScreen.HEIGHT;
+import static nes.screen.MainScreen.WIDTH;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineCacheTest {
+
+    Mapper mapper;
+    PPU ppu;
+    Random random = new Random(1);
+
+    @BeforeEach
+    void setUp() {
+        // CHR RAM, so that pattern tables can be written through the PPU
+        mapper = new NROM(new ByteArrayMemory(new byte[0x4000]), null, Mirroring.VERTICAL);
+        ppu = new PPU(mapper, null, null);
+        for (int address = 0; address < 0x3F20; address++) {
+            writeRandom(address);
+        }
+        for (int i = 0; i < PPU.OAM_SIZE; i++) {
+            ppu.oam.set((byte)random.nextInt(), i);
+        }
+        ppu.regPPUMASK.set((byte)0x18); // background and sprites
+    }
+
+    private void writeRandom(int address) {
+        // colors are 0-63
+        ppu.write((byte)random.nextInt(address < 0x3F00 ? 0x100 : 0x40), address);
+    }
+
+    private void runFrame(PPU ppu) {
+        long frames = ppu.getFrames();
+        while (ppu.getFrames() == frames) {
+            ppu.runStep();
+        }
+    }
+
+    private int countReused() {
+        int reused = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            if (ppu.lineCache.reuse(y, ppu.regPPUSCROLL.getX(), ppu.regPPUSCROLL.getY())) {
+                reused++;
+            }
+        }
+        return reused;
+    }
+
+    @Test
+    void testReuseStaticScreen() {
+        runFrame(ppu);
+        assertEquals(HEIGHT, countReused());
+
+        // rewriting the same values changes nothing
+        ppu.write(ppu.read(0x2000), 0x2000);
+        for (int i = 0; i < PPU.OAM_SIZE; i++) {
+            ppu.oam.set(ppu.oam.get(i), i);
+        }
+        assertEquals(HEIGHT, countReused());
+    }
+
+    @Test
+    void testNametableRow() {
+        runFrame(ppu);
+        ppu.write((byte)(ppu.read(0x2040) + 1), 0x2040); // tile row 2
+        assertEquals(HEIGHT - 8, countReused());
+
+        ppu.write((byte)(ppu.read(0x23C8) + 1), 0x23C8); // attribute of tile rows 4-7
+        assertEquals(HEIGHT - 32, countReused());
+    }
+
+    @Test
+    void testRedrawAll() {
+        runFrame(ppu);
+        ppu.write((byte)(ppu.read(0x3F01) + 1), 0x3F01);
+        assertEquals(0, countReused());
+        assertEquals(HEIGHT, countReused());
+
+        ppu.regPPUSCROLL.set((byte)1);
+        ppu.regPPUSCROLL.set((byte)0);
+        assertEquals(0, countReused());
+    }
+
+    @Test
+    void testSameAsRedrawn() {
+        ByteBuffer buffer = ByteBuffer.allocate(0x1000);
+        for (int frame = 0; frame < 30; frame++) {
+            runFrame(ppu);
+
+            // a fresh PPU in the same state draws every line
+            buffer.clear();
+            ppu.save(buffer);
+            buffer.flip();
+            PPU redrawn = new PPU(mapper, null, null);
+            redrawn.load(buffer);
+            runFrame(redrawn);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    assertEquals(redrawn.getMainScreenData().getRGB(x, y), ppu.getMainScreenData().getRGB(x, y));
+                }
+            }
+
+            // a few writes between frames
+            for (int i = 0; i < 4; i++) {
+                writeRandom(random.nextInt(0x3F20));
+            }
+            ppu.oam.set((byte)random.nextInt(), random.nextInt(PPU.OAM_SIZE));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package nes.ppu;
+
+import common.ByteArrayMemory;
+import nes.mapper.NROM;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PPUTest {
+
+    private static final int BACKDROP = 0x0F;
+    private static final int BACKGROUND = 0x16;
+    private static final int SPRITE = 0x2A;
+
+    PPU ppu;
+
+    @BeforeEach
+    void setUp() {
+        // CHR RAM; tile 1 is opaque with color 1, tile 0 transparent
+        ppu = new PPU(new NROM(new ByteArrayMemory(new byte[0x4000]), null, Mirroring.VERTICAL), null, null);
+        for (int i = 0; i < 8; i++) {
+            ppu.write((byte)0xFF, 0x0010 + i);
+        }
+        // the left half of the background is opaque
+        for (int row = 0; row < 30; row++) {
+            for (int column = 0; column < 16; column++) {
+                ppu.write((byte)1, 0x2000 + row * 32 + column);
+            }
+        }
+        ppu.write((byte)BACKDROP, 0x3F00);
+        ppu.write((byte)BACKGROUND, 0x3F01);
+        ppu.write((byte)SPRITE, 0x3F11);
+        // all sprites below the screen
+        for (int i = 0; i < PPU.OAM_SIZE; i++) {
+            ppu.oam.set((byte)0xFF, i);
+        }
+        ppu.regPPUMASK.set((byte)0x18); // background and sprites
+    }
+
+    /**
+     * @param y the sprite is drawn from line y + 1
+     */
+    private void setSprite(int n, int x, int y, int attributes) {
+        ppu.oam.set((byte)y, n * 4);
+        ppu.oam.set((byte)1, n * 4 + 1);
+        ppu.oam.set((byte)attributes, n * 4 + 2);
+        ppu.oam.set((byte)x, n * 4 + 3);
+    }
+
+    private int getRGB(int x, int y) {
+        ppu.setLineData(y);
+        return ppu.getMainScreenData().getRGB(x, y);
+    }
+
+    @Test
+    void testSpriteInFront() {
+        setSprite(0, 64, 16, 0x00);
+        setSprite(1, 192, 16, 0x00);
+        assertEquals(Palette.get(SPRITE).getRGB(), getRGB(64, 20));
+        assertEquals(Palette.get(SPRITE).getRGB(), getRGB(192, 20));
+        assertEquals(Palette.get(BACKGROUND).getRGB(), getRGB(72, 20));
+        assertEquals(Palette.get(BACKDROP).getRGB(), getRGB(200, 20));
+    }
+
+    @Test
+    void testSpriteBehindBackground() {
+        setSprite(0, 64, 16, 0x20);
+        setSprite(1, 192, 16, 0x20);
+        // hidden by an opaque background, shown where the background is transparent
+        assertEquals(Palette.get(BACKGROUND).getRGB(), getRGB(64, 20));
+        assertEquals(Palette.get(SPRITE).getRGB(), getRGB(192, 20));
+    }
+
+    @Test
+    void testLowerSpriteNumberOnTop() {
+        ppu.write((byte)0x30, 0x3F15);
+        setSprite(0, 196, 16, 0x01); // palette 5
+        setSprite(1, 192, 16, 0x00);
+        assertEquals(Palette.get(SPRITE).getRGB(), getRGB(195, 20));
+        assertEquals(Palette.get(0x30).getRGB(), getRGB(196, 20));
+    }
+
+    @Test
+    void testBackgroundOff() {
+        ppu.regPPUMASK.set((byte)0x10);
+        setSprite(0, 64, 16, 0x20);
+        assertEquals(Palette.get(SPRITE).getRGB(), getRGB(64, 20));
+        assertEquals(Color.BLACK.getRGB(), getRGB(72, 20));
+    }
+
+    @Test
+    void test8x16Sprite() {
+        // tile 3 of pattern table 1 is opaque with color 2, below the transparent tile 2
+        for (int i = 0; i < 8; i++) {
+            ppu.write((byte)0xFF, 0x1038 + i);
+        }
+        ppu.write((byte)0x30, 0x3F12);
+        ppu.regPPUCTRL.set((byte)0x20);
+        setSprite(0, 192, 16, 0x00);
+        ppu.oam.set((byte)3, 1); // tiles 2 and 3 of pattern table 1
+        assertEquals(Palette.get(BACKDROP).getRGB(), getRGB(192, 20));
+        assertEquals(Palette.get(0x30).getRGB(), getRGB(192, 28));
+        assertEquals(Palette.get(BACKDROP).getRGB(), getRGB(192, 33));
+
+        ppu.oam.set((byte)0x80, 2); // flipped vertically, the opaque tile on top
+        assertEquals(Palette.get(0x30).getRGB(), getRGB(192, 20));
+        assertEquals(Palette.get(BACKDROP).getRGB(), getRGB(192, 28));
+    }
+
+    @Test
+    void testSpriteOverflow() {
+        for (int n = 0; n < 9; n++) {
+            setSprite(n, n * 16, 100, 0x00);
+        }
+        assertEquals(101 * 341 + 1, ppu.getDotsToNextEvent());
+        for (int dot = 0; dot < 101 * 341; dot++) {
+            ppu.runStep();
+        }
+        assertEquals(0, ppu.regPPUSTATUS.get() & 0x20);
+        ppu.runStep();
+        assertEquals(0x20, ppu.regPPUSTATUS.get() & 0x20);
+        // the ninth sprite is not drawn
+        assertEquals(Palette.get(SPRITE).getRGB(), getRGB(7 * 16, 101));
+        assertEquals(Palette.get(BACKDROP).getRGB(), getRGB(8 * 16, 101));
+    }
+
+    @Test
+    void testFlippedHorizontally() {
+        // tile 2: only the leftmost dot of each row is opaque
+        for (int i = 0; i < 8; i++) {
+            ppu.write((byte)0x80, 0x0020 + i);
+        }
+        setSprite(0, 192, 16, 0x00);
+        ppu.oam.set((byte)2, 1);
+        assertEquals(Palette.get(SPRITE).getRGB(), getRGB(192, 20));
+        assertEquals(Palette.get(BACKDROP).getRGB(), getRGB(199, 20));
+
+        ppu.oam.set((byte)0x40, 2);
+        assertEquals(Palette.get(BACKDROP).getRGB(), getRGB(192, 20));
+        assertEquals(Palette.get(SPRITE).getRGB(), getRGB(199, 20));
+    }
+
+    @Test
+    void testSprite0HitOverOpaqueBackground() {
+        setSprite(0, 192, 16, 0x00);
+        ppu.setLineData(20);
+        assertEquals(0, ppu.regPPUSTATUS.get() & 0x40);
+
+        setSprite(0, 124, 16, 0x20); // half over the opaque background, behind it
+        ppu.setLineData(20);
+        assertEquals(0x40, ppu.regPPUSTATUS.get() & 0x40);
+    }
+
+    @Test
+    void testSprite0HitPredicted() {
+        setSprite(0, 192, 16, 0x00); // over the transparent background only
+        assertEquals(241 * 341 + 2, ppu.getDotsToNextEvent()); // VBlank
+
+        setSprite(0, 124, 16, 0x00);
+        assertEquals(17 * 341 + 1, ppu.getDotsToNextEvent());
+        for (int dot = 0; dot < 17 * 341; dot++) {
+            ppu.runStep();
+        }
+        assertFalse(ppu.regPPUSTATUS.isSprite0Hit());
+        ppu.runStep();
+        assertTrue(ppu.regPPUSTATUS.isSprite0Hit());
+        assertEquals((241 - 17) * 341 + 1, ppu.getDotsToNextEvent()); // VBlank
+
+        // cleared on the pre-render line
+        for (int dot = 0; dot < (241 - 17) * 341 + 1; dot++) {
+            ppu.runStep();
+        }
+        assertEquals(20 * 341, ppu.getDotsToNextEvent());
+        for (int dot = 0; dot < 20 * 341; dot++) {
+            ppu.runStep();
+        }
+        assertFalse(ppu.regPPUSTATUS.isSprite0Hit());
+    }
+
+    @Test
+    void testUpperBitsOfPaletteIgnored() {
+        ppu.write((byte)(0xC0 | BACKGROUND), 0x3F01);
+        assertEquals(Palette.get(BACKGROUND).getRGB(), getRGB(0, 0));
+    }
+}
@@ -0,0 +1,76 @@
+package nes.ppu;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpriteIndexTest {
+
+    ObjectAttributeMemory oam;
+    SpriteIndex sut;
+
+    @BeforeEach
+    void setUp() {
+        oam = new ObjectAttributeMemory();
+        for (int i = 0; i < PPU.OAM_SIZE; i++) {
+            oam.set((byte)0xFF, i);
+        }
+        sut = new SpriteIndex(oam);
+    }
+
+    @Test
+    void testSpritesInOamOrder() {
+        oam.set((byte)9, 5 * 4);
+        oam.set((byte)12, 2 * 4);
+        sut.update(8);
+        assertEquals(0, sut.getCount(9));
+        assertEquals(1, sut.getCount(10));
+        assertEquals(5, sut.getSprite(10, 0));
+        assertEquals(2, sut.getCount(13));
+        assertEquals(2, sut.getSprite(13, 0));
+        assertEquals(5, sut.getSprite(13, 1));
+        assertEquals(1, sut.getCount(20));
+        assertEquals(0, sut.getCount(21));
+    }
+
+    @Test
+    void testOverflow() {
+        for (int n = 0; n < 9; n++) {
+            oam.set((byte)(100 + n / 8 * 4), n * 4); // the ninth sprite 4 lines lower
+        }
+        sut.update(8);
+        assertFalse(sut.hasOverflow(104));
+        assertEquals(8, sut.getCount(104));
+        assertTrue(sut.hasOverflow(105));
+        assertEquals(8, sut.getCount(105));
+        assertEquals(7, sut.getSprite(105, 7));
+        assertTrue(sut.hasOverflow(108));
+        assertFalse(sut.hasOverflow(109));
+        assertEquals(8, sut.getSprite(109, 0));
+    }
+
+    @Test
+    void testRebuiltOnChange() {
+        oam.set((byte)50, 0);
+        sut.update(8);
+        assertEquals(0, sut.getCount(59));
+        sut.update(16);
+        assertEquals(1, sut.getCount(59));
+        assertEquals(0, sut.getCount(67));
+
+        oam.set((byte)60, 0);
+        sut.update(16);
+        assertEquals(0, sut.getCount(51));
+        assertEquals(1, sut.getCount(76));
+    }
+
+    @Test
+    void testBottomOfScreen() {
+        oam.set((byte)0xEF, 0); // from line 240, below the screen
+        oam.set((byte)0xE8, 4);
+        sut.update(16);
+        assertEquals(1, sut.getCount(239));
+        assertEquals(1, sut.getSprite(239, 0));
+    }
+}
@@ -0,0 +1,44 @@
+package nes.ppu;
+
+import common.ByteArrayMemory;
+import nes.mapper.Mapper;
+import nes.mapper.NROM;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileCacheTest {
+
+    Mapper mapper;
+    TileCache sut;
+
+    @BeforeEach
+    void setUp() {
+        // no CHR ROM, so the pattern tables are CHR RAM
+        mapper = new NROM(new ByteArrayMemory(new byte[0x4000]), null, Mirroring.HORIZONTAL);
+        sut = new TileCache(mapper);
+    }
+
+    @Test
+    void testDecode() {
+        mapper.writeCharacter((byte)0b10000001, 0x1010 + 2); // tile 1 of table 1, row 2, lower plane
+        mapper.writeCharacter((byte)0b10000000, 0x1010 + 2 + 8); // upper plane
+        int tile = sut.getTile(1, 1);
+        assertEquals(3, sut.pixels[tile + 2 * 8]);
+        assertEquals(0, sut.pixels[tile + 2 * 8 + 1]);
+        assertEquals(1, sut.pixels[tile + 2 * 8 + 7]);
+    }
+
+    @Test
+    void testInvalidate() {
+        int tile = sut.getTile(0, 0);
+        assertEquals(0, sut.pixels[tile]);
+
+        mapper.writeCharacter((byte)0x80, 0x0000);
+        assertEquals(0, sut.pixels[sut.getTile(0, 0)]); // still cached
+
+        sut.invalidate(0x0000);
+        assertEquals(1, sut.pixels[sut.getTile(0, 0)]);
+    }
+}
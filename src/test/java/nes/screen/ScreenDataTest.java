@@ -0,0 +1,23 @@
+package nes.screen;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScreenDataTest {
+
+    @Test
+    void testBackedByImage() {
+        ScreenData sut = new ScreenData(4, 3);
+        assertEquals(Color.BLACK, sut.get(3, 2));
+
+        sut.set(new Color(1, 2, 3), 3, 2);
+        assertEquals(new Color(1, 2, 3), sut.get(3, 2));
+        assertEquals(new Color(1, 2, 3).getRGB(), sut.getImage().getRGB(3, 2));
+
+        sut.clear();
+        assertEquals(Color.BLACK.getRGB(), sut.getImage().getRGB(3, 2));
+    }
+}